@@ -0,0 +1,138 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.requests.FileHash2ContentRequestBody;
+import ai.deepcode.javaclient.requests.FileHashRequest;
+import ai.deepcode.javaclient.responses.CreateBundleResponse;
+import ai.deepcode.javaclient.responses.EmptyResponse;
+import ai.deepcode.javaclient.responses.GetAnalysisResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole create bundle / upload files / get analysis round against {@link MockDeepCodeServer}
+ * through {@link DeepCodeRestClient}.
+ *
+ * <ul>
+ *   <li>{@code newContent}: every invocation changes all files, so all of them are missing and
+ *       uploaded;
+ *   <li>{@code sameContent}: server already has all files, only bundle and analysis requests.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+  @Param({"10", "200"})
+  public int filesCount;
+
+  @Param({"0"})
+  public long latencyMillis;
+
+  private MockDeepCodeServer server;
+  private DeepCodeRestClient client;
+  private String token;
+  private List<String> baseContents;
+  private long invocation = 0;
+
+  @Setup
+  public void setUp() throws IOException {
+    server =
+        new MockDeepCodeServer()
+            .setLatency(latencyMillis, TimeUnit.MILLISECONDS)
+            .setAnalysisDuration(0, TimeUnit.MILLISECONDS)
+            .setResultSize(5, 2)
+            .start();
+    client =
+        DeepCodeRestClient.newBuilder()
+            .baseUrl(server.getBaseUrl())
+            .retryPolicy(RetryPolicy.NONE)
+            .build();
+    token = server.newLoggedToken();
+    baseContents = new ArrayList<>(filesCount);
+    for (int i = 0; i < filesCount; i++) {
+      final StringBuilder content = new StringBuilder();
+      for (int line = 0; line < 200; line++) {
+        content.append("  public static final int CONSTANT_").append(i).append('_');
+        content.append(line).append(" = ").append(line * i).append(";\n");
+      }
+      baseContents.add(content.toString());
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Benchmark
+  public int newContent() {
+    invocation++;
+    return analyse("// " + invocation + "\n");
+  }
+
+  @Benchmark
+  public int sameContent() {
+    return analyse("");
+  }
+
+  private int analyse(String prefix) {
+    final Map<String, String> path2content = new HashMap<>();
+    final Map<String, String> path2hash = new HashMap<>();
+    for (int i = 0; i < filesCount; i++) {
+      final String path = "/src/File" + i + ".java";
+      final String content = prefix + baseContents.get(i);
+      path2content.put(path, content);
+      path2hash.put(path, MockDeepCodeServer.sha256(content));
+    }
+
+    final CreateBundleResponse bundle =
+        client.createBundle(token, new FileHashRequest(path2hash));
+    check(bundle);
+    if (!bundle.getMissingFiles().isEmpty()) {
+      final EmptyResponse upload =
+          client.uploadFiles(
+              token,
+              bundle.getBundleId(),
+              new FileHash2ContentRequestBody<>(
+                  bundle.getMissingFiles(),
+                  path2hash::get,
+                  path -> new StringReader(path2content.get(path))));
+      check(upload);
+    }
+
+    final int[] resultsCount = {0};
+    GetAnalysisResponse analysis;
+    do {
+      analysis =
+          client.getAnalysis(
+              token,
+              bundle.getBundleId(),
+              null,
+              false,
+              reader -> {
+                reader.skipValue();
+                resultsCount[0]++;
+              });
+      check(analysis);
+    } while (!analysis.getStatus().equals("DONE"));
+    return resultsCount[0];
+  }
+
+  private static void check(EmptyResponse response) {
+    if (response.getStatusCode() != 200) {
+      throw new IllegalStateException(
+          response.getStatusCode() + " " + response.getStatusDescription());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.requests.FileContent;
+import ai.deepcode.javaclient.requests.FileContentRequest;
+import ai.deepcode.javaclient.requests.FileHashRequest;
+import ai.deepcode.javaclient.responses.CreateBundleResponse;
+import ai.deepcode.javaclient.responses.GetAnalysisResponse;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson (de)serialisation of request and response DTOs with the same {@link Gson} settings as used
+ * by Retrofit converter. Sizes correspond to a project of {@code filesCount} files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonDtoBenchmark {
+
+  private static final Gson gson = new Gson();
+
+  @Param({"100", "2000"})
+  public int filesCount;
+
+  private FileHashRequest fileHashRequest;
+  private FileContentRequest fileContentRequest;
+  private String createBundleResponse;
+  private String analysisResponse;
+
+  @Setup
+  public void setUp() {
+    final List<String> paths = SyntheticResponses.filePaths(filesCount);
+    final Map<String, String> path2hash = new HashMap<>();
+    final List<FileContent> contents = new ArrayList<>();
+    for (String path : paths) {
+      path2hash.put(path, String.format("%064x", path.hashCode() & 0xffffffffL));
+      contents.add(new FileContent(path, "class Content {\n  int field;\n}\n"));
+    }
+    fileHashRequest = new FileHashRequest(path2hash);
+    fileContentRequest = new FileContentRequest(contents);
+    createBundleResponse =
+        gson.toJson(new CreateBundleResponse("gh/user/repo/bundleId", paths, "uploadURL"));
+    analysisResponse = SyntheticResponses.analysisResponse(filesCount, 5);
+  }
+
+  @Benchmark
+  public String serializeFileHashRequest() {
+    return gson.toJson(fileHashRequest);
+  }
+
+  @Benchmark
+  public String serializeFileContentRequest() {
+    return gson.toJson(fileContentRequest);
+  }
+
+  @Benchmark
+  public CreateBundleResponse deserializeCreateBundleResponse() {
+    return gson.fromJson(createBundleResponse, CreateBundleResponse.class);
+  }
+
+  @Benchmark
+  public GetAnalysisResponse deserializeGetAnalysisResponse() {
+    return gson.fromJson(analysisResponse, GetAnalysisResponse.class);
+  }
+}
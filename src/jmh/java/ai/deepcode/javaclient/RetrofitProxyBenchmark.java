@@ -0,0 +1,63 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.responses.GetAnalysisResponse;
+import org.openjdk.jmh.annotations.*;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.QueryName;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call overhead of obtaining a {@link Call} for the request: {@code retrofit.create()} on
+ * every request (as {@link DeepCodeRestApi} used to do) versus a proxy created once per {@link
+ * Retrofit} instance. No network involved - calls are built but never executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RetrofitProxyBenchmark {
+
+  // mirror of DeepCodeRestApi.GetAnalysisCall
+  private interface GetAnalysisCall {
+    @GET("analysis/{bundleId}")
+    Call<GetAnalysisResponse> doGetAnalysis(
+        @Header("Session-Token") String token,
+        @Path(value = "bundleId", encoded = true) String bundleId,
+        @Query("severity") Integer severity,
+        @QueryName String linters);
+  }
+
+  private Retrofit retrofit;
+  private GetAnalysisCall cachedProxy;
+
+  @Setup
+  public void setUp() {
+    retrofit =
+        new Retrofit.Builder()
+            .baseUrl("http://localhost/publicapi/")
+            .addConverterFactory(GsonConverterFactory.create())
+            .build();
+    cachedProxy = retrofit.create(GetAnalysisCall.class);
+    // let Retrofit fill its ServiceMethod cache, so only the proxy creation is measured
+    cachedProxy.doGetAnalysis("token", "bundleId", 1, null);
+  }
+
+  @Benchmark
+  public Call<GetAnalysisResponse> createProxyPerCall() {
+    return retrofit.create(GetAnalysisCall.class).doGetAnalysis("token", "bundleId", 1, null);
+  }
+
+  @Benchmark
+  public Call<GetAnalysisResponse> cachedProxy() {
+    return cachedProxy.doGetAnalysis("token", "bundleId", 1, null);
+  }
+}
@@ -0,0 +1,94 @@
+package ai.deepcode.javaclient;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Generators of server responses of realistic shape for benchmarks. */
+public final class SyntheticResponses {
+
+  private SyntheticResponses() {}
+
+  @NotNull
+  public static List<String> filePaths(int filesCount) {
+    final List<String> result = new ArrayList<>(filesCount);
+    for (int i = 0; i < filesCount; i++) {
+      result.add("/src/main/java/pkg" + (i % 10) + "/File" + i + ".java");
+    }
+    return result;
+  }
+
+  /**
+   * DONE GetAnalysis response for {@link #filePaths(int)} with {@code suggestionsPerFile} positions
+   * (2 markers each) in every file and {@code suggestionsPerFile * 4} distinct suggestions.
+   */
+  @NotNull
+  public static String analysisResponse(int filesCount, int suggestionsPerFile) {
+    final int kinds = Math.max(1, suggestionsPerFile * 4);
+    final JsonObject suggestions = new JsonObject();
+    for (int kind = 0; kind < kinds; kind++) {
+      final JsonObject suggestion = new JsonObject();
+      suggestion.addProperty("id", "java%2Fdc%2Fsuggestion" + kind);
+      suggestion.addProperty("rule", "Suggestion" + kind);
+      suggestion.addProperty(
+          "message", "Suggestion " + kind + " message which is usually a sentence or two long.");
+      suggestion.addProperty("severity", kind % 3 + 1);
+      suggestion.addProperty("repoDatasetSize", kind * 10);
+      suggestion.add("exampleCommitFixes", new JsonArray());
+      suggestions.add(String.valueOf(kind), suggestion);
+    }
+
+    final JsonObject files = new JsonObject();
+    final List<String> paths = filePaths(filesCount);
+    for (int i = 0; i < paths.size(); i++) {
+      final JsonObject fileSuggestions = new JsonObject();
+      for (int s = 0; s < suggestionsPerFile; s++) {
+        final int row = (i * 31 + s * 17) % 500 + 1;
+        final JsonObject position = position(row, 5, 40);
+        final JsonArray markers = new JsonArray();
+        for (int m = 0; m < 2; m++) {
+          final JsonObject marker = new JsonObject();
+          marker.add("msg", pair(m * 10, m * 10 + 6));
+          final JsonArray markerPositions = new JsonArray();
+          markerPositions.add(position(row + m, 7, 20));
+          marker.add("pos", markerPositions);
+          markers.add(marker);
+        }
+        position.add("markers", markers);
+        final JsonArray positions = new JsonArray();
+        positions.add(position);
+        fileSuggestions.add(String.valueOf((i + s) % kinds), positions);
+      }
+      files.add(paths.get(i), fileSuggestions);
+    }
+
+    final JsonObject analysisResults = new JsonObject();
+    analysisResults.add("files", files);
+    analysisResults.add("suggestions", suggestions);
+    final JsonObject response = new JsonObject();
+    response.addProperty("status", "DONE");
+    response.addProperty("progress", 1.0);
+    response.addProperty("analysisURL", "https://www.deepcode.ai/app/gh/bundle/analysis");
+    response.add("analysisResults", analysisResults);
+    return response.toString();
+  }
+
+  @NotNull
+  private static JsonObject position(int row, int startCol, int endCol) {
+    final JsonObject position = new JsonObject();
+    position.add("rows", pair(row, row));
+    position.add("cols", pair(startCol, endCol));
+    return position;
+  }
+
+  @NotNull
+  private static JsonArray pair(int first, int second) {
+    final JsonArray pair = new JsonArray();
+    pair.add(first);
+    pair.add(second);
+    return pair;
+  }
+}
@@ -0,0 +1,73 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.SyntheticResponses;
+import ai.deepcode.javaclient.responses.GetAnalysisResponse;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a large GetAnalysis response into {@link SuggestionForFile}s by {@link
+ * AnalysisResultsDecoder} ({@code decode}), compared with Gson binding of the whole response into
+ * DTOs only ({@code bindDto}), which was the first step of the former {@code
+ * parseGetAnalysisResponse}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisResultsDecoderBenchmark {
+
+  private static final Gson gson = new Gson();
+
+  @Param({"100", "2000"})
+  public int filesCount;
+
+  @Param({"5"})
+  public int suggestionsPerFile;
+
+  private String response;
+  private Collection<Object> files;
+  private PlatformDependentUtilsBase pdUtils;
+  private DCLoggerBase dcLogger;
+
+  @Setup
+  public void setUp() {
+    response = SyntheticResponses.analysisResponse(filesCount, suggestionsPerFile);
+    files = new ArrayList<>(SyntheticResponses.filePaths(filesCount));
+    pdUtils = new BenchmarkStubs.PlatformUtils();
+    dcLogger = new BenchmarkStubs.Logger(line -> {}, false);
+  }
+
+  @Benchmark
+  public Map<Object, List<SuggestionForFile>> decode() throws IOException {
+    final AnalysisResultsDecoder decoder = new AnalysisResultsDecoder(pdUtils, dcLogger, files);
+    try (JsonReader reader = new JsonReader(new StringReader(response))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("analysisResults")) {
+          decoder.read(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    return decoder.getResult();
+  }
+
+  @Benchmark
+  public GetAnalysisResponse bindDto() {
+    return gson.fromJson(response, GetAnalysisResponse.class);
+  }
+}
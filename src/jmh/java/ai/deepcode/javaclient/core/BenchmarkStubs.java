@@ -0,0 +1,177 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Minimal platform implementations for benchmarks. Files are represented by their project based
+ * path ({@link String}), file contents are kept in {@link #contents}.
+ */
+final class BenchmarkStubs {
+
+  static final String PROJECT = "benchmarkProject";
+  static final Map<String, String> contents = new ConcurrentHashMap<>();
+
+  private BenchmarkStubs() {}
+
+  static final class PlatformUtils extends PlatformDependentUtilsBase {
+
+    @NotNull
+    @Override
+    public Object getProject(@NotNull Object file) {
+      return PROJECT;
+    }
+
+    @NotNull
+    @Override
+    public String getProjectName(@NotNull Object project) {
+      return project.toString();
+    }
+
+    @NotNull
+    @Override
+    public String getFileName(@NotNull Object file) {
+      final String path = file.toString();
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @NotNull
+    @Override
+    protected String getProjectBasedFilePath(@NotNull Object file) {
+      return file.toString();
+    }
+
+    @Override
+    public Object[] getOpenProjects() {
+      return new Object[] {PROJECT};
+    }
+
+    @Override
+    public long getFileSize(@NotNull Object file) {
+      return contents.getOrDefault(file.toString(), "").length();
+    }
+
+    @Override
+    public int getLineStartOffset(@NotNull Object file, int line) {
+      return line * 80;
+    }
+
+    @Override
+    public void runInBackgroundCancellable(
+        @NotNull Object file, @NotNull String title, @NotNull Consumer<Object> progressConsumer) {
+      progressConsumer.accept(null);
+    }
+
+    @Override
+    public void runInBackground(
+        @NotNull Object project, @NotNull String title, @NotNull Consumer<Object> progressConsumer) {
+      progressConsumer.accept(null);
+    }
+
+    @Override
+    public void cancelRunningIndicators(@NotNull Object project) {}
+
+    @Override
+    public void doFullRescan(@NotNull Object project) {}
+
+    @Override
+    public void refreshPanel(@NotNull Object project) {}
+
+    @Override
+    public boolean isLogged(@Nullable Object project, boolean userActionNeeded) {
+      return true;
+    }
+
+    @Override
+    public void progressSetText(@Nullable Object progress, String text) {}
+
+    @Override
+    public void progressCheckCanceled(@Nullable Object progress) {}
+
+    @Override
+    public void progressSetFraction(@Nullable Object progress, double fraction) {}
+
+    @Override
+    public void showInBrowser(@NotNull String url) {}
+
+    @Override
+    public void showLoginLink(@Nullable Object project, String message) {}
+
+    @Override
+    public void showConsentRequest(Object project, boolean userActionNeeded) {}
+
+    @Override
+    public void showInfo(String message, @Nullable Object project) {}
+
+    @Override
+    public void showWarn(String message, @Nullable Object project) {}
+
+    @Override
+    public void showError(String message, @Nullable Object project) {}
+  }
+
+  static final class HashContentUtils extends HashContentUtilsBase {
+
+    HashContentUtils(@NotNull PlatformDependentUtilsBase platformDependentUtils) {
+      super(platformDependentUtils);
+    }
+
+    @NotNull
+    @Override
+    public String doGetFileContent(@NotNull Object file) {
+      return contents.getOrDefault(file.toString(), "");
+    }
+  }
+
+  static final class IgnoreInfoHolder extends DeepCodeIgnoreInfoHolderBase {
+
+    IgnoreInfoHolder(@NotNull HashContentUtilsBase hashContentUtils) {
+      super(hashContentUtils);
+    }
+
+    @Override
+    protected String getFilePath(@NotNull Object file) {
+      return file.toString();
+    }
+
+    @Override
+    protected String getFileName(@NotNull Object file) {
+      final String path = file.toString();
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    protected Object getProjectOfFile(@NotNull Object file) {
+      return PROJECT;
+    }
+
+    @Override
+    protected String getDirPath(@NotNull Object file) {
+      final String path = file.toString();
+      return path.substring(0, path.lastIndexOf('/'));
+    }
+  }
+
+  /** Logger writing both levels to the given consumer. */
+  static final class Logger extends DCLoggerBase {
+
+    Logger(@NotNull Consumer<String> output, boolean infoEnabled) {
+      super(
+          () -> output,
+          () -> output,
+          () -> infoEnabled,
+          () -> true,
+          "ai.deepcode.javaclient",
+          "Benchmark");
+    }
+
+    @Override
+    protected String getExtraInfo() {
+      return "";
+    }
+  }
+}
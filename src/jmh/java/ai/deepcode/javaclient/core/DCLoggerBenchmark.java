@@ -0,0 +1,44 @@
+package ai.deepcode.javaclient.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link DCLoggerBase#logInfo} for a typical multi-line message: formatting, stacktrace
+ * walk and the synchronized write ({@code enabled}) versus the level check only ({@code
+ * disabled}). Output goes to a counter, so no I/O is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DCLoggerBenchmark {
+
+  private static final String MESSAGE =
+      "--- Get Analysis took: 1234 milliseconds\nstatus = DONE\nprogress = 1.0";
+
+  private long outputLength;
+  private DCLoggerBase enabledLogger;
+  private DCLoggerBase disabledLogger;
+
+  @Setup
+  public void setUp() {
+    enabledLogger = new BenchmarkStubs.Logger(line -> outputLength += line.length(), true);
+    disabledLogger = new BenchmarkStubs.Logger(line -> outputLength += line.length(), false);
+  }
+
+  @Benchmark
+  public long enabled() {
+    enabledLogger.logInfo(MESSAGE);
+    return outputLength;
+  }
+
+  @Benchmark
+  public long disabled() {
+    disabledLogger.logInfo(MESSAGE);
+    return outputLength;
+  }
+}
@@ -0,0 +1,71 @@
+package ai.deepcode.javaclient.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 of file content as done for every file before bundle creation: {@code hashChanged}
+ * always re-hashes the content, {@code cachedHash} hits the hash cache, {@code hashBytes} hashes
+ * UTF-8 bytes of the same content, {@code bytesToHex} is the hex conversion of the digest alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashContentUtilsBenchmark {
+
+  private static final String FILE = "/src/HashedFile.java";
+
+  @Param({"1024", "102400"})
+  public int contentSize;
+
+  private HashContentUtilsBase hashContentUtils;
+  private byte[] digest;
+  private ByteBuffer contentBytes;
+
+  @Setup
+  public void setUp() throws NoSuchAlgorithmException {
+    final StringBuilder content = new StringBuilder(contentSize);
+    for (int i = 0; content.length() < contentSize; i++) {
+      content.append("    int value").append(i).append(" = compute(").append(i).append(");\n");
+    }
+    content.setLength(contentSize);
+    BenchmarkStubs.contents.put(FILE, content.toString());
+    hashContentUtils = new BenchmarkStubs.HashContentUtils(new BenchmarkStubs.PlatformUtils());
+    contentBytes = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+    digest = MessageDigest.getInstance("SHA-256").digest(contentBytes.array());
+  }
+
+  @TearDown
+  public void tearDown() {
+    hashContentUtils.removeFileHashContent(FILE);
+    BenchmarkStubs.contents.remove(FILE);
+  }
+
+  @Benchmark
+  public boolean hashChanged() {
+    return hashContentUtils.isHashChanged(FILE);
+  }
+
+  @Benchmark
+  public String cachedHash() {
+    return hashContentUtils.getHash(FILE);
+  }
+
+  @Benchmark
+  public String hashBytes() {
+    return HashContentUtilsBase.doGetHash(contentBytes.duplicate());
+  }
+
+  @Benchmark
+  public String bytesToHex() {
+    return HashContentUtilsBase.bytesToHex(digest);
+  }
+}
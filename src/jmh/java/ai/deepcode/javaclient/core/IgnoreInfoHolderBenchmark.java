@@ -0,0 +1,85 @@
+package ai.deepcode.javaclient.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ignore check done for every project file on scan, with {@code rulesCount} rules in both
+ * {@code .gitignore} and {@code .dcignore} at the project root. {@code ignored} path matches the
+ * last rule, {@code notIgnored} path goes through all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnoreInfoHolderBenchmark {
+
+  private static final String ROOT = "/project";
+  private static final String GITIGNORE = ROOT + "/.gitignore";
+  private static final String DCIGNORE = ROOT + "/.dcignore";
+
+  @Param({"10", "100"})
+  public int rulesCount;
+
+  private DeepCodeIgnoreInfoHolderBase ignoreInfoHolder;
+  private String ignoredFile;
+  private final String notIgnoredFile = ROOT + "/src/main/java/pkg/SomeClass.java";
+
+  @Setup
+  public void setUp() {
+    final StringBuilder rules = new StringBuilder("# generated\n");
+    for (int i = 0; i < rulesCount; i++) {
+      switch (i % 4) {
+        case 0:
+          rules.append("build").append(i).append("/\n");
+          break;
+        case 1:
+          rules.append("*.tmp").append(i).append('\n');
+          break;
+        case 2:
+          rules.append("/out").append(i).append("/**\n");
+          break;
+        default:
+          rules.append("docs/**/generated").append(i).append('\n');
+      }
+    }
+    BenchmarkStubs.contents.put(GITIGNORE, rules.toString());
+    BenchmarkStubs.contents.put(DCIGNORE, rules.toString());
+    ignoreInfoHolder =
+        new BenchmarkStubs.IgnoreInfoHolder(
+            new BenchmarkStubs.HashContentUtils(new BenchmarkStubs.PlatformUtils()));
+    ignoreInfoHolder.update_gitignoreFileContent(GITIGNORE);
+    ignoreInfoHolder.update_dcignoreFileContent(DCIGNORE);
+    ignoredFile = ROOT + "/docs/api/v1/generated" + (rulesCount - 1);
+  }
+
+  @TearDown
+  public void tearDown() {
+    ignoreInfoHolder.removeProject(BenchmarkStubs.PROJECT);
+    BenchmarkStubs.contents.remove(GITIGNORE);
+    BenchmarkStubs.contents.remove(DCIGNORE);
+  }
+
+  @Benchmark
+  public boolean gitIgnored() {
+    return ignoreInfoHolder.isGitIgnoredFile(ignoredFile);
+  }
+
+  @Benchmark
+  public boolean gitNotIgnored() {
+    return ignoreInfoHolder.isGitIgnoredFile(notIgnoredFile);
+  }
+
+  @Benchmark
+  public boolean dcIgnored() {
+    return ignoreInfoHolder.isDcIgnoredFile(ignoredFile);
+  }
+
+  @Benchmark
+  public boolean dcNotIgnored() {
+    return ignoreInfoHolder.isDcIgnoredFile(notIgnoredFile);
+  }
+}
@@ -0,0 +1,188 @@
+package ai.deepcode.javaclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails requests fast while the server is unreachable.
+ *
+ * <ul>
+ *   <li>{@link State#CLOSED}: requests go through. After {@code failureThreshold} consecutive
+ *       failures (network errors or 5xx responses) breaker switches to {@link State#OPEN}.
+ *   <li>{@link State#OPEN}: requests are not sent at all and complete immediately as network
+ *       errors (status code 0). After {@code openDuration} breaker switches to {@link
+ *       State#HALF_OPEN}.
+ *   <li>{@link State#HALF_OPEN}: single probe request is let through while others still fail fast.
+ *       Probe success closes the breaker, probe failure opens it again.
+ * </ul>
+ *
+ * Thread-safe.
+ */
+public final class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  @FunctionalInterface
+  public interface Listener {
+    void onStateChanged(@NotNull State oldState, @NotNull State newState);
+  }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openedAtNanos = 0;
+  private boolean probeInFlight = false;
+
+  /**
+   * @param failureThreshold consecutive failures to open the breaker
+   * @param openDuration time to fail fast before probing the server
+   */
+  public CircuitBreaker(int failureThreshold, long openDuration, @NotNull TimeUnit unit) {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("failureThreshold < 1: " + failureThreshold);
+    }
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = unit.toNanos(openDuration);
+  }
+
+  /** Opens after 5 consecutive failures, probes the server every 30 seconds. */
+  @NotNull
+  public static CircuitBreaker withDefaults() {
+    return new CircuitBreaker(5, 30, TimeUnit.SECONDS);
+  }
+
+  /** Never opens. */
+  @NotNull
+  public static CircuitBreaker disabled() {
+    return new CircuitBreaker(Integer.MAX_VALUE, 0, TimeUnit.SECONDS);
+  }
+
+  /** @return closed breaker with the same settings and no listeners, i.e. for another server */
+  @NotNull
+  public CircuitBreaker copy() {
+    return new CircuitBreaker(failureThreshold, openDurationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @NotNull
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return {@code false} if requests are failing fast now. {@code true} again once {@code
+   *     openDuration} passed, so the next request could go out as a probe.
+   */
+  public synchronized boolean isServerAvailable() {
+    switch (state) {
+      case OPEN:
+        return System.nanoTime() - openedAtNanos >= openDurationNanos;
+      case HALF_OPEN:
+        return !probeInFlight;
+      default:
+        return true;
+    }
+  }
+
+  public void addListener(@NotNull Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(@NotNull Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Close the breaker and forget failures, i.e. when server url changed. */
+  public void reset() {
+    final State oldState;
+    synchronized (this) {
+      oldState = state;
+      consecutiveFailures = 0;
+      probeInFlight = false;
+      state = State.CLOSED;
+    }
+    notifyListeners(oldState, State.CLOSED);
+  }
+
+  /**
+   * Should be called before sending a request. If {@code true} returned then exactly one of
+   * {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancel()} should follow.
+   *
+   * @return {@code false} if request should fail fast
+   */
+  boolean tryAcquire() {
+    final State oldState;
+    synchronized (this) {
+      oldState = state;
+      switch (state) {
+        case CLOSED:
+          return true;
+        case OPEN:
+          if (System.nanoTime() - openedAtNanos < openDurationNanos) return false;
+          state = State.HALF_OPEN;
+          probeInFlight = true;
+          break;
+        case HALF_OPEN:
+          if (probeInFlight) return false;
+          probeInFlight = true;
+          return true;
+      }
+    }
+    notifyListeners(oldState, State.HALF_OPEN);
+    return true;
+  }
+
+  void onSuccess() {
+    final State oldState;
+    synchronized (this) {
+      oldState = state;
+      consecutiveFailures = 0;
+      probeInFlight = false;
+      state = State.CLOSED;
+    }
+    notifyListeners(oldState, State.CLOSED);
+  }
+
+  void onFailure() {
+    final State oldState;
+    final State newState;
+    synchronized (this) {
+      oldState = state;
+      probeInFlight = false;
+      consecutiveFailures++;
+      if (state == State.HALF_OPEN
+          || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+      }
+      newState = state;
+    }
+    notifyListeners(oldState, newState);
+  }
+
+  /** Request was cancelled by the caller: nothing learned about the server. */
+  synchronized void onCancel() {
+    probeInFlight = false;
+  }
+
+  private void notifyListeners(@NotNull State oldState, @NotNull State newState) {
+    if (oldState == newState) return;
+    for (Listener listener : listeners) {
+      listener.onStateChanged(oldState, newState);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CircuitBreaker{state=" + state + ", consecutiveFailures=" + consecutiveFailures + '}';
+  }
+}
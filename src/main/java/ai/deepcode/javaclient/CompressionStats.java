@@ -0,0 +1,41 @@
+package ai.deepcode.javaclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Totals of request bytes before and after compression. */
+public final class CompressionStats {
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rawBytes = new AtomicLong();
+  private final AtomicLong compressedBytes = new AtomicLong();
+
+  void add(long raw, long compressed) {
+    requests.incrementAndGet();
+    rawBytes.addAndGet(raw);
+    compressedBytes.addAndGet(compressed);
+  }
+
+  /** @return number of compressed requests */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /** @return bytes of request bodies before compression */
+  public long getRawBytes() {
+    return rawBytes.get();
+  }
+
+  /** @return bytes of request bodies after compression */
+  public long getCompressedBytes() {
+    return compressedBytes.get();
+  }
+
+  @Override
+  public String toString() {
+    return "Compressed requests: "
+        + getRequests()
+        + ", raw bytes: "
+        + getRawBytes()
+        + ", compressed bytes: "
+        + getCompressedBytes();
+  }
+}
@@ -3,25 +3,24 @@
  */
 package ai.deepcode.javaclient;
 
+import ai.deepcode.javaclient.metrics.MetricsSink;
 import ai.deepcode.javaclient.requests.*;
 import ai.deepcode.javaclient.responses.*;
 
-import okhttp3.OkHttpClient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import retrofit2.Call;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
-import retrofit2.http.*;
 
-import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * https://deepcode.freshdesk.com/support/solutions/articles/60000346777-sessions
  * https://deepcode.freshdesk.com/support/solutions/articles/60000357438-bundles
+ *
+ * <p>Static access to the default {@link DeepCodeRestClient}. Use {@link
+ * DeepCodeRestClient#newBuilder()} to create separate clients (i.e. for different servers or with
+ * tuned connection pool and timeouts).
  */
 public final class DeepCodeRestApi {
 
@@ -29,37 +28,77 @@ public final class DeepCodeRestApi {
 
   private DeepCodeRestApi() {}
 
-  private static final String API_URL = "https://www.deepcode.ai/";
-
-  private static Retrofit retrofit = buildRetrofit(API_URL);
-
-  // Create simple REST adapter which points the baseUrl.
-  private static Retrofit buildRetrofit(String baseUrl) {
-    OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(100, TimeUnit.SECONDS)
-            .writeTimeout(100, TimeUnit.SECONDS)
-            .readTimeout(100, TimeUnit.SECONDS).build();
-    return new Retrofit.Builder()
-        .baseUrl(baseUrl + "publicapi/")
-            .client(client)
-        .addConverterFactory(GsonConverterFactory.create())
-        .build();
+  private static final List<CircuitBreaker.Listener> circuitBreakerListeners =
+      new CopyOnWriteArrayList<>();
+
+  // attached to circuit breaker of the current default client
+  private static final CircuitBreaker.Listener circuitBreakerForwarder =
+      (oldState, newState) -> {
+        for (CircuitBreaker.Listener listener : circuitBreakerListeners) {
+          listener.onStateChanged(oldState, newState);
+        }
+      };
+
+  private static volatile DeepCodeRestClient defaultClient =
+      DeepCodeRestClient.newBuilder().build();
+
+  static {
+    defaultClient.getCircuitBreaker().addListener(circuitBreakerForwarder);
+  }
+
+  @NotNull
+  public static DeepCodeRestClient getDefaultClient() {
+    return defaultClient;
   }
 
   /**
-   * Re-set baseUrl for retrofit instance
+   * Replace client all static methods delegate to. Circuit breaker listeners are notified if state
+   * of the new client's breaker differs from the old one.
+   */
+  public static synchronized void setDefaultClient(@NotNull DeepCodeRestClient client) {
+    final CircuitBreaker oldBreaker = defaultClient.getCircuitBreaker();
+    final CircuitBreaker newBreaker = client.getCircuitBreaker();
+    oldBreaker.removeListener(circuitBreakerForwarder);
+    newBreaker.addListener(circuitBreakerForwarder);
+    defaultClient = client;
+    final CircuitBreaker.State oldState = oldBreaker.getState();
+    final CircuitBreaker.State newState = newBreaker.getState();
+    if (oldState != newState) circuitBreakerForwarder.onStateChanged(oldState, newState);
+  }
+
+  /** Circuit breaker of the default client. */
+  @NotNull
+  public static CircuitBreaker getCircuitBreaker() {
+    return defaultClient.getCircuitBreaker();
+  }
+
+  /** Metrics of the default client. */
+  @NotNull
+  public static MetricsSink getMetricsSink() {
+    return defaultClient.getMetricsSink();
+  }
+
+  /**
+   * Listen for circuit breaker state changes of the default client. Listener stays subscribed
+   * when default client or its baseUrl is changed.
+   */
+  public static void addCircuitBreakerListener(@NotNull CircuitBreaker.Listener listener) {
+    circuitBreakerListeners.add(listener);
+  }
+
+  public static void removeCircuitBreakerListener(@NotNull CircuitBreaker.Listener listener) {
+    circuitBreakerListeners.remove(listener);
+  }
+
+  /**
+   * Re-set baseUrl for default client. Connection pool and other settings are kept, circuit
+   * breaker starts closed for the new server.
    *
    * @param baseUrl new baseUrl. <b>Null</b> or empty "" value will reset to default {@code
    *     #API_URL}
    */
-  public static void setBaseUrl(@Nullable String baseUrl) {
-    retrofit = buildRetrofit((baseUrl == null || baseUrl.isEmpty()) ? API_URL : baseUrl);
-  }
-
-  private interface LoginCall {
-    @retrofit2.http.Headers("Content-Type: application/json")
-    @POST("login")
-    Call<LoginResponse> doNewLogin(@Body SourceString source);
+  public static synchronized void setBaseUrl(@Nullable String baseUrl) {
+    setDefaultClient(defaultClient.withBaseUrl(baseUrl));
   }
 
   /**
@@ -69,30 +108,13 @@ public final class DeepCodeRestApi {
    */
   @NotNull
   public static LoginResponse newLogin(@NotNull String userAgent) {
-    final LoginCall loginCall = retrofit.create(LoginCall.class);
-    try {
-      final SourceString source = new SourceString(userAgent);
-      final Response<LoginResponse> retrofitResponse = loginCall.doNewLogin(source).execute();
-      LoginResponse result = retrofitResponse.body();
-      if (result == null) return new LoginResponse();
-      result.setStatusCode(retrofitResponse.code());
-      switch (retrofitResponse.code()) {
-        case 200:
-          result.setStatusDescription("The new login request was successful");
-          break;
-        default:
-          result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-          break;
-      }
-      return result;
-    } catch (IOException e) {
-      return new LoginResponse();
-    }
+    return defaultClient.newLogin(userAgent);
   }
 
-  private interface CheckSessionCall {
-    @GET("session")
-    Call<Void> doCheckSession(@Header("Session-Token") String token);
+  /** Async version of {@link #newLogin(String)} */
+  @NotNull
+  public static CompletableFuture<LoginResponse> newLoginAsync(@NotNull String userAgent) {
+    return defaultClient.newLoginAsync(userAgent);
   }
 
   /**
@@ -102,84 +124,13 @@ public final class DeepCodeRestApi {
    */
   @NotNull
   public static EmptyResponse checkSession(String token) {
-    CheckSessionCall checkSessionCall = retrofit.create(CheckSessionCall.class);
-    final EmptyResponse result = new EmptyResponse();
-    final Response<Void> retrofitResponse;
-    try {
-      retrofitResponse = checkSessionCall.doCheckSession(token).execute();
-    } catch (IOException e) {
-      return result;
-    }
-    result.setStatusCode(retrofitResponse.code());
-    switch (retrofitResponse.code()) {
-      case 200:
-        result.setStatusDescription("The login process was successful");
-        break;
-      case 304:
-        result.setStatusDescription("The login process has not been completed yet");
-        break;
-      case 401:
-        result.setStatusDescription("Missing or invalid sessionToken");
-        break;
-      default:
-        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-        break;
-    }
-    return result;
+    return defaultClient.checkSession(token);
   }
 
-  private interface CreateBundleCall {
-    @retrofit2.http.Headers("Content-Type: application/json")
-    @POST("bundle")
-    Call<CreateBundleResponse> doCreateBundle(
-        @Header("Session-Token") String token, @Body FileContentRequest files);
-
-    @retrofit2.http.Headers("Content-Type: application/json")
-    @POST("bundle")
-    Call<CreateBundleResponse> doCreateBundle(
-        @Header("Session-Token") String token, @Body FileHashRequest files);
-  }
-
-  private static <Req> CreateBundleResponse doCreateBundle(String token, Req request) {
-    CreateBundleCall createBundleCall = retrofit.create(CreateBundleCall.class);
-    Response<CreateBundleResponse> retrofitResponse;
-    try {
-      if (request instanceof FileContentRequest)
-        retrofitResponse =
-            createBundleCall.doCreateBundle(token, (FileContentRequest) request).execute();
-      else if (request instanceof FileHashRequest)
-        retrofitResponse =
-            createBundleCall.doCreateBundle(token, (FileHashRequest) request).execute();
-      else throw new IllegalArgumentException();
-    } catch (IOException e) {
-      return new CreateBundleResponse();
-    }
-    CreateBundleResponse result = retrofitResponse.body();
-    if (result == null) {
-      result = new CreateBundleResponse();
-    }
-    result.setStatusCode(retrofitResponse.code());
-    switch (retrofitResponse.code()) {
-      case 200:
-        result.setStatusDescription("The bundle creation was successful");
-        break;
-      case 400:
-        result.setStatusDescription("Request content doesn't match the specifications");
-        break;
-      case 401:
-        result.setStatusDescription("Missing sessionToken or incomplete login process");
-        break;
-      case 403:
-        result.setStatusDescription("Unauthorized access to requested repository");
-        break;
-      case 404:
-        result.setStatusDescription("Unable to resolve requested oid");
-        break;
-      default:
-        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-        break;
-    }
-    return result;
+  /** Async version of {@link #checkSession(String)} */
+  @NotNull
+  public static CompletableFuture<EmptyResponse> checkSessionAsync(String token) {
+    return defaultClient.checkSessionAsync(token);
   }
 
   /**
@@ -189,7 +140,7 @@ public final class DeepCodeRestApi {
    */
   @NotNull
   public static CreateBundleResponse createBundle(String token, FileContentRequest files) {
-    return doCreateBundle(token, files);
+    return defaultClient.createBundle(token, files);
   }
 
   /**
@@ -199,15 +150,21 @@ public final class DeepCodeRestApi {
    */
   @NotNull
   public static CreateBundleResponse createBundle(String token, FileHashRequest files) {
-    return doCreateBundle(token, files);
+    return defaultClient.createBundle(token, files);
   }
 
-  private interface CheckBundleCall {
-    //    @retrofit2.http.Headers("Content-Type: application/json")
-    @GET("bundle/{bundleId}")
-    Call<CreateBundleResponse> doCheckBundle(
-            @Header("Session-Token") String token,
-            @Path(value = "bundleId", encoded = true) String bundleId);
+  /** Async version of {@link #createBundle(String, FileContentRequest)} */
+  @NotNull
+  public static CompletableFuture<CreateBundleResponse> createBundleAsync(
+      String token, FileContentRequest files) {
+    return defaultClient.createBundleAsync(token, files);
+  }
+
+  /** Async version of {@link #createBundle(String, FileHashRequest)} */
+  @NotNull
+  public static CompletableFuture<CreateBundleResponse> createBundleAsync(
+      String token, FileHashRequest files) {
+    return defaultClient.createBundleAsync(token, files);
   }
 
   /**
@@ -217,49 +174,15 @@ public final class DeepCodeRestApi {
    * @return {@link CreateBundleResponse} instance
    */
   @NotNull
-  public static CreateBundleResponse checkBundle(
-          String token, String bundleId) {
-    CheckBundleCall checkBundleCall = retrofit.create(CheckBundleCall.class);
-    Response<CreateBundleResponse> retrofitResponse;
-    try {
-      retrofitResponse =
-              checkBundleCall.doCheckBundle(token, bundleId).execute();
-    } catch (IOException e) {
-      return new CreateBundleResponse();
-    }
-    CreateBundleResponse result = retrofitResponse.body();
-    if (result == null) {
-      result = new CreateBundleResponse();
-    }
-    result.setStatusCode(retrofitResponse.code());
-    switch (retrofitResponse.code()) {
-      case 200:
-        result.setStatusDescription("The bundle checked successfully");
-        break;
-      case 401:
-        result.setStatusDescription("Missing sessionToken or incomplete login process");
-        break;
-      case 403:
-        result.setStatusDescription("Unauthorized access to parent bundle");
-        break;
-      case 404:
-        result.setStatusDescription("Uploaded bundle has expired");
-        break;
-      default:
-        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-        break;
-    }
-    return result;
+  public static CreateBundleResponse checkBundle(String token, String bundleId) {
+    return defaultClient.checkBundle(token, bundleId);
   }
 
-
-  private interface ExtendBundleCall {
-    @retrofit2.http.Headers("Content-Type: application/json")
-    @PUT("bundle/{bundleId}")
-    Call<CreateBundleResponse> doExtendBundle(
-            @Header("Session-Token") String token,
-            @Path(value = "bundleId", encoded = true) String bundleId,
-            @Body ExtendBundleRequest extendBundleRequest);
+  /** Async version of {@link #checkBundle(String, String)} */
+  @NotNull
+  public static CompletableFuture<CreateBundleResponse> checkBundleAsync(
+      String token, String bundleId) {
+    return defaultClient.checkBundleAsync(token, bundleId);
   }
 
   /**
@@ -271,52 +194,14 @@ public final class DeepCodeRestApi {
   @NotNull
   public static CreateBundleResponse extendBundle(
       String token, String bundleId, ExtendBundleRequest extendBundleRequest) {
-    ExtendBundleCall extendBundleCall = retrofit.create(ExtendBundleCall.class);
-    Response<CreateBundleResponse> retrofitResponse;
-    try {
-      retrofitResponse =
-          extendBundleCall.doExtendBundle(token, bundleId, extendBundleRequest).execute();
-    } catch (IOException e) {
-      return new CreateBundleResponse();
-    }
-    CreateBundleResponse result = retrofitResponse.body();
-    if (result == null) {
-      result = new CreateBundleResponse();
-    }
-    result.setStatusCode(retrofitResponse.code());
-    switch (retrofitResponse.code()) {
-      case 200:
-        result.setStatusDescription("The bundle extension was successful");
-        break;
-      case 400:
-        result.setStatusDescription("Attempted to extend a git bundle, or ended up with an empty bundle after the extension");
-        break;
-      case 401:
-        result.setStatusDescription("Missing sessionToken or incomplete login process");
-        break;
-      case 403:
-        result.setStatusDescription("Unauthorized access to parent bundle");
-        break;
-      case 404:
-        result.setStatusDescription("Parent bundle has expired");
-        break;
-      case 413:
-        result.setStatusDescription("Payload too large");
-        break;
-      default:
-        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-        break;
-    }
-    return result;
+    return defaultClient.extendBundle(token, bundleId, extendBundleRequest);
   }
 
-  private interface UploadFilesCall {
-    @retrofit2.http.Headers("Content-Type: application/json;charset=utf-8")
-    @POST("file/{bundleId}")
-    Call<Void> doUploadFiles(
-        @Header("Session-Token") String token,
-        @Path(value = "bundleId", encoded = true) String bundleId,
-        @Body List<FileHash2ContentRequest> listHash2Content);
+  /** Async version of {@link #extendBundle(String, String, ExtendBundleRequest)} */
+  @NotNull
+  public static CompletableFuture<CreateBundleResponse> extendBundleAsync(
+      String token, String bundleId, ExtendBundleRequest extendBundleRequest) {
+    return defaultClient.extendBundleAsync(token, bundleId, extendBundleRequest);
   }
 
   /**
@@ -327,49 +212,36 @@ public final class DeepCodeRestApi {
    * @param request List<FileHash2ContentRequest>
    * @return EmptyResponse with return code and description.
    */
+  @NotNull
   public static EmptyResponse UploadFiles(
       String token, String bundleId, List<FileHash2ContentRequest> request) {
-    UploadFilesCall uploadFilesCall = retrofit.create(UploadFilesCall.class);
-    Response<Void> retrofitResponse;
-    try {
-      retrofitResponse = uploadFilesCall.doUploadFiles(token, bundleId, request).execute();
-    } catch (IOException e) {
-      return new EmptyResponse();
-    }
-    EmptyResponse result = new EmptyResponse();
-    result.setStatusCode(retrofitResponse.code());
-    switch (retrofitResponse.code()) {
-      case 200:
-        result.setStatusDescription("Upload succeeded");
-        break;
-      case 400:
-        result.setStatusDescription(
-            "Content and hash mismatch or attempted to upload files to a git bundle");
-        break;
-      case 401:
-        result.setStatusDescription("Missing sessionToken or incomplete login process");
-        break;
-      case 403:
-        result.setStatusDescription("Unauthorized access to requested bundle");
-        break;
-      case 413:
-        result.setStatusDescription("Payload too large");
-        break;
-      default:
-        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-        break;
-    }
-    return result;
+    return defaultClient.uploadFiles(token, bundleId, request);
   }
 
-  private interface GetAnalysisCall {
-    //    @retrofit2.http.Headers("Content-Type: application/json")
-    @GET("analysis/{bundleId}")
-    Call<GetAnalysisResponse> doGetAnalysis(
-        @Header("Session-Token") String token,
-        @Path(value = "bundleId", encoded = true) String bundleId,
-        @Query("severity") Integer severity,
-        @QueryName String linters);
+  /** Async version of {@link #UploadFiles(String, String, List)} */
+  @NotNull
+  public static CompletableFuture<EmptyResponse> UploadFilesAsync(
+      String token, String bundleId, List<FileHash2ContentRequest> request) {
+    return defaultClient.uploadFilesAsync(token, bundleId, request);
+  }
+
+  /**
+   * Uploads missing files to a bundle. Request JSON is streamed to the server, file contents are
+   * read one by one while sending.
+   *
+   * @return EmptyResponse with return code and description.
+   */
+  @NotNull
+  public static EmptyResponse UploadFiles(
+      String token, String bundleId, FileHash2ContentRequestBody<?> request) {
+    return defaultClient.uploadFiles(token, bundleId, request);
+  }
+
+  /** Async version of {@link #UploadFiles(String, String, FileHash2ContentRequestBody)} */
+  @NotNull
+  public static CompletableFuture<EmptyResponse> UploadFilesAsync(
+      String token, String bundleId, FileHash2ContentRequestBody<?> request) {
+    return defaultClient.uploadFilesAsync(token, bundleId, request);
   }
 
   /**
@@ -380,38 +252,41 @@ public final class DeepCodeRestApi {
   @NotNull
   public static GetAnalysisResponse getAnalysis(
       String token, String bundleId, Integer severity, boolean useLinters) {
-    GetAnalysisCall getAnalysisCall = retrofit.create(GetAnalysisCall.class);
-    try {
-      Response<GetAnalysisResponse> retrofitResponse =
-          getAnalysisCall
-              .doGetAnalysis(token, bundleId, severity, (useLinters) ? "linters" : null)
-              .execute();
-      GetAnalysisResponse result = retrofitResponse.body();
-      if (result == null) result = new GetAnalysisResponse();
-      result.setStatusCode(retrofitResponse.code());
-      switch (retrofitResponse.code()) {
-        case 200:
-          result.setStatusDescription("The analysis request was successful");
-          break;
-        case 401:
-          result.setStatusDescription("Missing sessionToken or incomplete login process");
-          break;
-        case 403:
-          result.setStatusDescription("Unauthorized access to requested repository");
-          break;
-        default:
-          result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-          break;
-      }
-      return result;
-    } catch (IOException e) {
-      return new GetAnalysisResponse();
-    }
+    return defaultClient.getAnalysis(token, bundleId, severity, useLinters);
+  }
+
+  /** Async version of {@link #getAnalysis(String, String, Integer, boolean)} */
+  @NotNull
+  public static CompletableFuture<GetAnalysisResponse> getAnalysisAsync(
+      String token, String bundleId, Integer severity, boolean useLinters) {
+    return defaultClient.getAnalysisAsync(token, bundleId, severity, useLinters);
+  }
+
+  /**
+   * Starts a new bundle analysis or checks its current status. Available results are not
+   * deserialized into {@link AnalysisResults} but streamed to {@code resultsReader}.
+   *
+   * @return {@link GetAnalysisResponse} instance with {@code null} analysisResults}
+   */
+  @NotNull
+  public static GetAnalysisResponse getAnalysis(
+      String token,
+      String bundleId,
+      Integer severity,
+      boolean useLinters,
+      @NotNull AnalysisResultsReader resultsReader) {
+    return defaultClient.getAnalysis(token, bundleId, severity, useLinters, resultsReader);
   }
 
-  private interface GetFiltersCall {
-    @GET("filters")
-    Call<GetFiltersResponse> doGetFilters(@Header("Session-Token") String token);
+  /** Async version of {@link #getAnalysis(String, String, Integer, boolean, AnalysisResultsReader)} */
+  @NotNull
+  public static CompletableFuture<GetAnalysisResponse> getAnalysisAsync(
+      String token,
+      String bundleId,
+      Integer severity,
+      boolean useLinters,
+      @NotNull AnalysisResultsReader resultsReader) {
+    return defaultClient.getAnalysisAsync(token, bundleId, severity, useLinters, resultsReader);
   }
 
   /**
@@ -421,26 +296,12 @@ public final class DeepCodeRestApi {
    */
   @NotNull
   public static GetFiltersResponse getFilters(String token) {
-    GetFiltersCall getFiltersCall = retrofit.create(GetFiltersCall.class);
-    try {
-      Response<GetFiltersResponse> retrofitResponse = getFiltersCall.doGetFilters(token).execute();
-      GetFiltersResponse result = retrofitResponse.body();
-      if (result == null) result = new GetFiltersResponse();
-      result.setStatusCode(retrofitResponse.code());
-      switch (retrofitResponse.code()) {
-        case 200:
-          result.setStatusDescription("The filters request was successful");
-          break;
-        case 401:
-          result.setStatusDescription("Missing sessionToken or incomplete login process");
-          break;
-        default:
-          result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
-          break;
-      }
-      return result;
-    } catch (IOException e) {
-      return new GetFiltersResponse();
-    }
+    return defaultClient.getFilters(token);
+  }
+
+  /** Async version of {@link #getFilters(String)} */
+  @NotNull
+  public static CompletableFuture<GetFiltersResponse> getFiltersAsync(String token) {
+    return defaultClient.getFiltersAsync(token);
   }
 }
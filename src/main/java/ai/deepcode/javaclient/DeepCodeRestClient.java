@@ -0,0 +1,1163 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.requests.*;
+import ai.deepcode.javaclient.metrics.InMemoryMetricsSink;
+import ai.deepcode.javaclient.metrics.MetricsSink;
+import ai.deepcode.javaclient.responses.*;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Client for DeepCode public API bound to one server and owning its own {@link OkHttpClient}
+ * (connection pool, dispatcher, protocols and timeouts). Instances are immutable and thread-safe,
+ * create them with {@link #newBuilder()}. Several clients could be used in parallel to talk with
+ * different servers.
+ *
+ * <p>Every request is available in blocking form and as {@code ...Async} counterpart returning
+ * {@link CompletableFuture}. Async methods use {@link Call#enqueue} so no caller thread is held
+ * while waiting for the server, nor any thread while waiting for a retry. Both forms fill in the
+ * same status code and description; network errors are reported as default (empty) response with
+ * status code 0 in both cases, after retries allowed by {@link RetryPolicy} are exhausted. While
+ * {@link CircuitBreaker} is open requests are not sent and complete immediately the same way.
+ *
+ * <p>See {@link DeepCodeRestApi} for static access to the default client.
+ */
+public final class DeepCodeRestClient {
+
+  static final String API_URL = "https://www.deepcode.ai/";
+
+  // copy of the Builder this client was created with
+  private final Builder settings;
+  private final OkHttpClient okHttpClient;
+  private final GzipRequestInterceptor gzipInterceptor;
+  private final RetryScheduler retryScheduler;
+
+  // Service proxies are created once per client: retrofit.create() builds new dynamic proxy on
+  // every call.
+  private final LoginCall loginCall;
+  private final CheckSessionCall checkSessionCall;
+  private final CreateBundleCall createBundleCall;
+  private final CheckBundleCall checkBundleCall;
+  private final ExtendBundleCall extendBundleCall;
+  private final UploadFilesCall uploadFilesCall;
+  private final GetAnalysisCall getAnalysisCall;
+  private final GetFiltersCall getFiltersCall;
+
+  private DeepCodeRestClient(
+      @NotNull Builder settings,
+      @NotNull OkHttpClient okHttpClient,
+      @NotNull GzipRequestInterceptor gzipInterceptor,
+      @NotNull RetryScheduler retryScheduler) {
+    this.settings = settings;
+    this.okHttpClient = okHttpClient;
+    this.gzipInterceptor = gzipInterceptor;
+    this.retryScheduler = retryScheduler;
+    // Create simple REST adapter which points the baseUrl.
+    final Retrofit retrofit =
+        new Retrofit.Builder()
+            .baseUrl(settings.baseUrl + "publicapi/")
+            .client(okHttpClient)
+            .addConverterFactory(GsonConverterFactory.create())
+            .build();
+    loginCall = retrofit.create(LoginCall.class);
+    checkSessionCall = retrofit.create(CheckSessionCall.class);
+    createBundleCall = retrofit.create(CreateBundleCall.class);
+    checkBundleCall = retrofit.create(CheckBundleCall.class);
+    extendBundleCall = retrofit.create(ExtendBundleCall.class);
+    uploadFilesCall = retrofit.create(UploadFilesCall.class);
+    getAnalysisCall = retrofit.create(GetAnalysisCall.class);
+    getFiltersCall = retrofit.create(GetFiltersCall.class);
+  }
+
+  @NotNull
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** @return builder pre-filled with settings of this client */
+  @NotNull
+  public Builder toBuilder() {
+    return settings.copy();
+  }
+
+  /**
+   * Client for another server sharing connection pool, dispatcher and all other settings with this
+   * one. Circuit breaker gets {@link CircuitBreaker#copy() copied}, as the state of this one is
+   * about its server; listeners are not copied.
+   *
+   * @param baseUrl new baseUrl. <b>Null</b> or empty "" value will reset to default {@code
+   *     #API_URL}
+   */
+  @NotNull
+  public DeepCodeRestClient withBaseUrl(@Nullable String baseUrl) {
+    return new DeepCodeRestClient(
+        settings.copy().baseUrl(baseUrl).circuitBreaker(settings.circuitBreaker.copy()),
+        okHttpClient,
+        gzipInterceptor,
+        retryScheduler);
+  }
+
+  @NotNull
+  public String getBaseUrl() {
+    return settings.baseUrl;
+  }
+
+  /** Circuit breaker guarding all requests of this client. */
+  @NotNull
+  public CircuitBreaker getCircuitBreaker() {
+    return settings.circuitBreaker;
+  }
+
+  /**
+   * Receiver of network metrics of this client, {@link InMemoryMetricsSink} unless other set with
+   * {@link Builder#metricsSink}.
+   */
+  @NotNull
+  public MetricsSink getMetricsSink() {
+    return settings.metricsSink;
+  }
+
+  /** @return raw and compressed bytes of gzip-compressed request bodies sent by this client */
+  @NotNull
+  public CompressionStats getCompressionStats() {
+    return gzipInterceptor.getStats();
+  }
+
+  @NotNull
+  private static String normalizeBaseUrl(@Nullable String baseUrl) {
+    if (baseUrl == null || baseUrl.isEmpty()) return API_URL;
+    return baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+  }
+
+  public static final class Builder {
+    private String baseUrl = API_URL;
+    private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(100);
+    private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(100);
+    private long writeTimeoutMillis = TimeUnit.SECONDS.toMillis(100);
+    // OkHttp defaults
+    private int maxIdleConnections = 5;
+    private long keepAliveDurationMillis = TimeUnit.MINUTES.toMillis(5);
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 5;
+    private List<Protocol> protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+    private Set<Endpoint> gzipEndpoints = EnumSet.noneOf(Endpoint.class);
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    // created in build() if not set, so every client gets its own one by default
+    private CircuitBreaker circuitBreaker = null;
+    private MetricsSink metricsSink = null;
+
+    private Builder() {}
+
+    @NotNull
+    private Builder copy() {
+      final Builder copy = new Builder();
+      copy.baseUrl = baseUrl;
+      copy.connectTimeoutMillis = connectTimeoutMillis;
+      copy.readTimeoutMillis = readTimeoutMillis;
+      copy.writeTimeoutMillis = writeTimeoutMillis;
+      copy.maxIdleConnections = maxIdleConnections;
+      copy.keepAliveDurationMillis = keepAliveDurationMillis;
+      copy.maxRequests = maxRequests;
+      copy.maxRequestsPerHost = maxRequestsPerHost;
+      copy.protocols = new ArrayList<>(protocols);
+      copy.gzipEndpoints = EnumSet.copyOf(gzipEndpoints);
+      copy.retryPolicy = retryPolicy;
+      copy.circuitBreaker = circuitBreaker;
+      copy.metricsSink = metricsSink;
+      return copy;
+    }
+
+    /** @param baseUrl <b>Null</b> or empty "" value will reset to default {@code #API_URL} */
+    @NotNull
+    public Builder baseUrl(@Nullable String baseUrl) {
+      this.baseUrl = normalizeBaseUrl(baseUrl);
+      return this;
+    }
+
+    @NotNull
+    public Builder connectTimeout(long timeout, @NotNull TimeUnit unit) {
+      connectTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    @NotNull
+    public Builder readTimeout(long timeout, @NotNull TimeUnit unit) {
+      readTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    @NotNull
+    public Builder writeTimeout(long timeout, @NotNull TimeUnit unit) {
+      writeTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /** Connection pool settings, see {@link ConnectionPool} */
+    @NotNull
+    public Builder connectionPool(
+        int maxIdleConnections, long keepAliveDuration, @NotNull TimeUnit unit) {
+      this.maxIdleConnections = maxIdleConnections;
+      this.keepAliveDurationMillis = unit.toMillis(keepAliveDuration);
+      return this;
+    }
+
+    /** Max number of requests to execute concurrently, see {@link Dispatcher#setMaxRequests} */
+    @NotNull
+    public Builder maxRequests(int maxRequests) {
+      this.maxRequests = maxRequests;
+      return this;
+    }
+
+    /**
+     * Max number of requests for each host to execute concurrently, see {@link
+     * Dispatcher#setMaxRequestsPerHost}
+     */
+    @NotNull
+    public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+      this.maxRequestsPerHost = maxRequestsPerHost;
+      return this;
+    }
+
+    /** See {@link OkHttpClient.Builder#protocols} */
+    @NotNull
+    public Builder protocols(@NotNull List<Protocol> protocols) {
+      this.protocols = new ArrayList<>(protocols);
+      return this;
+    }
+
+    /**
+     * Send request bodies of given endpoints compressed with {@code Content-Encoding: gzip}.
+     * Meaningful for {@link Endpoint#BUNDLE_CREATE}, {@link Endpoint#BUNDLE_EXTEND} and {@link
+     * Endpoint#FILE_UPLOAD}. Compression is switched off for endpoint if server responds with 415.
+     * Empty by default.
+     */
+    @NotNull
+    public Builder gzipRequests(@NotNull Collection<Endpoint> endpoints) {
+      this.gzipEndpoints =
+          endpoints.isEmpty() ? EnumSet.noneOf(Endpoint.class) : EnumSet.copyOf(endpoints);
+      return this;
+    }
+
+    /** See {@link #gzipRequests(Collection)} */
+    @NotNull
+    public Builder gzipRequests(@NotNull Endpoint... endpoints) {
+      return gzipRequests(Arrays.asList(endpoints));
+    }
+
+    /**
+     * How failed requests are retried, {@link RetryPolicy#DEFAULT} by default. Use {@link
+     * RetryPolicy#NONE} to switch retries off.
+     */
+    @NotNull
+    public Builder retryPolicy(@NotNull RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Circuit breaker to fail fast while the server is unreachable. {@link
+     * CircuitBreaker#withDefaults()} new instance for every built client by default, use {@link
+     * CircuitBreaker#disabled()} to switch it off.
+     */
+    @NotNull
+    public Builder circuitBreaker(@NotNull CircuitBreaker circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+      return this;
+    }
+
+    /**
+     * Receiver of per-endpoint latencies, body sizes and status codes. New {@link
+     * InMemoryMetricsSink} for every built client by default, use {@link MetricsSink#NONE} to
+     * switch metrics off.
+     */
+    @NotNull
+    public Builder metricsSink(@NotNull MetricsSink metricsSink) {
+      this.metricsSink = metricsSink;
+      return this;
+    }
+
+    @NotNull
+    public DeepCodeRestClient build() {
+      final Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequests(maxRequests);
+      dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+      final Builder settings = copy();
+      if (settings.circuitBreaker == null) settings.circuitBreaker = CircuitBreaker.withDefaults();
+      if (settings.metricsSink == null) settings.metricsSink = new InMemoryMetricsSink();
+      final GzipRequestInterceptor gzipInterceptor = new GzipRequestInterceptor(gzipEndpoints);
+      final OkHttpClient okHttpClient =
+          new OkHttpClient.Builder()
+              .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+              .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS)
+              .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+              .connectionPool(
+                  new ConnectionPool(
+                      maxIdleConnections, keepAliveDurationMillis, TimeUnit.MILLISECONDS))
+              .dispatcher(dispatcher)
+              .protocols(protocols)
+              .eventListenerFactory(MetricsEventListener.factory(settings.metricsSink))
+              .addInterceptor(gzipInterceptor)
+              .build();
+      return new DeepCodeRestClient(
+          settings, okHttpClient, gzipInterceptor, new RetryScheduler(retryPolicy));
+    }
+  }
+
+  /**
+   * Blocking execution of the call, waiting between retries on the calling thread.
+   *
+   * @param responseMapper fill in result with status code and description
+   * @param errorResponse result to return in case of network error
+   */
+  @NotNull
+  private <T, R extends EmptyResponse> R execute(
+      @NotNull Call<T> call,
+      @NotNull Function<Response<T>, R> responseMapper,
+      @NotNull Supplier<R> errorResponse) {
+    final CircuitBreaker circuitBreaker = settings.circuitBreaker;
+    if (!circuitBreaker.tryAcquire()) return serverUnavailable(errorResponse);
+    final Endpoint endpoint = Endpoint.of(call.request());
+    final long startMillis = System.currentTimeMillis();
+    for (int attempt = 1; ; attempt++) {
+      Response<T> retrofitResponse = null;
+      try {
+        retrofitResponse = call.execute();
+      } catch (IOException e) {
+        // retrofitResponse stays null
+      } catch (RuntimeException e) {
+        circuitBreaker.onCancel();
+        throw e;
+      }
+      final long delayMillis =
+          retryScheduler.retryDelayMillis(
+              endpoint,
+              (retrofitResponse == null) ? null : retrofitResponse.raw(),
+              attempt,
+              startMillis);
+      if (delayMillis < 0 || call.isCanceled()) {
+        if (retrofitResponse == null) {
+          onNetworkError(call);
+          return errorResponse.get();
+        }
+        onResponse(retrofitResponse.code());
+        return responseMapper.apply(retrofitResponse);
+      }
+      if (retrofitResponse != null) closeErrorBody(retrofitResponse);
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        circuitBreaker.onCancel();
+        return errorResponse.get();
+      }
+      call = call.clone();
+    }
+  }
+
+  /**
+   * Non-blocking execution of the call. Cancelling of the returned future cancels the call.
+   *
+   * @param responseMapper fill in result with status code and description
+   * @param errorResponse result to complete with in case of network error
+   */
+  @NotNull
+  private <T, R extends EmptyResponse> CompletableFuture<R> enqueue(
+      @NotNull Call<T> call,
+      @NotNull Function<Response<T>, R> responseMapper,
+      @NotNull Supplier<R> errorResponse) {
+    if (!settings.circuitBreaker.tryAcquire()) {
+      return CompletableFuture.completedFuture(serverUnavailable(errorResponse));
+    }
+    final AsyncCall<T, R> asyncCall = new AsyncCall<>(call, responseMapper, errorResponse);
+    asyncCall.future.whenComplete(
+        (result, throwable) -> {
+          if (asyncCall.future.isCancelled()) asyncCall.call.cancel();
+        });
+    asyncCall.start(call);
+    return asyncCall.future;
+  }
+
+  /** Attempts of one async call, the next one is enqueued by {@link RetryScheduler} after delay. */
+  private final class AsyncCall<T, R extends EmptyResponse> implements Callback<T> {
+    private final Endpoint endpoint;
+    private final Function<Response<T>, R> responseMapper;
+    private final Supplier<R> errorResponse;
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+    private final long startMillis = System.currentTimeMillis();
+    // attempts run one after another
+    private volatile Call<T> call;
+    private volatile int attempt = 1;
+
+    private AsyncCall(
+        @NotNull Call<T> call,
+        @NotNull Function<Response<T>, R> responseMapper,
+        @NotNull Supplier<R> errorResponse) {
+      this.endpoint = Endpoint.of(call.request());
+      this.responseMapper = responseMapper;
+      this.errorResponse = errorResponse;
+      this.call = call;
+    }
+
+    private void start(@NotNull Call<T> call) {
+      this.call = call;
+      // future could be cancelled before the new call is visible to its cancellation
+      if (future.isCancelled()) call.cancel();
+      call.enqueue(this);
+    }
+
+    @Override
+    public void onResponse(@NotNull Call<T> call, @NotNull Response<T> response) {
+      if (!future.isDone() && retry(response.raw())) {
+        closeErrorBody(response);
+        return;
+      }
+      DeepCodeRestClient.this.onResponse(response.code());
+      try {
+        future.complete(responseMapper.apply(response));
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public void onFailure(@NotNull Call<T> call, @NotNull Throwable t) {
+      // same as for blocking execution: only network errors are mapped to empty response
+      if (t instanceof IOException) {
+        if (!call.isCanceled() && !future.isDone() && retry(null)) return;
+        onNetworkError(call);
+        future.complete(errorResponse.get());
+      } else {
+        settings.circuitBreaker.onCancel();
+        future.completeExceptionally(t);
+      }
+    }
+
+    /** @return false if failed attempt should not be retried */
+    private boolean retry(@Nullable okhttp3.Response response) {
+      final long delayMillis =
+          retryScheduler.retryDelayMillis(endpoint, response, attempt, startMillis);
+      if (delayMillis < 0) return false;
+      attempt++;
+      RetryScheduler.schedule(
+          () -> {
+            if (future.isDone()) {
+              // cancelled while waiting
+              settings.circuitBreaker.onCancel();
+            } else {
+              start(call.clone());
+            }
+          },
+          delayMillis);
+      return true;
+    }
+  }
+
+  private static void closeErrorBody(@NotNull Response<?> retrofitResponse) {
+    final ResponseBody errorBody = retrofitResponse.errorBody();
+    if (errorBody != null) errorBody.close();
+  }
+
+  private void onResponse(int code) {
+    // 5xx: server is there but not able to serve requests
+    if (code >= 500) {
+      settings.circuitBreaker.onFailure();
+    } else {
+      settings.circuitBreaker.onSuccess();
+    }
+  }
+
+  private void onNetworkError(@NotNull Call<?> call) {
+    if (call.isCanceled()) {
+      settings.circuitBreaker.onCancel();
+    } else {
+      settings.circuitBreaker.onFailure();
+    }
+  }
+
+  @NotNull
+  private static <R extends EmptyResponse> R serverUnavailable(@NotNull Supplier<R> errorResponse) {
+    final R result = errorResponse.get();
+    result.setStatusDescription(
+        "Server is unavailable, requests are paused for a while."
+            + " Check your Settings, Network connection and/or try again later.");
+    return result;
+  }
+
+  private interface LoginCall {
+    @retrofit2.http.Headers("Content-Type: application/json")
+    @POST("login")
+    Call<LoginResponse> doNewLogin(@Body SourceString source);
+  }
+
+  @NotNull
+  private static LoginResponse toLoginResponse(@NotNull Response<LoginResponse> retrofitResponse) {
+    LoginResponse result = retrofitResponse.body();
+    if (result == null) return new LoginResponse();
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The new login request was successful");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<LoginResponse> newLoginCall(@NotNull String userAgent) {
+    return loginCall.doNewLogin(new SourceString(userAgent));
+  }
+
+  /**
+   * Requests the creation of a new login session.
+   *
+   * @return {@link LoginResponse} instance
+   */
+  @NotNull
+  public LoginResponse newLogin(@NotNull String userAgent) {
+    return execute(
+        newLoginCall(userAgent), DeepCodeRestClient::toLoginResponse, LoginResponse::new);
+  }
+
+  /** Async version of {@link #newLogin(String)} */
+  @NotNull
+  public CompletableFuture<LoginResponse> newLoginAsync(@NotNull String userAgent) {
+    return enqueue(
+        newLoginCall(userAgent), DeepCodeRestClient::toLoginResponse, LoginResponse::new);
+  }
+
+  private interface CheckSessionCall {
+    @GET("session")
+    Call<Void> doCheckSession(@Header("Session-Token") String token);
+  }
+
+  @NotNull
+  private static EmptyResponse toCheckSessionResponse(@NotNull Response<Void> retrofitResponse) {
+    final EmptyResponse result = new EmptyResponse();
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The login process was successful");
+        break;
+      case 304:
+        result.setStatusDescription("The login process has not been completed yet");
+        break;
+      case 401:
+        result.setStatusDescription("Missing or invalid sessionToken");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<Void> checkSessionCall(String token) {
+    return checkSessionCall.doCheckSession(token);
+  }
+
+  /**
+   * Checks status of the login process.
+   *
+   * @return {@link EmptyResponse} instance
+   */
+  @NotNull
+  public EmptyResponse checkSession(String token) {
+    return execute(
+        checkSessionCall(token), DeepCodeRestClient::toCheckSessionResponse, EmptyResponse::new);
+  }
+
+  /** Async version of {@link #checkSession(String)} */
+  @NotNull
+  public CompletableFuture<EmptyResponse> checkSessionAsync(String token) {
+    return enqueue(
+        checkSessionCall(token), DeepCodeRestClient::toCheckSessionResponse, EmptyResponse::new);
+  }
+
+  private interface CreateBundleCall {
+    @retrofit2.http.Headers("Content-Type: application/json")
+    @POST("bundle")
+    Call<CreateBundleResponse> doCreateBundle(
+        @Header("Session-Token") String token, @Body FileContentRequest files);
+
+    @retrofit2.http.Headers("Content-Type: application/json")
+    @POST("bundle")
+    Call<CreateBundleResponse> doCreateBundle(
+        @Header("Session-Token") String token, @Body FileHashRequest files);
+  }
+
+  @NotNull
+  private static CreateBundleResponse toCreateBundleResponse(
+      @NotNull Response<CreateBundleResponse> retrofitResponse) {
+    CreateBundleResponse result = retrofitResponse.body();
+    if (result == null) {
+      result = new CreateBundleResponse();
+    }
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The bundle creation was successful");
+        break;
+      case 400:
+        result.setStatusDescription("Request content doesn't match the specifications");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      case 403:
+        result.setStatusDescription("Unauthorized access to requested repository");
+        break;
+      case 404:
+        result.setStatusDescription("Unable to resolve requested oid");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private <Req> Call<CreateBundleResponse> createBundleCall(String token, Req request) {
+    if (request instanceof FileContentRequest)
+      return createBundleCall.doCreateBundle(token, (FileContentRequest) request);
+    else if (request instanceof FileHashRequest)
+      return createBundleCall.doCreateBundle(token, (FileHashRequest) request);
+    else throw new IllegalArgumentException();
+  }
+
+  /**
+   * Creates a new bundle with direct file(s) source at {@link FileContent}.
+   *
+   * @return {@link CreateBundleResponse} instance
+   */
+  @NotNull
+  public CreateBundleResponse createBundle(String token, FileContentRequest files) {
+    return execute(
+        createBundleCall(token, files),
+        DeepCodeRestClient::toCreateBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  /**
+   * Creates a new bundle for file(s) with Hash.
+   *
+   * @return {@link CreateBundleResponse} instance
+   */
+  @NotNull
+  public CreateBundleResponse createBundle(String token, FileHashRequest files) {
+    return execute(
+        createBundleCall(token, files),
+        DeepCodeRestClient::toCreateBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  /** Async version of {@link #createBundle(String, FileContentRequest)} */
+  @NotNull
+  public CompletableFuture<CreateBundleResponse> createBundleAsync(
+      String token, FileContentRequest files) {
+    return enqueue(
+        createBundleCall(token, files),
+        DeepCodeRestClient::toCreateBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  /** Async version of {@link #createBundle(String, FileHashRequest)} */
+  @NotNull
+  public CompletableFuture<CreateBundleResponse> createBundleAsync(
+      String token, FileHashRequest files) {
+    return enqueue(
+        createBundleCall(token, files),
+        DeepCodeRestClient::toCreateBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  private interface CheckBundleCall {
+    //    @retrofit2.http.Headers("Content-Type: application/json")
+    @GET("bundle/{bundleId}")
+    Call<CreateBundleResponse> doCheckBundle(
+            @Header("Session-Token") String token,
+            @Path(value = "bundleId", encoded = true) String bundleId);
+  }
+
+  @NotNull
+  private static CreateBundleResponse toCheckBundleResponse(
+      @NotNull Response<CreateBundleResponse> retrofitResponse) {
+    CreateBundleResponse result = retrofitResponse.body();
+    if (result == null) {
+      result = new CreateBundleResponse();
+    }
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The bundle checked successfully");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      case 403:
+        result.setStatusDescription("Unauthorized access to parent bundle");
+        break;
+      case 404:
+        result.setStatusDescription("Uploaded bundle has expired");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<CreateBundleResponse> checkBundleCall(String token, String bundleId) {
+    return checkBundleCall.doCheckBundle(token, bundleId);
+  }
+
+  /**
+   * Checks the status of a bundle.
+   *
+   * @param bundleId the parent bundle to extend
+   * @return {@link CreateBundleResponse} instance
+   */
+  @NotNull
+  public CreateBundleResponse checkBundle(
+          String token, String bundleId) {
+    return execute(
+        checkBundleCall(token, bundleId),
+        DeepCodeRestClient::toCheckBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  /** Async version of {@link #checkBundle(String, String)} */
+  @NotNull
+  public CompletableFuture<CreateBundleResponse> checkBundleAsync(
+      String token, String bundleId) {
+    return enqueue(
+        checkBundleCall(token, bundleId),
+        DeepCodeRestClient::toCheckBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  private interface ExtendBundleCall {
+    @retrofit2.http.Headers("Content-Type: application/json")
+    @PUT("bundle/{bundleId}")
+    Call<CreateBundleResponse> doExtendBundle(
+            @Header("Session-Token") String token,
+            @Path(value = "bundleId", encoded = true) String bundleId,
+            @Body ExtendBundleRequest extendBundleRequest);
+  }
+
+  @NotNull
+  private static CreateBundleResponse toExtendBundleResponse(
+      @NotNull Response<CreateBundleResponse> retrofitResponse) {
+    CreateBundleResponse result = retrofitResponse.body();
+    if (result == null) {
+      result = new CreateBundleResponse();
+    }
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The bundle extension was successful");
+        break;
+      case 400:
+        result.setStatusDescription("Attempted to extend a git bundle, or ended up with an empty bundle after the extension");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      case 403:
+        result.setStatusDescription("Unauthorized access to parent bundle");
+        break;
+      case 404:
+        result.setStatusDescription("Parent bundle has expired");
+        break;
+      case 413:
+        result.setStatusDescription("Payload too large");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<CreateBundleResponse> extendBundleCall(
+      String token, String bundleId, ExtendBundleRequest extendBundleRequest) {
+    return extendBundleCall.doExtendBundle(token, bundleId, extendBundleRequest);
+  }
+
+  /**
+   * Creates a new bundle by extending a previously uploaded one.
+   *
+   * @param bundleId the parent bundle to extend
+   * @return {@link CreateBundleResponse} instance
+   */
+  @NotNull
+  public CreateBundleResponse extendBundle(
+      String token, String bundleId, ExtendBundleRequest extendBundleRequest) {
+    return execute(
+        extendBundleCall(token, bundleId, extendBundleRequest),
+        DeepCodeRestClient::toExtendBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  /** Async version of {@link #extendBundle(String, String, ExtendBundleRequest)} */
+  @NotNull
+  public CompletableFuture<CreateBundleResponse> extendBundleAsync(
+      String token, String bundleId, ExtendBundleRequest extendBundleRequest) {
+    return enqueue(
+        extendBundleCall(token, bundleId, extendBundleRequest),
+        DeepCodeRestClient::toExtendBundleResponse,
+        CreateBundleResponse::new);
+  }
+
+  private interface UploadFilesCall {
+    @retrofit2.http.Headers("Content-Type: application/json;charset=utf-8")
+    @POST("file/{bundleId}")
+    Call<Void> doUploadFiles(
+        @Header("Session-Token") String token,
+        @Path(value = "bundleId", encoded = true) String bundleId,
+        @Body List<FileHash2ContentRequest> listHash2Content);
+
+    @retrofit2.http.Headers("Content-Type: application/json;charset=utf-8")
+    @POST("file/{bundleId}")
+    Call<Void> doUploadFiles(
+        @Header("Session-Token") String token,
+        @Path(value = "bundleId", encoded = true) String bundleId,
+        @Body RequestBody hash2ContentBody);
+  }
+
+  @NotNull
+  private static EmptyResponse toUploadFilesResponse(@NotNull Response<Void> retrofitResponse) {
+    EmptyResponse result = new EmptyResponse();
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("Upload succeeded");
+        break;
+      case 400:
+        result.setStatusDescription(
+            "Content and hash mismatch or attempted to upload files to a git bundle");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      case 403:
+        result.setStatusDescription("Unauthorized access to requested bundle");
+        break;
+      case 413:
+        result.setStatusDescription("Payload too large");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<Void> uploadFilesCall(
+      String token, String bundleId, List<FileHash2ContentRequest> request) {
+    return uploadFilesCall.doUploadFiles(token, bundleId, request);
+  }
+
+  /**
+   * Uploads missing files to a bundle.
+   *
+   * @param token
+   * @param bundleId
+   * @param request List<FileHash2ContentRequest>
+   * @return EmptyResponse with return code and description.
+   */
+  @NotNull
+  public EmptyResponse uploadFiles(
+      String token, String bundleId, List<FileHash2ContentRequest> request) {
+    return execute(
+        uploadFilesCall(token, bundleId, request),
+        DeepCodeRestClient::toUploadFilesResponse,
+        EmptyResponse::new);
+  }
+
+  /** Async version of {@link #uploadFiles(String, String, List)} */
+  @NotNull
+  public CompletableFuture<EmptyResponse> uploadFilesAsync(
+      String token, String bundleId, List<FileHash2ContentRequest> request) {
+    return enqueue(
+        uploadFilesCall(token, bundleId, request),
+        DeepCodeRestClient::toUploadFilesResponse,
+        EmptyResponse::new);
+  }
+
+  /**
+   * Uploads missing files to a bundle. Request JSON is streamed to the server, file contents are
+   * read one by one while sending.
+   *
+   * @return EmptyResponse with return code and description.
+   */
+  @NotNull
+  public EmptyResponse uploadFiles(
+      String token, String bundleId, FileHash2ContentRequestBody<?> request) {
+    return execute(
+        uploadFilesCall.doUploadFiles(token, bundleId, request),
+        DeepCodeRestClient::toUploadFilesResponse,
+        EmptyResponse::new);
+  }
+
+  /** Async version of {@link #uploadFiles(String, String, FileHash2ContentRequestBody)} */
+  @NotNull
+  public CompletableFuture<EmptyResponse> uploadFilesAsync(
+      String token, String bundleId, FileHash2ContentRequestBody<?> request) {
+    return enqueue(
+        uploadFilesCall.doUploadFiles(token, bundleId, request),
+        DeepCodeRestClient::toUploadFilesResponse,
+        EmptyResponse::new);
+  }
+
+  private interface GetAnalysisCall {
+    //    @retrofit2.http.Headers("Content-Type: application/json")
+    @GET("analysis/{bundleId}")
+    Call<GetAnalysisResponse> doGetAnalysis(
+        @Header("Session-Token") String token,
+        @Path(value = "bundleId", encoded = true) String bundleId,
+        @Query("severity") Integer severity,
+        @QueryName String linters);
+
+    // body is not buffered, it's parsed directly from the network stream
+    @Streaming
+    @GET("analysis/{bundleId}")
+    Call<ResponseBody> doGetAnalysisStreaming(
+        @Header("Session-Token") String token,
+        @Path(value = "bundleId", encoded = true) String bundleId,
+        @Query("severity") Integer severity,
+        @QueryName String linters);
+  }
+
+  @NotNull
+  private static GetAnalysisResponse toGetAnalysisResponse(
+      @NotNull Response<GetAnalysisResponse> retrofitResponse) {
+    GetAnalysisResponse result = retrofitResponse.body();
+    if (result == null) result = new GetAnalysisResponse();
+    return withGetAnalysisStatus(result, retrofitResponse.code());
+  }
+
+  @NotNull
+  private static Function<Response<ResponseBody>, GetAnalysisResponse> toGetAnalysisResponse(
+      @NotNull AnalysisResultsReader resultsReader) {
+    return retrofitResponse -> {
+      GetAnalysisResponse result;
+      try (ResponseBody body = retrofitResponse.body()) {
+        result = (body == null) ? new GetAnalysisResponse() : readGetAnalysis(body, resultsReader);
+      } catch (IOException | IllegalStateException e) {
+        // broken stream or unexpected JSON: same as network error for buffered response
+        return new GetAnalysisResponse();
+      }
+      return withGetAnalysisStatus(result, retrofitResponse.code());
+    };
+  }
+
+  /**
+   * Read {@code status}, {@code progress} and {@code analysisURL} into result, while {@code
+   * analysisResults} object is passed to {@code resultsReader}. So returned response always have
+   * {@code null} analysisResults.
+   */
+  @NotNull
+  private static GetAnalysisResponse readGetAnalysis(
+      @NotNull ResponseBody body, @NotNull AnalysisResultsReader resultsReader)
+      throws IOException {
+    String status = "";
+    double progress = 0;
+    String analysisURL = "";
+    final JsonReader reader = new JsonReader(body.charStream());
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      switch (name) {
+        case "status":
+          status = reader.nextString();
+          break;
+        case "progress":
+          progress = reader.nextDouble();
+          break;
+        case "analysisURL":
+          analysisURL = reader.nextString();
+          break;
+        case "analysisResults":
+          resultsReader.read(reader);
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+    return new GetAnalysisResponse(status, progress, analysisURL, null);
+  }
+
+  @NotNull
+  private static GetAnalysisResponse withGetAnalysisStatus(
+      @NotNull GetAnalysisResponse result, int code) {
+    result.setStatusCode(code);
+    switch (code) {
+      case 200:
+        result.setStatusDescription("The analysis request was successful");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      case 403:
+        result.setStatusDescription("Unauthorized access to requested repository");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + code);
+        break;
+    }
+    return result;
+  }
+
+  private Call<GetAnalysisResponse> getAnalysisCall(
+      String token, String bundleId, Integer severity, boolean useLinters) {
+    return getAnalysisCall.doGetAnalysis(
+        token, bundleId, severity, (useLinters) ? "linters" : null);
+  }
+
+  /**
+   * Starts a new bundle analysis or checks its current status and available results.
+   *
+   * @return {@link GetAnalysisResponse} instance}
+   */
+  @NotNull
+  public GetAnalysisResponse getAnalysis(
+      String token, String bundleId, Integer severity, boolean useLinters) {
+    return execute(
+        getAnalysisCall(token, bundleId, severity, useLinters),
+        DeepCodeRestClient::toGetAnalysisResponse,
+        GetAnalysisResponse::new);
+  }
+
+  /** Async version of {@link #getAnalysis(String, String, Integer, boolean)} */
+  @NotNull
+  public CompletableFuture<GetAnalysisResponse> getAnalysisAsync(
+      String token, String bundleId, Integer severity, boolean useLinters) {
+    return enqueue(
+        getAnalysisCall(token, bundleId, severity, useLinters),
+        DeepCodeRestClient::toGetAnalysisResponse,
+        GetAnalysisResponse::new);
+  }
+
+  private Call<ResponseBody> getAnalysisStreamingCall(
+      String token, String bundleId, Integer severity, boolean useLinters) {
+    return getAnalysisCall.doGetAnalysisStreaming(
+        token, bundleId, severity, (useLinters) ? "linters" : null);
+  }
+
+  /**
+   * Same as {@link #getAnalysis(String, String, Integer, boolean)} but {@code analysisResults}
+   * are not deserialized into {@link AnalysisResults}: they are passed to {@code resultsReader}
+   * while response is read from the network. Returned response has {@code null} analysisResults.
+   */
+  @NotNull
+  public GetAnalysisResponse getAnalysis(
+      String token,
+      String bundleId,
+      Integer severity,
+      boolean useLinters,
+      @NotNull AnalysisResultsReader resultsReader) {
+    return execute(
+        getAnalysisStreamingCall(token, bundleId, severity, useLinters),
+        toGetAnalysisResponse(resultsReader),
+        GetAnalysisResponse::new);
+  }
+
+  /**
+   * Async version of {@link #getAnalysis(String, String, Integer, boolean,
+   * AnalysisResultsReader)}. {@code resultsReader} is called on the OkHttp dispatcher thread.
+   */
+  @NotNull
+  public CompletableFuture<GetAnalysisResponse> getAnalysisAsync(
+      String token,
+      String bundleId,
+      Integer severity,
+      boolean useLinters,
+      @NotNull AnalysisResultsReader resultsReader) {
+    return enqueue(
+        getAnalysisStreamingCall(token, bundleId, severity, useLinters),
+        toGetAnalysisResponse(resultsReader),
+        GetAnalysisResponse::new);
+  }
+
+  private interface GetFiltersCall {
+    @GET("filters")
+    Call<GetFiltersResponse> doGetFilters(@Header("Session-Token") String token);
+  }
+
+  @NotNull
+  private static GetFiltersResponse toGetFiltersResponse(
+      @NotNull Response<GetFiltersResponse> retrofitResponse) {
+    GetFiltersResponse result = retrofitResponse.body();
+    if (result == null) result = new GetFiltersResponse();
+    result.setStatusCode(retrofitResponse.code());
+    switch (retrofitResponse.code()) {
+      case 200:
+        result.setStatusDescription("The filters request was successful");
+        break;
+      case 401:
+        result.setStatusDescription("Missing sessionToken or incomplete login process");
+        break;
+      default:
+        result.setStatusDescription("Unknown Status Code: " + retrofitResponse.code());
+        break;
+    }
+    return result;
+  }
+
+  private Call<GetFiltersResponse> getFiltersCall(String token) {
+    return getFiltersCall.doGetFilters(token);
+  }
+
+  /**
+   * Requests current filtering options for uploaded bundles.
+   *
+   * @return {@link GetFiltersResponse} instance}
+   */
+  @NotNull
+  public GetFiltersResponse getFilters(String token) {
+    return execute(
+        getFiltersCall(token), DeepCodeRestClient::toGetFiltersResponse, GetFiltersResponse::new);
+  }
+
+  /** Async version of {@link #getFilters(String)} */
+  @NotNull
+  public CompletableFuture<GetFiltersResponse> getFiltersAsync(String token) {
+    return enqueue(
+        getFiltersCall(token), DeepCodeRestClient::toGetFiltersResponse, GetFiltersResponse::new);
+  }
+}
@@ -0,0 +1,66 @@
+package ai.deepcode.javaclient;
+
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+
+/** DeepCode public API endpoints used by {@link DeepCodeRestClient}. */
+public enum Endpoint {
+  // every login request creates new session
+  LOGIN(false),
+  SESSION(true),
+  // bundles are identified by their content, so repeated request gives the same bundle
+  BUNDLE_CREATE(true),
+  BUNDLE_EXTEND(true),
+  BUNDLE_CHECK(true),
+  FILE_UPLOAD(true),
+  ANALYSIS(true),
+  FILTERS(true),
+  UNKNOWN(false);
+
+  private static final String API_PATH = "/publicapi/";
+
+  private final boolean idempotent;
+
+  Endpoint(boolean idempotent) {
+    this.idempotent = idempotent;
+  }
+
+  /**
+   * Whether repeating a request has no additional effect on the server, so it could be safely
+   * retried even if it's unknown was it processed or not.
+   */
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  /** Resolve endpoint by http method and path of the request. */
+  @NotNull
+  public static Endpoint of(@NotNull Request request) {
+    final String path = request.url().encodedPath();
+    final int apiPathIndex = path.indexOf(API_PATH);
+    final String relativePath =
+        (apiPathIndex < 0) ? path : path.substring(apiPathIndex + API_PATH.length());
+    final int separatorIndex = relativePath.indexOf('/');
+    final String firstSegment =
+        (separatorIndex < 0) ? relativePath : relativePath.substring(0, separatorIndex);
+    final String method = request.method();
+    switch (firstSegment) {
+      case "login":
+        return LOGIN;
+      case "session":
+        return SESSION;
+      case "bundle":
+        if (method.equals("POST")) return BUNDLE_CREATE;
+        if (method.equals("PUT")) return BUNDLE_EXTEND;
+        return BUNDLE_CHECK;
+      case "file":
+        return FILE_UPLOAD;
+      case "analysis":
+        return ANALYSIS;
+      case "filters":
+        return FILTERS;
+      default:
+        return UNKNOWN;
+    }
+  }
+}
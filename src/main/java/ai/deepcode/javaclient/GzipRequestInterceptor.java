@@ -0,0 +1,114 @@
+package ai.deepcode.javaclient;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compress request bodies of configured endpoints with {@code Content-Encoding: gzip}.
+ *
+ * <p>Body is compressed while it's written to the network, so neither raw nor compressed body is
+ * held in memory, and request is sent with chunked transfer encoding. If server rejects compressed
+ * body with 415 (Unsupported Media Type) the request is repeated with the original body and
+ * compression is switched off for that endpoint. One-shot bodies are sent uncompressed, as they
+ * could not be repeated.
+ */
+final class GzipRequestInterceptor implements Interceptor {
+
+  private final Set<Endpoint> endpoints = ConcurrentHashMap.newKeySet();
+  private final CompressionStats stats = new CompressionStats();
+
+  GzipRequestInterceptor(@NotNull Set<Endpoint> endpoints) {
+    this.endpoints.addAll(endpoints);
+  }
+
+  @NotNull
+  CompressionStats getStats() {
+    return stats;
+  }
+
+  @NotNull
+  @Override
+  public Response intercept(@NotNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final RequestBody body = request.body();
+    final Endpoint endpoint = Endpoint.of(request);
+    if (body == null
+        || body.isOneShot()
+        || request.header("Content-Encoding") != null
+        || !endpoints.contains(endpoint)) {
+      return chain.proceed(request);
+    }
+    final Request compressedRequest =
+        request
+            .newBuilder()
+            .header("Content-Encoding", "gzip")
+            .method(request.method(), new GzipRequestBody(body, stats))
+            .build();
+    final Response response = chain.proceed(compressedRequest);
+    if (response.code() != 415) return response;
+
+    endpoints.remove(endpoint);
+    response.close();
+    return chain.proceed(request);
+  }
+
+  private static final class CountingSink extends ForwardingSink {
+    private long count = 0;
+
+    private CountingSink(@NotNull okio.Sink delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void write(@NotNull Buffer source, long byteCount) throws IOException {
+      super.write(source, byteCount);
+      count += byteCount;
+    }
+  }
+
+  /** Original body compressed on every write, so it could be written again (i.e. on retry). */
+  private static final class GzipRequestBody extends RequestBody {
+    private final RequestBody body;
+    private final CompressionStats stats;
+
+    private GzipRequestBody(@NotNull RequestBody body, @NotNull CompressionStats stats) {
+      this.body = body;
+      this.stats = stats;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+      return -1; // unknown till compressed
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+      final CountingSink compressedCounter = new CountingSink(sink);
+      final CountingSink rawCounter = new CountingSink(new GzipSink(compressedCounter));
+      try (BufferedSink gzipSink = Okio.buffer(rawCounter)) {
+        body.writeTo(gzipSink);
+      }
+      stats.add(rawCounter.count, compressedCounter.count);
+    }
+  }
+}
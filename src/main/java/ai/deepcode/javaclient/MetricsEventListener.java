@@ -0,0 +1,134 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.metrics.MetricsSink;
+import ai.deepcode.javaclient.metrics.MetricsSink.Phase;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * Feeds {@link MetricsSink} with timings, body sizes and status codes of one call. New instance is
+ * created for every call, OkHttp invokes events of one call sequentially.
+ */
+final class MetricsEventListener extends EventListener {
+
+  private final MetricsSink sink;
+  private final Endpoint endpoint;
+
+  private long callStartNanos;
+  private long dnsStartNanos;
+  private long connectStartNanos;
+  private long secureConnectStartNanos;
+  private long requestSentNanos;
+  private long responseStartNanos;
+  private long requestBytes;
+  private long responseBytes;
+
+  private MetricsEventListener(@NotNull MetricsSink sink, @NotNull Endpoint endpoint) {
+    this.sink = sink;
+    this.endpoint = endpoint;
+  }
+
+  @NotNull
+  static EventListener.Factory factory(@NotNull MetricsSink sink) {
+    return call -> new MetricsEventListener(sink, Endpoint.of(call.request()));
+  }
+
+  @Override
+  public void callStart(@NotNull Call call) {
+    callStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+    dnsStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void dnsEnd(
+      @NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> addresses) {
+    sink.recordLatency(endpoint, Phase.DNS, System.nanoTime() - dnsStartNanos);
+  }
+
+  @Override
+  public void connectStart(
+      @NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy) {
+    connectStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void secureConnectStart(@NotNull Call call) {
+    secureConnectStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+    sink.recordLatency(endpoint, Phase.TLS, System.nanoTime() - secureConnectStartNanos);
+  }
+
+  @Override
+  public void connectEnd(
+      @NotNull Call call,
+      @NotNull InetSocketAddress address,
+      @NotNull Proxy proxy,
+      @Nullable Protocol protocol) {
+    sink.recordLatency(endpoint, Phase.CONNECT, System.nanoTime() - connectStartNanos);
+  }
+
+  @Override
+  public void requestHeadersEnd(@NotNull Call call, @NotNull Request request) {
+    requestSentNanos = System.nanoTime();
+  }
+
+  @Override
+  public void requestBodyEnd(@NotNull Call call, long byteCount) {
+    requestSentNanos = System.nanoTime();
+    requestBytes += byteCount;
+  }
+
+  @Override
+  public void responseHeadersStart(@NotNull Call call) {
+    responseStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void responseHeadersEnd(@NotNull Call call, @NotNull Response response) {
+    // recorded only for received responses: OkHttp silently repeats requests sent to stale pooled
+    // connections
+    sink.recordLatency(endpoint, Phase.TTFB, responseStartNanos - requestSentNanos);
+    // every attempt is counted, so retried 503 are visible too
+    sink.recordStatus(endpoint, response.code());
+  }
+
+  @Override
+  public void responseBodyEnd(@NotNull Call call, long byteCount) {
+    responseBytes += byteCount;
+  }
+
+  @Override
+  public void callEnd(@NotNull Call call) {
+    onCallFinished();
+  }
+
+  @Override
+  public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+    sink.recordStatus(endpoint, 0);
+    onCallFinished();
+  }
+
+  private void onCallFinished() {
+    sink.recordLatency(endpoint, Phase.TOTAL, System.nanoTime() - callStartNanos);
+    sink.recordBytes(endpoint, requestBytes, responseBytes);
+  }
+}
@@ -0,0 +1,198 @@
+package ai.deepcode.javaclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rules for retrying failed requests in {@link DeepCodeRestClient}.
+ *
+ * <ul>
+ *   <li>Network errors ({@code IOException}) and 502/504 responses are retried for {@link
+ *       Endpoint#isIdempotent() idempotent} endpoints only.
+ *   <li>429 and 503 responses mean request was not processed, so they are retried for any
+ *       endpoint. {@code Retry-After} header is honored up to {@link Builder#maxRetryAfter}.
+ *   <li>Delay between attempts grows exponentially and is randomized in {@code [0, backoff)} (full
+ *       jitter), so many clients failed at the same moment do not retry in lockstep.
+ *   <li>All attempts of one call should fit into {@link Builder#callBudget}.
+ *   <li>Client-wide retry budget: every retry takes one token, every successful response gives
+ *       back {@link Builder#retryBudget tokenRatio} tokens. Retries are stopped while less than half
+ *       of tokens left, so a failing server is not hammered by retries of all calls.
+ * </ul>
+ *
+ * Instances are immutable.
+ */
+public final class RetryPolicy {
+
+  /** Default policy: 3 attempts, 0.5s initial and 10s max backoff, 2 min per call. */
+  public static final RetryPolicy DEFAULT = newBuilder().build();
+
+  /** Do not retry at all. */
+  public static final RetryPolicy NONE = newBuilder().maxAttempts(1).build();
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final double multiplier;
+  private final long maxRetryAfterMillis;
+  private final long callBudgetMillis;
+  private final int maxTokens;
+  private final double tokenRatio;
+
+  private RetryPolicy(@NotNull Builder builder) {
+    maxAttempts = builder.maxAttempts;
+    initialBackoffMillis = builder.initialBackoffMillis;
+    maxBackoffMillis = builder.maxBackoffMillis;
+    multiplier = builder.multiplier;
+    maxRetryAfterMillis = builder.maxRetryAfterMillis;
+    callBudgetMillis = builder.callBudgetMillis;
+    maxTokens = builder.maxTokens;
+    tokenRatio = builder.tokenRatio;
+  }
+
+  @NotNull
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  @NotNull
+  public Builder toBuilder() {
+    final Builder builder = new Builder();
+    builder.maxAttempts = maxAttempts;
+    builder.initialBackoffMillis = initialBackoffMillis;
+    builder.maxBackoffMillis = maxBackoffMillis;
+    builder.multiplier = multiplier;
+    builder.maxRetryAfterMillis = maxRetryAfterMillis;
+    builder.callBudgetMillis = callBudgetMillis;
+    builder.maxTokens = maxTokens;
+    builder.tokenRatio = tokenRatio;
+    return builder;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  long getMaxRetryAfterMillis() {
+    return maxRetryAfterMillis;
+  }
+
+  long getCallBudgetMillis() {
+    return callBudgetMillis;
+  }
+
+  int getMaxTokens() {
+    return maxTokens;
+  }
+
+  double getTokenRatio() {
+    return tokenRatio;
+  }
+
+  /**
+   * @param retry 1-based number of the retry
+   * @return random delay before the retry in {@code [0, min(maxBackoff, initialBackoff *
+   *     multiplier^(retry-1)))}
+   */
+  long backoffMillis(int retry) {
+    final double backoff =
+        Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, retry - 1));
+    return (long) (ThreadLocalRandom.current().nextDouble() * backoff);
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy{"
+        + "maxAttempts="
+        + maxAttempts
+        + ", initialBackoffMillis="
+        + initialBackoffMillis
+        + ", maxBackoffMillis="
+        + maxBackoffMillis
+        + ", multiplier="
+        + multiplier
+        + ", maxRetryAfterMillis="
+        + maxRetryAfterMillis
+        + ", callBudgetMillis="
+        + callBudgetMillis
+        + ", maxTokens="
+        + maxTokens
+        + ", tokenRatio="
+        + tokenRatio
+        + '}';
+  }
+
+  public static final class Builder {
+    private int maxAttempts = 3;
+    private long initialBackoffMillis = 500;
+    private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(10);
+    private double multiplier = 2;
+    private long maxRetryAfterMillis = TimeUnit.SECONDS.toMillis(60);
+    private long callBudgetMillis = TimeUnit.MINUTES.toMillis(2);
+    private int maxTokens = 10;
+    private double tokenRatio = 0.1;
+
+    private Builder() {}
+
+    /** Total number of attempts including the first one, {@code 1} means no retries. */
+    @NotNull
+    public Builder maxAttempts(int maxAttempts) {
+      if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Exponential backoff settings: upper bound of delay before n-th retry is {@code
+     * min(max, initial * multiplier^(n-1))}.
+     */
+    @NotNull
+    public Builder backoff(long initial, long max, @NotNull TimeUnit unit, double multiplier) {
+      if (initial < 0 || max < initial || multiplier < 1) {
+        throw new IllegalArgumentException(
+            "Wrong backoff: initial=" + initial + " max=" + max + " multiplier=" + multiplier);
+      }
+      this.initialBackoffMillis = unit.toMillis(initial);
+      this.maxBackoffMillis = unit.toMillis(max);
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    /** Longer {@code Retry-After} delays are not waited for, the response is returned instead. */
+    @NotNull
+    public Builder maxRetryAfter(long maxRetryAfter, @NotNull TimeUnit unit) {
+      this.maxRetryAfterMillis = unit.toMillis(maxRetryAfter);
+      return this;
+    }
+
+    /** Retry is not started if it would not fit into given time since the call start. */
+    @NotNull
+    public Builder callBudget(long callBudget, @NotNull TimeUnit unit) {
+      this.callBudgetMillis = unit.toMillis(callBudget);
+      return this;
+    }
+
+    /**
+     * Client-wide retry budget (token bucket).
+     *
+     * @param maxTokens bucket size, bucket is full initially
+     * @param tokenRatio tokens given back for every successful response
+     */
+    @NotNull
+    public Builder retryBudget(int maxTokens, double tokenRatio) {
+      if (maxTokens < 1 || tokenRatio <= 0) {
+        throw new IllegalArgumentException(
+            "Wrong retryBudget: maxTokens=" + maxTokens + " tokenRatio=" + tokenRatio);
+      }
+      this.maxTokens = maxTokens;
+      this.tokenRatio = tokenRatio;
+      return this;
+    }
+
+    @NotNull
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package ai.deepcode.javaclient;
+
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when failed calls of {@link DeepCodeRestClient} are repeated according to
+ * {@link RetryPolicy}. Blocking calls wait on the calling thread. Async calls are re-enqueued after
+ * the delay from a shared scheduler thread, so no OkHttp dispatcher thread is held while waiting.
+ */
+final class RetryScheduler {
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "DeepCode retry scheduler");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final RetryPolicy policy;
+  private final RetryBudget budget;
+
+  RetryScheduler(@NotNull RetryPolicy policy) {
+    this.policy = policy;
+    this.budget = new RetryBudget(policy.getMaxTokens(), policy.getTokenRatio());
+  }
+
+  /**
+   * @param response <b>null</b> in case of network error
+   * @param attempt 1-based number of failed attempt
+   * @param startMillis start time of the first attempt
+   * @return delay before the next attempt or {@code -1} if call should not be retried
+   */
+  long retryDelayMillis(
+      @NotNull Endpoint endpoint, @Nullable Response response, int attempt, long startMillis) {
+    if (response != null && !isRetryable(response.code(), endpoint)) {
+      budget.onSuccess();
+      return -1;
+    }
+    if (attempt >= policy.getMaxAttempts()) return -1;
+    // it's unknown whether failed request was processed
+    if (response == null && !endpoint.isIdempotent()) return -1;
+
+    long delayMillis = policy.backoffMillis(attempt);
+    final long retryAfterMillis = (response == null) ? -1 : retryAfterMillis(response);
+    if (retryAfterMillis > policy.getMaxRetryAfterMillis()) return -1;
+    // jitter is added to not let all clients come back at the same moment
+    if (retryAfterMillis >= 0) delayMillis += retryAfterMillis;
+
+    final long elapsedMillis = System.currentTimeMillis() - startMillis;
+    if (elapsedMillis + delayMillis > policy.getCallBudgetMillis()) return -1;
+    if (!budget.tryAcquire()) return -1;
+    return delayMillis;
+  }
+
+  /** Run {@code retry} after {@code delayMillis} on the shared scheduler thread. */
+  static void schedule(@NotNull Runnable retry, long delayMillis) {
+    scheduler.schedule(retry, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static boolean isRetryable(int code, @NotNull Endpoint endpoint) {
+    switch (code) {
+      case 429: // Too Many Requests
+      case 503: // Service Unavailable
+        return true;
+      case 502: // Bad Gateway
+      case 504: // Gateway Timeout
+        return endpoint.isIdempotent();
+      default:
+        return false;
+    }
+  }
+
+  /** @return {@code Retry-After} header value in millis or {@code -1} if absent or malformed */
+  static long retryAfterMillis(@NotNull Response response) {
+    final String retryAfter = response.header("Retry-After");
+    if (retryAfter == null) return -1;
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException ignored) {
+      // could be HTTP-date
+    }
+    try {
+      final ZonedDateTime date =
+          ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  /** Token bucket shared by all calls of the client. */
+  static final class RetryBudget {
+    private final int maxTokens;
+    private final double tokenRatio;
+    private double tokens;
+
+    RetryBudget(int maxTokens, double tokenRatio) {
+      this.maxTokens = maxTokens;
+      this.tokenRatio = tokenRatio;
+      this.tokens = maxTokens;
+    }
+
+    synchronized void onSuccess() {
+      tokens = Math.min(maxTokens, tokens + tokenRatio);
+    }
+
+    synchronized boolean tryAcquire() {
+      if (tokens - 1 < maxTokens / 2.0) return false;
+      tokens -= 1;
+      return true;
+    }
+  }
+}
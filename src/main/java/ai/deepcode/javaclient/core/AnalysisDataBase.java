@@ -1,13 +1,17 @@
 package ai.deepcode.javaclient.core;
 
+import ai.deepcode.javaclient.CircuitBreaker;
 import ai.deepcode.javaclient.DeepCodeRestApi;
 import ai.deepcode.javaclient.requests.*;
 import ai.deepcode.javaclient.responses.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -17,6 +21,7 @@ public abstract class AnalysisDataBase {
   private final HashContentUtilsBase hashContentUtils;
   private final DeepCodeParamsBase deepCodeParams;
   private final DCLoggerBase dcLogger;
+  private final CircuitBreaker.Listener circuitBreakerListener;
 
   protected AnalysisDataBase(
       @NotNull PlatformDependentUtilsBase platformDependentUtils,
@@ -30,6 +35,18 @@ public abstract class AnalysisDataBase {
     UPLOADING_FILES_TEXT = dcLogger.presentableName + ": Uploading files to the server... ";
     PREPARE_FILES_TEXT = dcLogger.presentableName + ": Preparing files for upload... ";
     WAITING_FOR_ANALYSIS_TEXT = dcLogger.presentableName + ": Waiting for analysis from server... ";
+    circuitBreakerListener =
+        (oldState, newState) -> {
+          dcLogger.logWarn("Server state changed: " + oldState + " -> " + newState);
+          pdUtils.onServerStateChanged(oldState, newState);
+        };
+    DeepCodeRestApi.addCircuitBreakerListener(circuitBreakerListener);
+  }
+
+  /** Should be called when this instance is not used anymore, i.e. on plugin unload. */
+  public void dispose() {
+    DeepCodeRestApi.removeCircuitBreakerListener(circuitBreakerListener);
+    mapProject2SuggestionStore.keySet().forEach(this::saveSuggestionStore);
   }
 
   private final String UPLOADING_FILES_TEXT;
@@ -39,14 +56,47 @@ public abstract class AnalysisDataBase {
   private static final Map<Object, List<SuggestionForFile>> EMPTY_MAP = Collections.emptyMap();
   private static final Map<Object, String> mapProject2analysisUrl = new ConcurrentHashMap<>();
 
-  // todo: keep few latest file versions (Guava com.google.common.cache.CacheBuilder ?)
-  private static final Map<Object, List<SuggestionForFile>> mapFile2Suggestions =
+  // results are replaced as a whole (copy-on-write), so readers never block nor see torn updates
+  private static final Map<Object, AnalysisSnapshot> mapProject2Snapshot =
+      new ConcurrentHashMap<>();
+  // few latest analysed versions of every file, kept when files are removed from the cache above
+  private static final Map<Object, SuggestionCache> mapProject2SuggestionCache =
       new ConcurrentHashMap<>();
 
   private static final Map<Object, String> mapProject2BundleId = new ConcurrentHashMap<>();
+  // restored from the suggestion cache without persistent store, so maybe not in the bundle yet
+  private static final Map<Object, Map<Object, FileHashPipeline.HashedFile>>
+      mapProject2UnbundledFiles = new ConcurrentHashMap<>();
+  // resumed from the store, but not yet compared with all project files
+  private static final Set<Object> projectsWithUncheckedDeletions = ConcurrentHashMap.newKeySet();
+  // bundle and suggestions kept between restarts, see getSuggestionStoreFile()
+  private static final Map<Object, Optional<PersistentSuggestionStore>> mapProject2SuggestionStore =
+      new ConcurrentHashMap<>();
+
+  // Mutex of the project need to be requested to change its AnalysisSnapshot, so updates of
+  // different projects (including network round-trips) run in parallel
+  private static final Map<Object, ReentrantLock> mapProject2Mutex = new ConcurrentHashMap<>();
+  private static final AnalysisPoller analysisPoller = new AnalysisPoller();
+
+  /**
+   * Current analysis results of the project. Never blocks, so could be called on every repaint;
+   * compare {@link AnalysisSnapshot#getGeneration()} to skip re-rendering of unchanged results.
+   */
+  @NotNull
+  public AnalysisSnapshot getAnalysisSnapshot(@NotNull Object project) {
+    return mapProject2Snapshot.getOrDefault(project, AnalysisSnapshot.EMPTY);
+  }
 
-  // Mutex need to be requested to change mapFile2Suggestions
-  private static final ReentrantLock MUTEX = new ReentrantLock();
+  private static void publishSuggestions(
+      @NotNull Object project, @NotNull Map<Object, List<SuggestionForFile>> file2Suggestions) {
+    if (file2Suggestions.isEmpty()) return;
+    mapProject2Snapshot.compute(
+        project,
+        (p, snapshot) -> {
+          final AnalysisSnapshot current = (snapshot == null) ? AnalysisSnapshot.EMPTY : snapshot;
+          return current.withSuggestions(file2Suggestions);
+        });
+  }
 
   /** see getAnalysis() below} */
   @NotNull
@@ -70,8 +120,13 @@ public abstract class AnalysisDataBase {
     }
     Map<Object, List<SuggestionForFile>> result = new HashMap<>();
     final Collection<Object> brokenKeys = new ArrayList<>();
+    // one snapshot per project, so results of its files are consistent with each other
+    final Map<Object, AnalysisSnapshot> project2Snapshot = new HashMap<>();
     for (Object file : files) {
-      List<SuggestionForFile> suggestions = mapFile2Suggestions.get(file);
+      List<SuggestionForFile> suggestions =
+          project2Snapshot
+              .computeIfAbsent(pdUtils.getProject(file), this::getAnalysisSnapshot)
+              .getSuggestions(file);
       if (suggestions != null) {
         result.put(file, suggestions);
       } else {
@@ -86,7 +141,7 @@ public abstract class AnalysisDataBase {
   }
 
   public String getAnalysisUrl(@NotNull Object project) {
-    return mapProject2analysisUrl.computeIfAbsent(project, p -> "");
+    return mapProject2analysisUrl.getOrDefault(project, "");
   }
 
   public boolean addProjectToCache(@NotNull Object project) {
@@ -98,46 +153,206 @@ public abstract class AnalysisDataBase {
   }
 
   public void removeFilesFromCache(@NotNull Collection<Object> files) {
-    try {
-      dcLogger.logInfo("Request to remove from cache " + files.size() + " files: " + files);
+    dcLogger.logInfo("Request to remove from cache " + files.size() + " files: " + files);
+    final Map<Object, List<Object>> project2Files =
+        files.stream().filter(Objects::nonNull).collect(Collectors.groupingBy(pdUtils::getProject));
+    int removeCounter = 0;
+    for (Map.Entry<Object, List<Object>> projectFiles : project2Files.entrySet()) {
+      final Object project = projectFiles.getKey();
       // todo: do we really need mutex here?
-      MUTEX.lock();
-      dcLogger.logInfo("MUTEX LOCK");
-      int removeCounter = 0;
-      for (Object file : files) {
-        if (file != null && isFileInCache(file)) {
-          mapFile2Suggestions.remove(file);
+      final ReentrantLock mutex = lockProject(project);
+      try {
+        dcLogger.logInfo("MUTEX LOCK");
+        final AnalysisSnapshot snapshot = getAnalysisSnapshot(project);
+        final List<Object> cachedFiles =
+            projectFiles.getValue().stream()
+                .filter(snapshot::contains)
+                .collect(Collectors.toList());
+        if (!cachedFiles.isEmpty()) {
+          mapProject2Snapshot.computeIfPresent(project, (p, s) -> s.withoutFiles(cachedFiles));
+        }
+        for (Object file : cachedFiles) {
           hashContentUtils.removeFileHashContent(file);
           removeCounter++;
         }
+      } finally {
+        dcLogger.logInfo("MUTEX RELEASED");
+        mutex.unlock();
       }
-      dcLogger.logInfo(
-          "Actually removed from cache: "
-              + removeCounter
-              + " files. Were not in cache: "
-              + (files.size() - removeCounter));
-    } finally {
-      dcLogger.logInfo("MUTEX RELEASED");
-      MUTEX.unlock();
     }
+    dcLogger.logInfo(
+        "Actually removed from cache: "
+            + removeCounter
+            + " files. Were not in cache: "
+            + (files.size() - removeCounter));
     updateUIonFilesRemovalFromCache(files);
   }
 
+  /**
+   * Mutex of the project could be removed by {@link #removeProjectFromCaches} while waiting for
+   * it, then the current one is locked instead.
+   *
+   * @return locked mutex of the project
+   */
+  @NotNull
+  private static ReentrantLock lockProject(@NotNull Object project) {
+    while (true) {
+      final ReentrantLock mutex =
+          mapProject2Mutex.computeIfAbsent(project, p -> new ReentrantLock());
+      mutex.lock();
+      if (mapProject2Mutex.get(project) == mutex) return mutex;
+      mutex.unlock();
+    }
+  }
+
   protected abstract void updateUIonFilesRemovalFromCache(@NotNull Collection<Object> files);
 
   public void removeProjectFromCaches(@NotNull Object project) {
     dcLogger.logInfo("Caches clearance requested for project: " + project);
     hashContentUtils.removeProjectHashContent(project);
+    projectsWithUncheckedDeletions.remove(project);
     if (mapProject2BundleId.remove(project) != null) {
       dcLogger.logInfo("Removed from cache: " + project);
     }
     removeFilesFromCache(cachedFilesOfProject(project));
+    // unless results of a concurrent update are published meanwhile
+    mapProject2Snapshot.computeIfPresent(project, (p, s) -> (s.size() == 0) ? null : s);
+    forgetProject(project);
+  }
+
+  /** Per-project state is dropped, so closed projects are not reachable from static maps. */
+  private void forgetProject(@NotNull Object project) {
+    final ReentrantLock mutex = lockProject(project);
+    try {
+      // results of updates since the last full one
+      saveSuggestionStore(project);
+      mapProject2SuggestionStore.remove(project);
+      mapProject2SuggestionCache.remove(project);
+      mapProject2UnbundledFiles.remove(project);
+      mapProject2analysisUrl.remove(project);
+      projectsWithLoginRequested.remove(project);
+      projectsWithWarnShown.remove(project);
+      mapProject2Mutex.remove(project, mutex);
+    } finally {
+      mutex.unlock();
+    }
+  }
+
+  /**
+   * File to keep the last bundle and suggestions of the project in between restarts, e.g. inside
+   * IDE system directory. Reopened project is then analysed only for files changed meanwhile.
+   * Persistent suggestion store is disabled if <b>null</b> (default).
+   */
+  @Nullable
+  protected Path getSuggestionStoreFile(@NotNull Object project) {
+    return null;
+  }
+
+  @Nullable
+  private PersistentSuggestionStore getSuggestionStore(@NotNull Object project) {
+    return mapProject2SuggestionStore
+        .computeIfAbsent(
+            project,
+            p -> Optional.ofNullable(getSuggestionStoreFile(p)).map(this::loadSuggestionStore))
+        .orElse(null);
+  }
+
+  @NotNull
+  private PersistentSuggestionStore loadSuggestionStore(@NotNull Path storeFile) {
+    final PersistentSuggestionStore store = PersistentSuggestionStore.load(storeFile);
+    dcLogger.logInfo(
+        "Suggestion store loaded from "
+            + storeFile
+            + ": bundle ["
+            + store.getBundleId()
+            + "] of "
+            + store.size()
+            + " files. "
+            + store.getSuggestionCache());
+    return store;
+  }
+
+  /**
+   * Whole store is rewritten, so it's saved after full project updates and when project is closed
+   * only. Files analysed meanwhile are re-analysed after a crash.
+   */
+  private void saveSuggestionStore(@NotNull Object project) {
+    final PersistentSuggestionStore store =
+        mapProject2SuggestionStore.getOrDefault(project, Optional.empty()).orElse(null);
+    if (store == null) return;
+    final ReentrantLock mutex = lockProject(project);
+    try {
+      store.save(mapProject2SuggestionCache.computeIfAbsent(project, p -> new SuggestionCache()));
+    } catch (IOException e) {
+      dcLogger.logWarn("Failed to save suggestion store: " + e);
+    } finally {
+      mutex.unlock();
+    }
+  }
+
+  /**
+   * Continue with the bundle stored before restart if server still has it, so only files changed
+   * meanwhile are sent. Files deleted meanwhile are found with the first update of all project
+   * files, see {@link #removeDeletedStoredPaths}.
+   */
+  private void resumeStoredBundle(@NotNull Object project) {
+    if (!mapProject2BundleId.getOrDefault(project, "").isEmpty()) return;
+    final PersistentSuggestionStore store = getSuggestionStore(project);
+    if (store == null) return;
+    mapProject2SuggestionCache.putIfAbsent(project, store.getSuggestionCache());
+    final String bundleId = store.getBundleId();
+    if (bundleId.isEmpty()) return;
+    final CreateBundleResponse response =
+        DeepCodeRestApi.checkBundle(deepCodeParams.getSessionToken(), bundleId);
+    if (response.getStatusCode() != 200) {
+      dcLogger.logInfo(
+          "Stored bundle ["
+              + bundleId
+              + "] can't be resumed: "
+              + response.getStatusCode()
+              + " "
+              + response.getStatusDescription());
+      store.resetBundle();
+      return;
+    }
+    // not uploaded files are sent again
+    store.forgetPaths(response.getMissingFiles());
+    mapProject2BundleId.put(project, bundleId);
+    projectsWithUncheckedDeletions.add(project);
+    dcLogger.logInfo(
+        "Stored bundle ["
+            + bundleId
+            + "] resumed with "
+            + store.size()
+            + " files, missing on server: "
+            + response.getMissingFiles().size());
+  }
+
+  /**
+   * Stored files of the resumed bundle missing in {@code allProjectFiles} were deleted while
+   * project was closed, so they are removed with the next bundle extension.
+   */
+  private void removeDeletedStoredPaths(
+      @NotNull Object project, @NotNull Collection<Object> allProjectFiles) {
+    if (!projectsWithUncheckedDeletions.remove(project)) return;
+    final PersistentSuggestionStore store = getSuggestionStore(project);
+    if (store == null) return;
+    final Set<String> projectPaths =
+        allProjectFiles.stream()
+            .filter(Objects::nonNull)
+            .map(pdUtils::getDeepCodedFilePath)
+            .collect(Collectors.toSet());
+    final List<String> deletedPaths =
+        store.getBundledPaths().stream()
+            .filter(path -> !projectPaths.contains(path))
+            .collect(Collectors.toList());
+    store.removeFromBundle(deletedPaths);
+    forgetRemovedPaths(project, deletedPaths);
+    dcLogger.logInfo("Stored files deleted while project was closed: " + deletedPaths.size());
   }
 
   private Collection<Object> cachedFilesOfProject(@NotNull Object project) {
-    return mapFile2Suggestions.keySet().stream()
-        .filter(file -> pdUtils.getProject(file).equals(project))
-        .collect(Collectors.toList());
+    return new ArrayList<>(getAnalysisSnapshot(project).getFiles());
   }
 
   private static final Set<Object> updateInProgress = Collections.synchronizedSet(new HashSet<>());
@@ -182,6 +397,19 @@ public abstract class AnalysisDataBase {
       @NotNull Collection<Object> psiFiles,
       @NotNull Collection<Object> filesToRemove,
       @NotNull Object progress) {
+    updateCachedResultsForFiles(project, psiFiles, filesToRemove, false, progress);
+  }
+
+  /**
+   * @param allProjectFiles {@code psiFiles} are all supported files of the project, so files of
+   *     the bundle stored before restart and missing in {@code psiFiles} are known to be deleted
+   */
+  public void updateCachedResultsForFiles(
+      @NotNull Object project,
+      @NotNull Collection<Object> psiFiles,
+      @NotNull Collection<Object> filesToRemove,
+      boolean allProjectFiles,
+      @NotNull Object progress) {
     if (psiFiles.isEmpty() && filesToRemove.isEmpty()) {
       dcLogger.logWarn("updateCachedResultsForFiles requested for empty list of files");
       return;
@@ -191,15 +419,25 @@ public abstract class AnalysisDataBase {
       dcLogger.logWarn("Consent check fail! Project: " + pdUtils.getProjectName(project));
       return;
     }
+    // files stay not cached, so they will be requested again with the next update
+    if (isServerUnavailable()) return;
+    final ReentrantLock mutex = lockProject(project);
     try {
-      MUTEX.lock();
       dcLogger.logInfo("MUTEX LOCK");
       setUpdateInProgress(project);
-      Collection<Object> filesToProceed =
+      resumeStoredBundle(project);
+      if (allProjectFiles) removeDeletedStoredPaths(project, psiFiles);
+      final AnalysisSnapshot snapshot = getAnalysisSnapshot(project);
+      final Collection<Object> notCachedFiles =
           psiFiles.stream()
               .filter(Objects::nonNull)
-              .filter(file -> !mapFile2Suggestions.containsKey(file))
+              .filter(file -> !snapshot.contains(file))
               .collect(Collectors.toSet());
+      // files hashed while restoring are not read and hashed again for the bundle
+      final Map<Object, FileHashPipeline.HashedFile> hashedFiles = new HashMap<>();
+      final Collection<Object> filesToProceed =
+          restoreAnalysedSuggestions(project, notCachedFiles, hashedFiles, progress);
+      forgetRemovedFiles(project, filesToRemove);
       if (!filesToProceed.isEmpty()) {
         // collection already checked to be not empty
         final Object firstFile = filesToProceed.iterator().next();
@@ -216,81 +454,214 @@ public abstract class AnalysisDataBase {
           // if only one file updates then its most likely from annotator. So we need to get
           // suggestions asap:
           // we do that through createBundle with fileContent
-          mapFile2Suggestions.put(firstFile, retrieveSuggestions(firstFile, progress));
+          publishSuggestions(
+              project,
+              Collections.singletonMap(firstFile, retrieveSuggestions(firstFile, progress)));
           // and then request normal extendBundle later to synchronize results on server
           pdUtils.runInBackgroundCancellable(
               firstFile,
               "Synchronize analysis result with server...",
-              (progress1) ->
-                  retrieveSuggestions(project, filesToProceed, filesToRemove, progress1));
+              (progress1) -> {
+                // runs after the current update released the mutex
+                final ReentrantLock backgroundMutex = lockProject(project);
+                try {
+                  retrieveSuggestions(
+                      project, filesToProceed, filesToRemove, hashedFiles, progress1);
+                } finally {
+                  backgroundMutex.unlock();
+                }
+              });
         } else {
-          mapFile2Suggestions.putAll(
-              retrieveSuggestions(project, filesToProceed, filesToRemove, progress));
+          publishSuggestions(
+              project,
+              retrieveSuggestions(
+                  project, filesToProceed, filesToRemove, hashedFiles, progress));
         }
       } else if (!filesToRemove.isEmpty()) {
         dcLogger.logInfo(
             "Files to remove: " + filesToRemove.size() + " files: " + filesToRemove.toString());
-        retrieveSuggestions(project, filesToProceed, filesToRemove, progress);
-      } else {
+        retrieveSuggestions(project, filesToProceed, filesToRemove, hashedFiles, progress);
+      } else if (notCachedFiles.isEmpty()) {
         dcLogger.logWarn(
             "Nothing to update for " + psiFiles.size() + " files: " + psiFiles.toString());
       }
+      if (allProjectFiles) {
+        saveSuggestionStore(project);
+        // network metrics are accumulated, so dumped once per full scan only
+        dcLogger.logInfo(DeepCodeRestApi.getMetricsSink().toString());
+      }
       unsetUpdateInProgress(project);
       pdUtils.refreshPanel(project);
       // ServiceManager.getService(project, myTodoView.class).refresh();
     } finally {
       // if (filesToProceed != null && !filesToProceed.isEmpty())
       dcLogger.logInfo("MUTEX RELEASED");
-      MUTEX.unlock();
+      mutex.unlock();
     }
   }
 
+  /**
+   * Suggestions for content analysed before are taken from the suggestion cache, without network
+   * requests. With persistent suggestion store the content should also be in the current bundle,
+   * otherwise restored files are added to the bundle with the next extension.
+   *
+   * @param hashedFiles filled with hashes of files to analyse
+   * @return files to analyse
+   */
+  @NotNull
+  private Collection<Object> restoreAnalysedSuggestions(
+      @NotNull Object project,
+      @NotNull Collection<Object> files,
+      @NotNull Map<Object, FileHashPipeline.HashedFile> hashedFiles,
+      @NotNull Object progress) {
+    final SuggestionCache suggestionCache = mapProject2SuggestionCache.get(project);
+    // nothing could be found, so files are not hashed twice
+    if (files.isEmpty() || suggestionCache == null || suggestionCache.isEmpty()) return files;
+    final PersistentSuggestionStore store = getSuggestionStore(project);
+    final int severity = deepCodeParams.getMinSeverity();
+    final boolean useLinters = deepCodeParams.useLinter();
+    final Map<Object, List<SuggestionForFile>> restored = new HashMap<>();
+    try (FileHashPipeline pipeline =
+        new FileHashPipeline(
+            files, deepCodeParams.getHashingParallelism(), hashContentUtils, pdUtils, progress)) {
+      for (FileHashPipeline.HashedFile hashed = pipeline.next();
+          hashed != null;
+          hashed = pipeline.next()) {
+        final List<SuggestionForFile> suggestions =
+            (store != null && !hashed.hash.equals(store.getBundledHash(hashed.path)))
+                ? null
+                : suggestionCache.get(hashed.hash, severity, useLinters);
+        if (suggestions == null) {
+          hashedFiles.put(hashed.file, hashed);
+          continue;
+        }
+        restored.put(hashed.file, suggestions);
+        if (store == null) {
+          mapProject2UnbundledFiles
+              .computeIfAbsent(project, p -> new ConcurrentHashMap<>())
+              .put(hashed.file, hashed);
+        }
+      }
+    }
+    if (restored.isEmpty()) return files;
+    publishSuggestions(project, restored);
+    dcLogger.logInfo(
+        "Suggestions restored for " + restored.size() + " files. " + suggestionCache);
+    return files.stream().filter(file -> !restored.containsKey(file)).collect(Collectors.toSet());
+  }
+
+  /** Remember suggestions of analysed content, {@code file2Hash} are hashes sent to server. */
+  private void cacheAnalysedSuggestions(
+      @NotNull Object project,
+      @NotNull Map<Object, String> file2Hash,
+      @NotNull Map<Object, List<SuggestionForFile>> file2Suggestions) {
+    if (file2Suggestions.isEmpty()) return;
+    final SuggestionCache suggestionCache =
+        mapProject2SuggestionCache.computeIfAbsent(project, p -> new SuggestionCache());
+    for (Map.Entry<Object, List<SuggestionForFile>> entry : file2Suggestions.entrySet()) {
+      final String hash = file2Hash.get(entry.getKey());
+      if (hash == null) continue;
+      suggestionCache.put(
+          pdUtils.getDeepCodedFilePath(entry.getKey()),
+          hash,
+          deepCodeParams.getMinSeverity(),
+          deepCodeParams.useLinter(),
+          entry.getValue());
+    }
+  }
+
+  private void forgetRemovedFiles(@NotNull Object project, @NotNull Collection<Object> files) {
+    final Map<Object, FileHashPipeline.HashedFile> unbundledFiles =
+        mapProject2UnbundledFiles.get(project);
+    if (unbundledFiles != null) unbundledFiles.keySet().removeAll(files);
+    forgetRemovedPaths(
+        project, files.stream().map(pdUtils::getDeepCodedFilePath).collect(Collectors.toList()));
+  }
+
+  private void forgetRemovedPaths(@NotNull Object project, @NotNull Collection<String> paths) {
+    final SuggestionCache suggestionCache = mapProject2SuggestionCache.get(project);
+    if (suggestionCache == null) return;
+    paths.forEach(suggestionCache::removePath);
+  }
+
   // todo? propagate userActionNeeded through whole methods call chain
-  // fixme: should be project based
-  private static boolean loginRequested = false;
-  private static boolean isNotSucceedWarnShown = false;
+  // projects updated concurrently, so added atomically to request login or warn only once
+  private static final Set<Object> projectsWithLoginRequested = ConcurrentHashMap.newKeySet();
+  private static final Set<Object> projectsWithWarnShown = ConcurrentHashMap.newKeySet();
 
   private boolean isNotSucceed(@NotNull Object project, EmptyResponse response, String message) {
     if (response.getStatusCode() == 200) {
-      return loginRequested = isNotSucceedWarnShown = false;
+      projectsWithLoginRequested.remove(project);
+      projectsWithWarnShown.remove(project);
+      return false;
     } else if (response.getStatusCode() == 401) {
-      pdUtils.isLogged(project, !loginRequested);
-      loginRequested = isNotSucceedWarnShown = true;
+      pdUtils.isLogged(project, projectsWithLoginRequested.add(project));
+      projectsWithWarnShown.add(project);
     }
     final String fullMessage =
         message + response.getStatusCode() + " " + response.getStatusDescription();
     dcLogger.logWarn(fullMessage);
-    if (!isNotSucceedWarnShown) {
+    if (projectsWithWarnShown.add(project)) {
       if (response.getStatusCode() / 100 == 4) {
         pdUtils.showWarn("Network request fail: " + fullMessage, project);
       } else {
         pdUtils.showWarn(
             "Server internal error. Please, try again later.\n" + fullMessage, project);
       }
-      isNotSucceedWarnShown = true;
     }
     return true;
   }
 
+  /** Requests are failing fast now, so there is no sense to start or continue the update. */
+  private boolean isServerUnavailable() {
+    if (DeepCodeRestApi.getCircuitBreaker().isServerAvailable()) return false;
+    dcLogger.logWarn("Server is unavailable, analysis update skipped.");
+    return true;
+  }
+
   static final int MAX_BUNDLE_SIZE = 4000000; // bytes
 
-  /** Perform costly network request. <b>No cache checks!</b> */
+  /**
+   * Perform costly network request. <b>No cache checks!</b>
+   *
+   * @param hashedFiles hashes of {@code filesToProceed} known already
+   */
   @NotNull
   private Map<Object, List<SuggestionForFile>> retrieveSuggestions(
       @NotNull Object project,
       @NotNull Collection<Object> filesToProceed,
       @NotNull Collection<Object> filesToRemove,
+      @NotNull Map<Object, FileHashPipeline.HashedFile> hashedFiles,
       @NotNull Object progress) {
     if (filesToProceed.isEmpty() && filesToRemove.isEmpty()) {
       dcLogger.logWarn("Both filesToProceed and filesToRemove are empty");
       return EMPTY_MAP;
     }
+    final Map<Object, FileHashPipeline.HashedFile> unbundledFiles =
+        mapProject2UnbundledFiles.remove(project);
+    if (unbundledFiles != null) {
+      dcLogger.logInfo("Bundle extended with " + unbundledFiles.size() + " restored files");
+      filesToProceed = new HashSet<>(filesToProceed);
+      filesToProceed.addAll(unbundledFiles.keySet());
+      filesToProceed.removeAll(filesToRemove);
+      hashedFiles = new HashMap<>(hashedFiles);
+      unbundledFiles.forEach(hashedFiles::putIfAbsent);
+    }
     // no needs to check login here as it will be checked anyway during every api response's check
     // if (!LoginUtils.isLogged(project, false)) return EMPTY_MAP;
 
-    List<String> missingFiles = createBundleStep(project, filesToProceed, filesToRemove, progress);
+    List<String> missingFiles =
+        createBundleStep(project, filesToProceed, filesToRemove, hashedFiles, progress);
+    if (isServerUnavailable()) return EMPTY_MAP;
 
     uploadFilesStep(project, filesToProceed, missingFiles, progress);
+    if (isServerUnavailable()) return EMPTY_MAP;
+    // files changed meanwhile have no hash, as they were removed from caches
+    final Map<Object, String> analysedHashes = new HashMap<>();
+    for (Object file : filesToProceed) {
+      final String hash = hashContentUtils.getCachedHash(file);
+      if (hash != null) analysedHashes.put(file, hash);
+    }
 
     // ---------------------------------------- Get Analysis
     final String bundleId = mapProject2BundleId.getOrDefault(project, "");
@@ -298,9 +669,12 @@ public abstract class AnalysisDataBase {
     long startTime = System.currentTimeMillis();
     pdUtils.progressSetText(progress, WAITING_FOR_ANALYSIS_TEXT);
     pdUtils.progressCheckCanceled(progress);
-    GetAnalysisResponse getAnalysisResponse = doGetAnalysis(project, bundleId, progress);
+    final AnalysisResultsDecoder decoder =
+        new AnalysisResultsDecoder(pdUtils, dcLogger, filesToProceed);
+    GetAnalysisResponse getAnalysisResponse = doGetAnalysis(project, bundleId, decoder, progress);
     Map<Object, List<SuggestionForFile>> result =
-        parseGetAnalysisResponse(project, filesToProceed, getAnalysisResponse, progress);
+        collectAnalysisResults(project, getAnalysisResponse, decoder);
+    cacheAnalysedSuggestions(project, analysedHashes, result);
     dcLogger.logInfo(
         "--- Get Analysis took: " + (System.currentTimeMillis() - startTime) + " milliseconds");
     return result;
@@ -315,48 +689,110 @@ public abstract class AnalysisDataBase {
       @NotNull Object project,
       @NotNull Collection<Object> filesToProceed,
       @NotNull Collection<Object> filesToRemove,
+      @NotNull Map<Object, FileHashPipeline.HashedFile> hashedFiles,
       @NotNull Object progress) {
     long startTime = System.currentTimeMillis();
     pdUtils.progressSetText(progress, PREPARE_FILES_TEXT);
     dcLogger.logInfo(PREPARE_FILES_TEXT);
     pdUtils.progressCheckCanceled(progress);
     Map<String, String> mapPath2Hash = new HashMap<>();
+    final Map<String, Object> mapPath2File = new HashMap<>();
     long sizePath2Hash = 0;
     int fileCounter = 0;
     int totalFiles = filesToProceed.size();
-    for (Object file : filesToProceed) {
-      hashContentUtils.removeFileHashContent(file);
-      pdUtils.progressCheckCanceled(progress);
-      pdUtils.progressSetFraction(progress, ((double) fileCounter++) / totalFiles);
-      pdUtils.progressSetText(
-          progress, PREPARE_FILES_TEXT + fileCounter + " of " + totalFiles + " files done.");
-
-      final String path = pdUtils.getDeepCodedFilePath(file);
-      // info("getHash requested");
-      final String hash = hashContentUtils.getHash(file);
-      if (fileCounter == 1)
-        dcLogger.logInfo("First file to proceed: \npath = " + path + "\nhash = " + hash);
-
-      mapPath2Hash.put(path, hash);
-      sizePath2Hash += (path.length() + hash.length()) * 2; // rough estimation of bytes occupied
-      if (sizePath2Hash > MAX_BUNDLE_SIZE) {
-        CreateBundleResponse tempBundleResponse =
-            makeNewBundle(project, mapPath2Hash, Collections.emptyList());
-        sizePath2Hash = 0;
-        mapPath2Hash.clear();
+    // missing files of intermediate bundles are uploaded while next chunks are hashed
+    final ChunkUploader uploader =
+        new ChunkUploader(
+            deepCodeParams.getSessionToken(),
+            deepCodeParams.getUploadParallelism(),
+            MAX_BUNDLE_SIZE,
+            hashContentUtils,
+            pdUtils,
+            dcLogger,
+            progress,
+            UPLOADING_FILES_TEXT,
+            0);
+    int bundleRequests = 0;
+    long bundleRequestsMillis = 0;
+    try (FileHashPipeline pipeline =
+        new FileHashPipeline(
+            filesToProceed,
+            hashedFiles,
+            deepCodeParams.getHashingParallelism(),
+            hashContentUtils,
+            pdUtils,
+            progress)) {
+      for (FileHashPipeline.HashedFile hashed = pipeline.next();
+          hashed != null;
+          hashed = pipeline.next()) {
+        pdUtils.progressCheckCanceled(progress);
+        pdUtils.progressSetFraction(progress, ((double) fileCounter++) / totalFiles);
+        pdUtils.progressSetText(
+            progress, PREPARE_FILES_TEXT + fileCounter + " of " + totalFiles + " files done.");
+
+        final String path = hashed.path;
+        final String hash = hashed.hash;
+        if (fileCounter == 1)
+          dcLogger.logInfo("First file to proceed: \npath = " + path + "\nhash = " + hash);
+
+        mapPath2Hash.put(path, hash);
+        mapPath2File.put(path, hashed.file);
+        sizePath2Hash += (path.length() + hash.length()) * 2; // rough estimation of bytes occupied
+        if (sizePath2Hash > MAX_BUNDLE_SIZE) {
+          final long requestStart = System.currentTimeMillis();
+          CreateBundleResponse tempBundleResponse =
+              makeNewBundle(project, mapPath2Hash, Collections.emptyList());
+          bundleRequests++;
+          bundleRequestsMillis += System.currentTimeMillis() - requestStart;
+          releasePresentFilesContent(mapPath2Hash, tempBundleResponse, mapPath2File);
+          uploader.submit(
+              tempBundleResponse.getBundleId(),
+              toFiles(tempBundleResponse.getMissingFiles(), mapPath2File));
+          sizePath2Hash = 0;
+          mapPath2Hash.clear();
+        }
       }
+      dcLogger.logInfo(pipeline.getStats());
+      dcLogger.logInfo(hashContentUtils.getContentCache().toString());
+      dcLogger.logInfo(hashContentUtils.getOffHeapContentStore().toString());
+    }
+    try {
+      hashContentUtils.saveHashIndex(project);
+    } catch (IOException e) {
+      dcLogger.logWarn("Hash index not saved: " + e);
     }
     // todo break removeFiles in chunks less then MAX_BANDLE_SIZE
     //  needed ?? we do full rescan for large amount of files to remove
+    final long requestStart = System.currentTimeMillis();
     CreateBundleResponse createBundleResponse = makeNewBundle(project, mapPath2Hash, filesToRemove);
+    bundleRequests++;
+    bundleRequestsMillis += System.currentTimeMillis() - requestStart;
+    releasePresentFilesContent(mapPath2Hash, createBundleResponse, mapPath2File);
 
     final String bundleId = createBundleResponse.getBundleId();
 
     List<String> missingFiles = createBundleResponse.getMissingFiles();
+    final List<Object> uploadedFiles = awaitUploads(project, uploader);
+    if (!uploadedFiles.isEmpty()) {
+      final Set<String> uploadedPaths =
+          uploadedFiles.stream().map(pdUtils::getDeepCodedFilePath).collect(Collectors.toSet());
+      missingFiles =
+          missingFiles.stream()
+              .filter(path -> !uploadedPaths.contains(path))
+              .collect(Collectors.toList());
+    }
     dcLogger.logInfo(
         "--- Create/Extend Bundle took: "
             + (System.currentTimeMillis() - startTime)
             + " milliseconds"
+            + "\nbundle requests: "
+            + bundleRequests
+            + " took "
+            + bundleRequestsMillis
+            + " milliseconds"
+            + "\nuploaded meanwhile: "
+            + uploadedFiles.size()
+            + " files"
             + "\nbundleId: "
             + bundleId
             + "\nmissingFiles: "
@@ -364,6 +800,37 @@ public abstract class AnalysisDataBase {
     return missingFiles;
   }
 
+  /** Content of files not missing on the server is not needed for upload. */
+  private void releasePresentFilesContent(
+      @NotNull Map<String, String> bundlePath2Hash,
+      @NotNull CreateBundleResponse bundleResponse,
+      @NotNull Map<String, Object> mapPath2File) {
+    final Set<String> missingPaths = new HashSet<>(bundleResponse.getMissingFiles());
+    for (String path : bundlePath2Hash.keySet()) {
+      if (!missingPaths.contains(path)) {
+        hashContentUtils.releaseFileContent(mapPath2File.get(path));
+      }
+    }
+  }
+
+  @NotNull
+  private static List<Object> toFiles(
+      @NotNull List<String> paths, @NotNull Map<String, Object> mapPath2File) {
+    return paths.stream()
+        .map(mapPath2File::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  /** @return successfully uploaded files */
+  @NotNull
+  private List<Object> awaitUploads(@NotNull Object project, @NotNull ChunkUploader uploader) {
+    for (EmptyResponse failedResponse : uploader.awaitAll()) {
+      isNotSucceed(project, failedResponse, "Bad UploadFiles request: ");
+    }
+    return uploader.getUploadedFiles();
+  }
+
   /** Perform costly network request. <b>No cache checks!</b> */
   private void uploadFilesStep(
       @NotNull Object project,
@@ -374,7 +841,7 @@ public abstract class AnalysisDataBase {
     pdUtils.progressSetText(progress, UPLOADING_FILES_TEXT);
     pdUtils.progressCheckCanceled(progress);
 
-    final String bundleId = mapProject2BundleId.getOrDefault(project, "");
+    String bundleId = mapProject2BundleId.getOrDefault(project, "");
     if (bundleId.isEmpty()) {
       dcLogger.logInfo("BundleId is empty");
     } else if (missingFiles.isEmpty()) {
@@ -382,7 +849,13 @@ public abstract class AnalysisDataBase {
     } else {
       final int attempts = 5;
       for (int counter = 0; counter < attempts; counter++) {
-        uploadFiles(project, filesToProceed, missingFiles, bundleId, progress);
+        final List<Object> changedFiles =
+            uploadFiles(project, filesToProceed, missingFiles, bundleId, progress);
+        if (isServerUnavailable()) break;
+        if (!changedFiles.isEmpty()) {
+          bundleId = rehashChangedFiles(project, changedFiles);
+          if (bundleId.isEmpty()) break;
+        }
         missingFiles = checkBundle(project, bundleId);
         if (missingFiles.isEmpty()) {
           break;
@@ -401,6 +874,23 @@ public abstract class AnalysisDataBase {
         "--- Upload Files took: " + (System.currentTimeMillis() - startTime) + " milliseconds");
   }
 
+  /**
+   * Files changed after hashing and not cached anymore can't be uploaded with their old hashes, so
+   * bundle is extended with current hashes, and content is uploaded with the next attempt.
+   *
+   * @return new bundleId
+   */
+  @NotNull
+  private String rehashChangedFiles(@NotNull Object project, @NotNull List<Object> changedFiles) {
+    final Map<String, String> mapPath2Hash = new HashMap<>();
+    for (Object file : changedFiles) {
+      hashContentUtils.removeFileHashContent(file);
+      mapPath2Hash.put(pdUtils.getDeepCodedFilePath(file), hashContentUtils.getHash(file));
+    }
+    dcLogger.logInfo("Bundle extended with new hashes of " + changedFiles.size() + " files");
+    return makeNewBundle(project, mapPath2Hash, Collections.emptyList()).getBundleId();
+  }
+
   /** Perform costly network request. <b>No cache checks!</b> */
   @NotNull
   private List<SuggestionForFile> retrieveSuggestions(
@@ -413,8 +903,8 @@ public abstract class AnalysisDataBase {
     dcLogger.logInfo("Creating temporary Bundle from File content");
     pdUtils.progressCheckCanceled(progress);
 
-    FileContent fileContent =
-        new FileContent(pdUtils.getDeepCodedFilePath(file), hashContentUtils.getFileContent(file));
+    final String content = hashContentUtils.getFileContent(file);
+    FileContent fileContent = new FileContent(pdUtils.getDeepCodedFilePath(file), content);
     FileContentRequest fileContentRequest =
         new FileContentRequest(Collections.singletonList(fileContent));
 
@@ -441,11 +931,16 @@ public abstract class AnalysisDataBase {
     // ---------------------------------------- Get Analysis
     pdUtils.progressCheckCanceled(progress);
     startTime = System.currentTimeMillis();
-    GetAnalysisResponse getAnalysisResponse = doGetAnalysis(project, bundleId, progress);
-    result =
-        parseGetAnalysisResponse(
-                project, Collections.singleton(file), getAnalysisResponse, progress)
-            .getOrDefault(file, Collections.emptyList());
+    final AnalysisResultsDecoder decoder =
+        new AnalysisResultsDecoder(pdUtils, dcLogger, Collections.singleton(file));
+    GetAnalysisResponse getAnalysisResponse = doGetAnalysis(project, bundleId, decoder, progress);
+    final Map<Object, List<SuggestionForFile>> file2Suggestions =
+        collectAnalysisResults(project, getAnalysisResponse, decoder);
+    cacheAnalysedSuggestions(
+        project,
+        Collections.singletonMap(file, HashContentUtilsBase.doGetHash(content)),
+        file2Suggestions);
+    result = file2Suggestions.getOrDefault(file, Collections.emptyList());
     mapProject2analysisUrl.put(project, "");
 
     dcLogger.logInfo(
@@ -454,7 +949,9 @@ public abstract class AnalysisDataBase {
     return result;
   }
 
-  private void uploadFiles(
+  /** @return files not uploaded as changed since hashing */
+  @NotNull
+  private List<Object> uploadFiles(
       @NotNull Object project,
       @NotNull Collection<Object> filesToProceed,
       @NotNull List<String> missingFiles,
@@ -462,18 +959,10 @@ public abstract class AnalysisDataBase {
       @NotNull Object progress) {
     Map<String, Object> mapPath2File =
         filesToProceed.stream().collect(Collectors.toMap(pdUtils::getDeepCodedFilePath, it -> it));
-    int fileCounter = 0;
-    int totalFiles = missingFiles.size();
-    long fileChunkSize = 0;
     int brokenMissingFilesCount = 0;
     String brokenMissingFilesMessage = "";
-    List<Object> filesChunk = new ArrayList<>();
+    List<Object> files = new ArrayList<>();
     for (String filePath : missingFiles) {
-      pdUtils.progressCheckCanceled(progress);
-      pdUtils.progressSetFraction(progress, ((double) fileCounter++) / totalFiles);
-      pdUtils.progressSetText(
-          progress, UPLOADING_FILES_TEXT + fileCounter + " of " + totalFiles + " files done.");
-
       Object file = mapPath2File.get(filePath);
       if (file == null) {
         if (brokenMissingFilesCount == 0) {
@@ -485,22 +974,27 @@ public abstract class AnalysisDataBase {
         brokenMissingFilesCount++;
         continue;
       }
-      final long fileSize = pdUtils.getFileSize(file); // .getVirtualFile().getLength();
-      if (fileChunkSize + fileSize > MAX_BUNDLE_SIZE) {
-        dcLogger.logInfo("Files-chunk size: " + fileChunkSize);
-        doUploadFiles(project, filesChunk, bundleId, progress);
-        fileChunkSize = 0;
-        filesChunk.clear();
-      }
-      fileChunkSize += fileSize;
-      filesChunk.add(file);
+      files.add(file);
     }
     if (brokenMissingFilesCount > 0)
       dcLogger.logWarn(brokenMissingFilesCount + brokenMissingFilesMessage);
-    dcLogger.logInfo("Last filesToProceed-chunk size: " + fileChunkSize);
-    doUploadFiles(project, filesChunk, bundleId, progress);
+    final ChunkUploader uploader =
+        new ChunkUploader(
+            deepCodeParams.getSessionToken(),
+            deepCodeParams.getUploadParallelism(),
+            MAX_BUNDLE_SIZE,
+            hashContentUtils,
+            pdUtils,
+            dcLogger,
+            progress,
+            UPLOADING_FILES_TEXT,
+            files.size());
+    uploader.submit(bundleId, files);
+    awaitUploads(project, uploader);
+    return uploader.getChangedFiles();
   }
 
+
   /**
    * Checks the status of a bundle: if there are still missing files after uploading
    *
@@ -530,8 +1024,13 @@ public abstract class AnalysisDataBase {
           "Attempt to Extending a bundle by removing all the parent bundle's files: "
               + filesToRemove);
     }
+    final PersistentSuggestionStore store = getSuggestionStore(project);
     List<String> removedFiles =
-        filesToRemove.stream().map(pdUtils::getDeepCodedFilePath).collect(Collectors.toList());
+        filesToRemove.stream()
+            .map(pdUtils::getDeepCodedFilePath)
+            .collect(Collectors.toCollection(ArrayList::new));
+    // files deleted while the project was closed
+    if (store != null && !parentBundleId.isEmpty()) removedFiles.addAll(store.getRemovedPaths());
     String message =
         (parentBundleId.isEmpty()
                 ? "Creating new Bundle with "
@@ -540,7 +1039,6 @@ public abstract class AnalysisDataBase {
             + " files"
             + (removedFiles.isEmpty() ? "" : " and remove " + removedFiles.size() + " files");
     dcLogger.logInfo(message);
-    // todo make network request in parallel with collecting data
     final CreateBundleResponse bundleResponse;
     // check if bundleID for the project already been created
     if (parentBundleId.isEmpty())
@@ -562,6 +1060,10 @@ public abstract class AnalysisDataBase {
       newBundleId = "";
     }
     mapProject2BundleId.put(project, newBundleId);
+    if (store != null && bundleResponse.getStatusCode() == 200) {
+      if (newBundleId.isEmpty()) store.resetBundle();
+      else store.bundleUpdated(parentBundleId, newBundleId, mapPath2Hash, removedFiles);
+    }
     isNotSucceed(project, bundleResponse, "Bad Create/Extend Bundle request: ");
     // just make new bundle in case of 404 Parent bundle has expired
     return (bundleResponse.getStatusCode() == 404)
@@ -569,205 +1071,124 @@ public abstract class AnalysisDataBase {
         : bundleResponse;
   }
 
-  private void doUploadFiles(
+  @NotNull
+  private GetAnalysisResponse doGetAnalysis(
       @NotNull Object project,
-      @NotNull Collection<Object> psiFiles,
       @NotNull String bundleId,
+      @NotNull AnalysisResultsDecoder decoder,
       @NotNull Object progress) {
-    dcLogger.logInfo("Uploading " + psiFiles.size() + " files... ");
-    if (psiFiles.isEmpty()) return;
-    List<FileHash2ContentRequest> listHash2Content = new ArrayList<>(psiFiles.size());
-    for (Object psiFile : psiFiles) {
-      pdUtils.progressCheckCanceled(progress);
-      listHash2Content.add(
-          new FileHash2ContentRequest(
-              hashContentUtils.getHash(psiFile), hashContentUtils.getFileContent(psiFile)));
+    final int timeout = deepCodeParams.getAnalysisTimeout(); // seconds
+    final long startTime = System.currentTimeMillis();
+    // responses come on a network thread, progress is shown from the waiting one
+    final AtomicReference<GetAnalysisResponse> lastResponse = new AtomicReference<>();
+    final CompletableFuture<GetAnalysisResponse> future =
+        analysisPoller.await(
+            deepCodeParams.getSessionToken(),
+            bundleId,
+            deepCodeParams.getMinSeverity(),
+            deepCodeParams.useLinter(),
+            decoder,
+            response -> {
+              dcLogger.logInfo(response.toString());
+              lastResponse.set(response);
+            },
+            timeout);
+    GetAnalysisResponse response;
+    try {
+      response = waitFor(future, progress, lastResponse, startTime, timeout);
+    } finally {
+      // no-op if completed, stops polling for this waiter if progress was canceled
+      future.cancel(false);
     }
-    if (listHash2Content.isEmpty()) return;
-
-    // todo make network request in parallel with collecting data
-    EmptyResponse uploadFilesResponse =
-        DeepCodeRestApi.UploadFiles(deepCodeParams.getSessionToken(), bundleId, listHash2Content);
-    isNotSucceed(project, uploadFilesResponse, "Bad UploadFiles request: ");
+    if (isNotSucceed(project, response, "Bad GetAnalysis request: "))
+      return new GetAnalysisResponse();
+
+    if (response.getStatus().equals("FAILED")) {
+      dcLogger.logWarn("FAILED getAnalysis request.");
+      // if Failed then we have inconsistent caches, better to do full rescan
+      pdUtils.doFullRescan(project);
+      /*if (!RunUtils.isFullRescanRequested(project)) {
+        RunUtils.rescanInBackgroundCancellableDelayed(project, 500, false);
+      }*/
+    } else if (!response.getStatus().equals("DONE")) {
+      dcLogger.logWarn("Timeout expire for waiting analysis results.");
+      /*
+              DeepCodeNotifications.showWarn(
+                  "Can't get analysis results from the server. Network or server internal error. Please, try again later.",
+                  project);
+      */
+    }
+    return response;
   }
 
+  /**
+   * Block till {@code future} is completed, checking {@code progress} for cancellation and showing
+   * the progress of the last polled response.
+   */
   @NotNull
-  private GetAnalysisResponse doGetAnalysis(
-      @NotNull Object project, @NotNull String bundleId, @NotNull Object progress) {
-    GetAnalysisResponse response;
-    int counter = 0;
-    final int timeout = 100; // seconds
-    final int attempts = timeout * 1000 / pdUtils.DEFAULT_DELAY;
-    do {
-      if (counter > 0) pdUtils.delay(pdUtils.DEFAULT_DELAY, progress);
-      response =
-          DeepCodeRestApi.getAnalysis(
-              deepCodeParams.getSessionToken(),
-              bundleId,
-              deepCodeParams.getMinSeverity(),
-              deepCodeParams.useLinter());
-
-      pdUtils.progressCheckCanceled(progress);
-      dcLogger.logInfo(response.toString());
-      if (isNotSucceed(project, response, "Bad GetAnalysis request: "))
+  private GetAnalysisResponse waitFor(
+      @NotNull CompletableFuture<GetAnalysisResponse> future,
+      @NotNull Object progress,
+      @NotNull AtomicReference<GetAnalysisResponse> lastResponse,
+      long startTime,
+      int timeout) {
+    while (true) {
+      try {
+        return future.get(100, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        pdUtils.progressCheckCanceled(progress);
+        final GetAnalysisResponse response = lastResponse.getAndSet(null);
+        if (response != null) showAnalysisProgress(progress, response, startTime, timeout);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new GetAnalysisResponse();
+      } catch (ExecutionException | CancellationException e) {
+        dcLogger.logWarn("GetAnalysis request failed: " + e);
         return new GetAnalysisResponse();
-
-      double responseProgress = response.getProgress();
-      if (responseProgress <= 0 || responseProgress > 1)
-        responseProgress = ((double) counter) / attempts;
-      pdUtils.progressSetFraction(progress, responseProgress);
-      pdUtils.progressSetText(
-          progress, WAITING_FOR_ANALYSIS_TEXT + (int) (responseProgress * 100) + "% done");
-
-      if (counter >= attempts) {
-        dcLogger.logWarn("Timeout expire for waiting analysis results.");
-        /*
-                DeepCodeNotifications.showWarn(
-                    "Can't get analysis results from the server. Network or server internal error. Please, try again later.",
-                    project);
-        */
-        break;
-      }
-
-      if (response.getStatus().equals("FAILED")) {
-        dcLogger.logWarn("FAILED getAnalysis request.");
-        // if Failed then we have inconsistent caches, better to do full rescan
-        pdUtils.doFullRescan(project);
-        /*if (!RunUtils.isFullRescanRequested(project)) {
-          RunUtils.rescanInBackgroundCancellableDelayed(project, 500, false);
-        }*/
-        break;
       }
+    }
+  }
 
-      counter++;
-    } while (!response.getStatus().equals("DONE")
-    // !!!! keep commented in production, for debug only: to emulate long processing
-    // || counter < 10
-    );
-    return response;
+  private void showAnalysisProgress(
+      @NotNull Object progress,
+      @NotNull GetAnalysisResponse response,
+      long startTime,
+      int timeout) {
+    double responseProgress = response.getProgress();
+    if (responseProgress <= 0 || responseProgress > 1)
+      responseProgress = Math.min(1, (System.currentTimeMillis() - startTime) / (timeout * 1000.0));
+    pdUtils.progressSetFraction(progress, responseProgress);
+    pdUtils.progressSetText(
+        progress, WAITING_FOR_ANALYSIS_TEXT + (int) (responseProgress * 100) + "% done");
   }
 
   @NotNull
-  private Map<Object, List<SuggestionForFile>> parseGetAnalysisResponse(
+  private Map<Object, List<SuggestionForFile>> collectAnalysisResults(
       @NotNull Object project,
-      @NotNull Collection<Object> files,
-      GetAnalysisResponse response,
-      @NotNull Object progress) {
-    Map<Object, List<SuggestionForFile>> result = new HashMap<>();
+      @NotNull GetAnalysisResponse response,
+      @NotNull AnalysisResultsDecoder decoder) {
     if (!response.getStatus().equals("DONE")) return EMPTY_MAP;
-    AnalysisResults analysisResults = response.getAnalysisResults();
     mapProject2analysisUrl.put(project, response.getAnalysisURL());
-    if (analysisResults == null) {
-      dcLogger.logWarn("AnalysisResults is null for: " + response);
+    final Map<Object, List<SuggestionForFile>> result = decoder.getResult();
+    if (result == null) {
+      dcLogger.logWarn("Can't collect AnalysisResults for: " + response);
       return EMPTY_MAP;
     }
-    for (Object file : files) {
-      // fixme iterate over analysisResults.getFiles() to reduce empty passes
-      final String deepCodedFilePath = pdUtils.getDeepCodedFilePath(file);
-      FileSuggestions fileSuggestions = analysisResults.getFiles().get(deepCodedFilePath);
-      if (fileSuggestions == null) {
-        result.put(file, Collections.emptyList());
-        continue;
-      }
-      final Suggestions suggestions = analysisResults.getSuggestions();
-      if (suggestions == null) {
-        dcLogger.logWarn("Suggestions is empty for: " + response);
-        return EMPTY_MAP;
-      }
-      pdUtils.progressCheckCanceled(progress);
-
-      final List<SuggestionForFile> mySuggestions = new ArrayList<>();
-      for (String suggestionIndex : fileSuggestions.keySet()) {
-        final Suggestion suggestion = suggestions.get(suggestionIndex);
-        if (suggestion == null) {
-          dcLogger.logWarn(
-              "Suggestion not found for suggestionIndex: "
-                  + suggestionIndex
-                  + "\nGetAnalysisResponse: "
-                  + response);
-          return EMPTY_MAP;
-        }
-
-        final List<MyTextRange> ranges = new ArrayList<>();
-        for (FilePosition filePosition : fileSuggestions.get(suggestionIndex)) {
-
-          final Map<MyTextRange, List<MyTextRange>> markers =
-              new LinkedHashMap<>(); // order should be preserved
-          for (Marker marker : filePosition.getMarkers()) {
-            final MyTextRange msgRange =
-                new MyTextRange(marker.getMsg().get(0), marker.getMsg().get(1) + 1);
-            final List<MyTextRange> positions =
-                marker.getPos().stream()
-                    .map(it -> parsePosition2MyTextRange(it, file, Collections.emptyMap()))
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-            markers.put(msgRange, positions);
-          }
-          final MyTextRange suggestionRange = parsePosition2MyTextRange(filePosition, file, markers);
-          if (suggestionRange != null) ranges.add(suggestionRange);
-        }
-
-        mySuggestions.add(
-            new SuggestionForFile(
-                suggestion.getId(),
-                suggestion.getRule(),
-                suggestion.getMessage(),
-                suggestion.getSeverity(),
-                suggestion.getRepoDatasetSize(),
-                suggestion.getExampleCommitFixes(),
-                ranges));
-      }
-      result.put(file, mySuggestions);
-    }
     return result;
   }
 
-  @Nullable
-  private MyTextRange parsePosition2MyTextRange(
-      @NotNull final Position position,
-      @NotNull final Object file,
-      @NotNull final Map<MyTextRange, List<MyTextRange>> markers) {
-
-    final int startRow = position.getRows().get(0);
-    final int endRow = position.getRows().get(1);
-    final int startCol = position.getCols().get(0) - 1; // inclusive
-    final int endCol = position.getCols().get(1);
-
-    if (startRow <= 0 || endRow <= 0 || startCol < 0 || endCol < 0) {
-      final String deepCodedFilePath = pdUtils.getDeepCodedFilePath(file);
-      dcLogger.logWarn(
-          "Incorrect " + position + "\nin file: " + deepCodedFilePath);
-      return null;
-    }
-
-    final int mLineStartOffset = pdUtils.getLineStartOffset(file, startRow - 1); // to 0-based
-    final int mLineEndOffset = pdUtils.getLineStartOffset(file, endRow - 1);
-
-    return new MyTextRange(
-        mLineStartOffset + startCol,
-        mLineEndOffset + endCol,
-        startRow,
-        endRow,
-        startCol,
-        endCol,
-        markers);
-  }
-
   private FileContent createFileContent(Object file) {
     return new FileContent(
         pdUtils.getDeepCodedFilePath(file), hashContentUtils.getFileContent(file));
   }
 
+  /** @return unmodifiable set of files from the current {@link AnalysisSnapshot} */
   public Set<Object> getAllFilesWithSuggestions(@NotNull final Object project) {
-    return mapFile2Suggestions.entrySet().stream()
-        .filter(e -> pdUtils.getProject(e.getKey()).equals(project))
-        .filter(e -> !e.getValue().isEmpty())
-        .map(Map.Entry::getKey)
-        .collect(Collectors.toSet());
+    return getAnalysisSnapshot(project).getFilesWithSuggestions();
   }
 
   public boolean isFileInCache(@NotNull Object psiFile) {
-    return mapFile2Suggestions.containsKey(psiFile);
+    return getAnalysisSnapshot(pdUtils.getProject(psiFile)).contains(psiFile);
   }
 
   /** Remove project from all Caches and <b>CANCEL</b> all background tasks for it */
@@ -775,11 +1196,10 @@ public abstract class AnalysisDataBase {
     final Set<Object> projects =
         (project == null) ? getAllCachedProject() : Collections.singleton(project);
     for (Object prj : projects) {
-      // lets all running ProgressIndicators release MUTEX first
+      // lets all running ProgressIndicators release project MUTEX first
       pdUtils.cancelRunningIndicators(prj);
       removeProjectFromCaches(prj);
       pdUtils.refreshPanel(prj); // ServiceManager.getService(prj, myTodoView.class).refresh();
-      mapProject2analysisUrl.put(prj, "");
     }
   }
 }
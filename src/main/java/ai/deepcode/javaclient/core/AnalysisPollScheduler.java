@@ -0,0 +1,56 @@
+package ai.deepcode.javaclient.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays between getAnalysis polls of one bundle. Second poll goes shortly after the first one, so
+ * small analyses are picked up fast. While server reports growing progress next poll is planned
+ * at half of the estimated remaining time, otherwise delay grows exponentially. All delays are
+ * kept within {@code [MIN_DELAY_MILLIS, MAX_DELAY_MILLIS]} and the timeout budget.
+ */
+final class AnalysisPollScheduler {
+
+  static final long MIN_DELAY_MILLIS = 100;
+  static final long MAX_DELAY_MILLIS = 5000;
+  private static final double BACKOFF_MULTIPLIER = 1.5;
+
+  private final long startNanos;
+  private final long timeoutNanos;
+
+  private long lastDelayMillis = 0;
+  private double lastProgress = 0;
+  private long lastProgressNanos;
+
+  AnalysisPollScheduler(long timeout, TimeUnit unit) {
+    startNanos = System.nanoTime();
+    timeoutNanos = unit.toNanos(timeout);
+    lastProgressNanos = startNanos;
+  }
+
+  /**
+   * @param progress as reported by the server in the last response, values outside of {@code (0,
+   *     1)} mean unknown progress
+   * @return delay before the next poll or <b>-1</b> if timeout budget is exhausted
+   */
+  long nextDelayMillis(double progress) {
+    final long now = System.nanoTime();
+    final long remainingBudgetMillis =
+        TimeUnit.NANOSECONDS.toMillis(startNanos + timeoutNanos - now);
+    if (remainingBudgetMillis <= 0) return -1;
+
+    long delay;
+    if (progress > lastProgress && progress < 1) {
+      final double progressPerNano =
+          (progress - lastProgress) / Math.max(1, now - lastProgressNanos);
+      final double remainingNanos = (1 - progress) / progressPerNano;
+      delay = TimeUnit.NANOSECONDS.toMillis((long) (remainingNanos / 2));
+      lastProgress = progress;
+      lastProgressNanos = now;
+    } else {
+      delay = (long) (lastDelayMillis * BACKOFF_MULTIPLIER);
+    }
+    delay = Math.max(MIN_DELAY_MILLIS, Math.min(MAX_DELAY_MILLIS, delay));
+    lastDelayMillis = delay;
+    return Math.min(delay, remainingBudgetMillis);
+  }
+}
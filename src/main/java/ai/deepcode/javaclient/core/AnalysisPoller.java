@@ -0,0 +1,218 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.responses.AnalysisResultsReader;
+import ai.deepcode.javaclient.responses.GetAnalysisResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Polls getAnalysis for all waiting analyses from one timer thread. Requests are sent
+ * asynchronously, so no thread is sleeping between polls. Waiters of the same bundle (and same
+ * filtering params) share one request; results are decoded once for files of all of them and
+ * shared by their {@link AnalysisResultsDecoder}s.
+ *
+ * <p>Waiter's future completes with the first response that is DONE, FAILED or not succeed, or
+ * with the last received response when waiter's timeout expires.
+ */
+final class AnalysisPoller {
+
+  private final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "DeepCode analysis poller");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Map<PollKey, Poll> polls = new HashMap<>();
+
+  /**
+   * Wait for analysis to finish.
+   *
+   * @param onResponse called with every received response, including the final one, from a
+   *     network thread
+   * @param timeout in seconds
+   */
+  @NotNull
+  CompletableFuture<GetAnalysisResponse> await(
+      @NotNull String token,
+      @NotNull String bundleId,
+      int severity,
+      boolean useLinters,
+      @NotNull AnalysisResultsDecoder decoder,
+      @NotNull Consumer<GetAnalysisResponse> onResponse,
+      int timeout) {
+    final PollKey key = new PollKey(token, bundleId, severity, useLinters);
+    final Waiter waiter =
+        new Waiter(decoder, onResponse, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout));
+    synchronized (polls) {
+      Poll poll = polls.get(key);
+      if (poll == null) {
+        poll = new Poll(key, timeout);
+        polls.put(key, poll);
+        poll.waiters.add(waiter);
+        schedule(poll, 0);
+      } else {
+        // will be served starting from the next request
+        poll.waiters.add(waiter);
+      }
+    }
+    return waiter.future;
+  }
+
+  private void schedule(@NotNull Poll poll, long delayMillis) {
+    timer.schedule(() -> sendRequest(poll), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void sendRequest(@NotNull Poll poll) {
+    final List<Waiter> waiters;
+    synchronized (polls) {
+      poll.waiters.removeIf(waiter -> waiter.future.isDone());
+      if (poll.waiters.isEmpty()) {
+        polls.remove(poll.key);
+        return;
+      }
+      waiters = new ArrayList<>(poll.waiters);
+    }
+    final PollKey key = poll.key;
+    CompletableFuture<GetAnalysisResponse> request;
+    try {
+      request =
+          DeepCodeRestApi.getAnalysisAsync(
+              key.token, key.bundleId, key.severity, key.useLinters, sharedReader(waiters));
+    } catch (RuntimeException e) {
+      request = new CompletableFuture<>();
+      request.completeExceptionally(e);
+    }
+    request.whenComplete((response, throwable) -> onResponse(poll, waiters, response, throwable));
+  }
+
+  private void onResponse(
+      @NotNull Poll poll,
+      @NotNull List<Waiter> waiters,
+      @Nullable GetAnalysisResponse response,
+      @Nullable Throwable throwable) {
+    final boolean isFinal =
+        throwable != null
+            || response.getStatusCode() != 200
+            || response.getStatus().equals("DONE")
+            || response.getStatus().equals("FAILED");
+    final long now = System.nanoTime();
+    final List<Waiter> finished = new ArrayList<>();
+    for (Waiter waiter : waiters) {
+      if (throwable != null) {
+        waiter.future.completeExceptionally(throwable);
+        finished.add(waiter);
+        continue;
+      }
+      try {
+        waiter.onResponse.accept(response);
+      } catch (RuntimeException e) {
+        waiter.future.completeExceptionally(e);
+      }
+      if (isFinal || now - waiter.deadlineNanos >= 0) {
+        waiter.future.complete(response);
+      }
+      if (waiter.future.isDone()) finished.add(waiter);
+    }
+
+    synchronized (polls) {
+      poll.waiters.removeAll(finished);
+      if (poll.waiters.isEmpty()) {
+        polls.remove(poll.key);
+        return;
+      }
+      long delay;
+      if (isFinal) {
+        // waiters joined during the request need their own results
+        delay = 0;
+      } else {
+        delay = poll.scheduler.nextDelayMillis(response.getProgress());
+        if (delay < 0) delay = AnalysisPollScheduler.MAX_DELAY_MILLIS;
+        // wake up in time for the nearest waiter's timeout
+        for (Waiter waiter : poll.waiters) {
+          delay = Math.min(delay, TimeUnit.NANOSECONDS.toMillis(waiter.deadlineNanos - now));
+        }
+      }
+      schedule(poll, Math.max(0, delay));
+    }
+  }
+
+  /**
+   * Every waiter needs analysisResults, so they are decoded once for files of all waiters and the
+   * same decoded results are given to every waiter's decoder.
+   */
+  @NotNull
+  private static AnalysisResultsReader sharedReader(@NotNull List<Waiter> waiters) {
+    if (waiters.size() == 1) return waiters.get(0).decoder;
+    final Set<String> paths = new HashSet<>();
+    for (Waiter waiter : waiters) paths.addAll(waiter.decoder.getPaths());
+    return reader -> {
+      final AnalysisResultsDecoder.Results results = AnalysisResultsDecoder.decode(reader, paths);
+      for (Waiter waiter : waiters) waiter.decoder.setResults(results);
+    };
+  }
+
+  private static final class Waiter {
+    private final AnalysisResultsDecoder decoder;
+    private final Consumer<GetAnalysisResponse> onResponse;
+    private final long deadlineNanos;
+    private final CompletableFuture<GetAnalysisResponse> future = new CompletableFuture<>();
+
+    private Waiter(
+        @NotNull AnalysisResultsDecoder decoder,
+        @NotNull Consumer<GetAnalysisResponse> onResponse,
+        long deadlineNanos) {
+      this.decoder = decoder;
+      this.onResponse = onResponse;
+      this.deadlineNanos = deadlineNanos;
+    }
+  }
+
+  private static final class Poll {
+    private final PollKey key;
+    private final AnalysisPollScheduler scheduler;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private Poll(@NotNull PollKey key, int timeout) {
+      this.key = key;
+      this.scheduler = new AnalysisPollScheduler(timeout, TimeUnit.SECONDS);
+    }
+  }
+
+  private static final class PollKey {
+    private final String token;
+    private final String bundleId;
+    private final int severity;
+    private final boolean useLinters;
+
+    private PollKey(
+        @NotNull String token, @NotNull String bundleId, int severity, boolean useLinters) {
+      this.token = token;
+      this.bundleId = bundleId;
+      this.severity = severity;
+      this.useLinters = useLinters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof PollKey)) return false;
+      final PollKey other = (PollKey) o;
+      return severity == other.severity
+          && useLinters == other.useLinters
+          && token.equals(other.token)
+          && bundleId.equals(other.bundleId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(token, bundleId, severity, useLinters);
+    }
+  }
+}
@@ -0,0 +1,341 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.responses.AnalysisResultsReader;
+import ai.deepcode.javaclient.responses.Suggestion;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Decodes {@code analysisResults} of GetAnalysis response while it's read from the network.
+ * Entries for files not requested are skipped unparsed, positions are kept as raw rows and cols.
+ *
+ * <p>{@code files} and {@code suggestions} members could come in any order: positions are kept per
+ * suggestionIndex and joined with suggestions in {@link #getResult()}, which also converts them
+ * into {@link MyTextRange}. {@link #read} is called from a network thread, so it doesn't touch
+ * files or progress; {@link #getResult()} should be called from the waiting thread.
+ *
+ * <p>Decoded {@link Results} are not modified afterwards, so results decoded once for files of
+ * several decoders could be {@link #setResults shared} by them.
+ */
+final class AnalysisResultsDecoder implements AnalysisResultsReader {
+
+  private static final Gson gson = new Gson();
+
+  private final PlatformDependentUtilsBase pdUtils;
+  private final DCLoggerBase dcLogger;
+  private final Map<String, Object> path2file = new HashMap<>();
+
+  // could be set for every polled response, only the last one matters
+  @Nullable private volatile Results results;
+
+  AnalysisResultsDecoder(
+      @NotNull PlatformDependentUtilsBase pdUtils,
+      @NotNull DCLoggerBase dcLogger,
+      @NotNull Collection<Object> files) {
+    this.pdUtils = pdUtils;
+    this.dcLogger = dcLogger;
+    for (Object file : files) {
+      path2file.put(pdUtils.getDeepCodedFilePath(file), file);
+    }
+  }
+
+  @Override
+  public void read(@NotNull JsonReader reader) throws IOException {
+    results = decode(reader, path2file.keySet());
+  }
+
+  /** @return deepCoded paths of files results are decoded for */
+  @NotNull
+  Set<String> getPaths() {
+    return Collections.unmodifiableSet(path2file.keySet());
+  }
+
+  /** @param results decoded for (at least) {@link #getPaths()} */
+  void setResults(@NotNull Results results) {
+    this.results = results;
+  }
+
+  /**
+   * @param paths deepCoded paths of files to decode positions for, other entries are skipped
+   * @return positions and suggestions referenced by them, before {@code files} member is read all
+   *     suggestions are taken
+   */
+  @NotNull
+  static Results decode(@NotNull JsonReader reader, @NotNull Set<String> paths) throws IOException {
+    final Results results = new Results();
+    boolean filesRead = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+      } else if (name.equals("files")) {
+        readFiles(reader, paths, results);
+        filesRead = true;
+      } else if (name.equals("suggestions")) {
+        readSuggestions(reader, filesRead, results);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return results;
+  }
+
+  /**
+   * Join decoded positions with suggestions, converting positions into file offsets.
+   *
+   * @return suggestions for every requested file or <b>null</b> if results are absent or
+   *     inconsistent.
+   */
+  @Nullable
+  Map<Object, List<SuggestionForFile>> getResult() {
+    final Results results = this.results;
+    if (results == null) {
+      dcLogger.logWarn("AnalysisResults is null");
+      return null;
+    }
+    Map<Object, List<SuggestionForFile>> result = new HashMap<>();
+    for (Map.Entry<String, Object> pathFile : path2file.entrySet()) {
+      final Object file = pathFile.getValue();
+      final Map<String, List<Position>> fileSuggestions = results.files.get(pathFile.getKey());
+      if (fileSuggestions == null) {
+        result.put(file, Collections.emptyList());
+        continue;
+      }
+      final List<SuggestionForFile> mySuggestions = new ArrayList<>(fileSuggestions.size());
+      for (Map.Entry<String, List<Position>> entry : fileSuggestions.entrySet()) {
+        final Suggestion suggestion = results.suggestions.get(entry.getKey());
+        if (suggestion == null) {
+          dcLogger.logWarn("Suggestion not found for suggestionIndex: " + entry.getKey());
+          return null;
+        }
+        mySuggestions.add(
+            new SuggestionForFile(
+                suggestion.getId(),
+                suggestion.getRule(),
+                suggestion.getMessage(),
+                suggestion.getSeverity(),
+                suggestion.getRepoDatasetSize(),
+                suggestion.getExampleCommitFixes(),
+                toTextRanges(entry.getValue(), file)));
+      }
+      result.put(file, mySuggestions);
+    }
+    return result;
+  }
+
+  private static void readFiles(
+      @NotNull JsonReader reader, @NotNull Set<String> paths, @NotNull Results results)
+      throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String path = reader.nextName();
+      if (!paths.contains(path) || reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      final Map<String, List<Position>> fileSuggestions = new LinkedHashMap<>();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String suggestionIndex = reader.nextName();
+        final List<Position> positions = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          positions.add(readFilePosition(reader));
+        }
+        reader.endArray();
+        fileSuggestions.put(suggestionIndex, positions);
+        results.referencedIndexes.add(suggestionIndex);
+      }
+      reader.endObject();
+      results.files.put(path, fileSuggestions);
+    }
+    reader.endObject();
+  }
+
+  private static void readSuggestions(
+      @NotNull JsonReader reader, boolean filesRead, @NotNull Results results) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String suggestionIndex = reader.nextName();
+      // if files are already known then suggestions for not requested files are not needed
+      if (filesRead && !results.referencedIndexes.contains(suggestionIndex)) {
+        reader.skipValue();
+        continue;
+      }
+      final Suggestion suggestion = gson.fromJson(reader, Suggestion.class);
+      if (suggestion != null) results.suggestions.put(suggestionIndex, suggestion);
+    }
+    reader.endObject();
+  }
+
+  @NotNull
+  private static Position readFilePosition(@NotNull JsonReader reader) throws IOException {
+    int[] rows = null;
+    int[] cols = null;
+    List<Marker> markers = Collections.emptyList();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+      } else if (name.equals("rows")) {
+        rows = readPair(reader);
+      } else if (name.equals("cols")) {
+        cols = readPair(reader);
+      } else if (name.equals("markers")) {
+        markers = readMarkers(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Position(rows, cols, markers);
+  }
+
+  @NotNull
+  private static List<Marker> readMarkers(@NotNull JsonReader reader) throws IOException {
+    final List<Marker> markers = new ArrayList<>(); // order should be preserved
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int[] msg = null;
+      final List<Position> positions = new ArrayList<>();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (reader.peek() == JsonToken.NULL) {
+          reader.skipValue();
+        } else if (name.equals("msg")) {
+          msg = readPair(reader);
+        } else if (name.equals("pos")) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            positions.add(readFilePosition(reader)); // nested markers are not expected
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      if (msg != null) markers.add(new Marker(msg, positions));
+    }
+    reader.endArray();
+    return markers;
+  }
+
+  @Nullable
+  private static int[] readPair(@NotNull JsonReader reader) throws IOException {
+    int[] pair = new int[2];
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      final int value = reader.nextInt();
+      if (size < 2) pair[size] = value;
+      size++;
+    }
+    reader.endArray();
+    return (size < 2) ? null : pair;
+  }
+
+  @NotNull
+  private List<MyTextRange> toTextRanges(
+      @NotNull List<Position> positions, @NotNull Object file) {
+    final List<MyTextRange> ranges = new ArrayList<>(positions.size());
+    for (Position position : positions) {
+      final MyTextRange range = toTextRange(position, file);
+      if (range != null) ranges.add(range);
+    }
+    return ranges;
+  }
+
+  @Nullable
+  private MyTextRange toTextRange(@NotNull Position position, @NotNull final Object file) {
+    final int[] rows = position.rows;
+    final int[] cols = position.cols;
+    if (rows == null || cols == null) {
+      dcLogger.logWarn(
+          "Incomplete position: rows "
+              + Arrays.toString(rows)
+              + " cols "
+              + Arrays.toString(cols)
+              + "\nin file: "
+              + pdUtils.getDeepCodedFilePath(file));
+      return null;
+    }
+    final int startRow = rows[0];
+    final int endRow = rows[1];
+    final int startCol = cols[0] - 1; // inclusive
+    final int endCol = cols[1];
+
+    if (startRow <= 0 || endRow <= 0 || startCol < 0 || endCol < 0) {
+      dcLogger.logWarn(
+          "Incorrect position: rows "
+              + Arrays.toString(rows)
+              + " cols "
+              + Arrays.toString(cols)
+              + "\nin file: "
+              + pdUtils.getDeepCodedFilePath(file));
+      return null;
+    }
+
+    final Map<MyTextRange, List<MyTextRange>> markers =
+        new LinkedHashMap<>(); // order should be preserved
+    for (Marker marker : position.markers) {
+      markers.put(
+          new MyTextRange(marker.msg[0], marker.msg[1] + 1), toTextRanges(marker.positions, file));
+    }
+
+    final int mLineStartOffset = pdUtils.getLineStartOffset(file, startRow - 1); // to 0-based
+    final int mLineEndOffset = pdUtils.getLineStartOffset(file, endRow - 1);
+
+    return new MyTextRange(
+        mLineStartOffset + startCol,
+        mLineEndOffset + endCol,
+        startRow,
+        endRow,
+        startCol,
+        endCol,
+        markers.isEmpty() ? Collections.emptyMap() : markers);
+  }
+
+  /** Decoded analysisResults, positions are kept per deepCoded file path. */
+  static final class Results {
+    //                path      suggestionIndex  positions
+    private final Map<String, Map<String, List<Position>>> files = new HashMap<>();
+    private final Set<String> referencedIndexes = new HashSet<>();
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+
+    private Results() {}
+  }
+
+  /** File position as sent by the server: 1-based rows and cols. */
+  private static final class Position {
+    @Nullable private final int[] rows;
+    @Nullable private final int[] cols;
+    private final List<Marker> markers;
+
+    private Position(@Nullable int[] rows, @Nullable int[] cols, @NotNull List<Marker> markers) {
+      this.rows = rows;
+      this.cols = cols;
+      this.markers = markers;
+    }
+  }
+
+  private static final class Marker {
+    private final int[] msg;
+    private final List<Position> positions;
+
+    private Marker(@NotNull int[] msg, @NotNull List<Position> positions) {
+      this.msg = msg;
+      this.positions = positions;
+    }
+  }
+}
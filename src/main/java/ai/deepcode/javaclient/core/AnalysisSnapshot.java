@@ -0,0 +1,89 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable analysis results of a project. Every change of results publishes a new snapshot with a
+ * bigger generation, so readers never see a partially applied update and could skip re-rendering
+ * if generation they've already shown is not changed.
+ */
+public final class AnalysisSnapshot {
+
+  // shared by all projects, so a project removed and analysed again never repeats a generation
+  private static final AtomicLong lastGeneration = new AtomicLong();
+
+  static final AnalysisSnapshot EMPTY = new AnalysisSnapshot(0, Collections.emptyMap());
+
+  private final long generation;
+  private final Map<Object, List<SuggestionForFile>> file2Suggestions;
+  private final Set<Object> filesWithSuggestions;
+
+  private AnalysisSnapshot(
+      long generation, @NotNull Map<Object, List<SuggestionForFile>> file2Suggestions) {
+    this.generation = generation;
+    this.file2Suggestions = Collections.unmodifiableMap(file2Suggestions);
+    final Set<Object> withSuggestions = new HashSet<>();
+    file2Suggestions.forEach(
+        (file, suggestions) -> {
+          if (!suggestions.isEmpty()) withSuggestions.add(file);
+        });
+    this.filesWithSuggestions = Collections.unmodifiableSet(withSuggestions);
+  }
+
+  /** @return generation of results, <b>0</b> for a project without results */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /** @return <b>null</b> if file is not analysed */
+  @Nullable
+  public List<SuggestionForFile> getSuggestions(@NotNull Object file) {
+    return file2Suggestions.get(file);
+  }
+
+  public boolean contains(@NotNull Object file) {
+    return file2Suggestions.containsKey(file);
+  }
+
+  /** @return all analysed files */
+  @NotNull
+  public Set<Object> getFiles() {
+    return file2Suggestions.keySet();
+  }
+
+  @NotNull
+  public Set<Object> getFilesWithSuggestions() {
+    return filesWithSuggestions;
+  }
+
+  public int size() {
+    return file2Suggestions.size();
+  }
+
+  /** @return copy with {@code file2Suggestions} added or replaced, or this if nothing to add */
+  @NotNull
+  AnalysisSnapshot withSuggestions(@NotNull Map<Object, List<SuggestionForFile>> file2Suggestions) {
+    if (file2Suggestions.isEmpty()) return this;
+    final Map<Object, List<SuggestionForFile>> copy = new HashMap<>(this.file2Suggestions);
+    copy.putAll(file2Suggestions);
+    return new AnalysisSnapshot(lastGeneration.incrementAndGet(), copy);
+  }
+
+  /** @return copy without {@code files}, or this if none of them is analysed */
+  @NotNull
+  AnalysisSnapshot withoutFiles(@NotNull Collection<Object> files) {
+    if (files.stream().noneMatch(file2Suggestions::containsKey)) return this;
+    final Map<Object, List<SuggestionForFile>> copy = new HashMap<>(file2Suggestions);
+    copy.keySet().removeAll(files);
+    return new AnalysisSnapshot(lastGeneration.incrementAndGet(), copy);
+  }
+
+  @Override
+  public String toString() {
+    return "AnalysisSnapshot{generation=" + generation + ", files=" + size() + "}";
+  }
+}
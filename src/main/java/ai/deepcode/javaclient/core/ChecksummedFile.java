@@ -0,0 +1,94 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file with magic, version and CRC32 trailer. File is replaced atomically with a fully
+ * written and synced temporary file, so a crash leaves either the old or the new content.
+ */
+final class ChecksummedFile {
+
+  interface ContentWriter {
+    void write(@NotNull DataOutputStream out) throws IOException;
+  }
+
+  interface ContentReader<T> {
+    @NotNull
+    T read(@NotNull DataInputStream in) throws IOException;
+  }
+
+  private ChecksummedFile() {}
+
+  /**
+   * @return <b>null</b> if file doesn't exist or has other magic or version
+   * @throws IOException if file is truncated or checksum doesn't match
+   */
+  @Nullable
+  static <T> T read(
+      @NotNull Path file, int magic, int version, @NotNull ContentReader<T> reader)
+      throws IOException {
+    if (!Files.exists(file)) return null;
+    final CRC32 crc = new CRC32();
+    try (DataInputStream in =
+        new DataInputStream(
+            new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), crc))) {
+      if (in.readInt() != magic || in.readInt() != version) return null;
+      final T result = reader.read(in);
+      final long expectedCrc = crc.getValue();
+      if (in.readLong() != expectedCrc) throw new IOException("Broken file: " + file);
+      return result;
+    } catch (EOFException e) {
+      throw new IOException("Truncated file: " + file, e);
+    }
+  }
+
+  static void write(@NotNull Path file, int magic, int version, @NotNull ContentWriter writer)
+      throws IOException {
+    final Path tempFile =
+        Files.createTempFile(
+            file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out =
+            new DataOutputStream(
+                new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)), crc));
+        out.writeInt(magic);
+        out.writeInt(version);
+        writer.write(out);
+        out.writeLong(crc.getValue());
+        out.flush();
+        channel.force(true);
+      }
+      Files.move(
+          tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  @NotNull
+  static byte[] fromHex(@NotNull String hex) {
+    final byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] =
+          (byte)
+              ((Character.digit(hex.charAt(i * 2), 16) << 4)
+                  | Character.digit(hex.charAt(i * 2 + 1), 16));
+    }
+    return bytes;
+  }
+}
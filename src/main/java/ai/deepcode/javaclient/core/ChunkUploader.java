@@ -0,0 +1,236 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.requests.FileHash2ContentRequestBody;
+import ai.deepcode.javaclient.responses.EmptyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads file chunks concurrently with at most {@code window} requests in flight.
+ * Chunk content is read and serialised by the network thread of its request, so it overlaps with
+ * sending of other chunks. Failed chunk is retried by {@link ai.deepcode.javaclient.RetryPolicy}
+ * of the client, with backoff and for retryable statuses only.
+ *
+ * <p>{@link #submit} and {@link #awaitAll} block the calling thread and check {@code progress}
+ * for cancellation while waiting; progress reports files uploaded by all chunks.
+ *
+ * <p>Content of the chunk is taken by {@link #submit} together with hashes when the chunk gets a
+ * slot and kept only till the chunk is uploaded: off-heap stored or cached content as hashed,
+ * otherwise content read anew (always in hash-only mode). Files changed since hashing are not
+ * uploaded, see {@link #getChangedFiles()}.
+ */
+final class ChunkUploader {
+
+  private final String token;
+  private final int window;
+  private final long maxChunkSize;
+  private final HashContentUtilsBase hashContentUtils;
+  private final PlatformDependentUtilsBase pdUtils;
+  private final DCLoggerBase dcLogger;
+  private final Object progress;
+  private final String progressText;
+  private final int expectedFiles;
+
+  private final Semaphore inFlight;
+  private final AtomicInteger submittedFiles = new AtomicInteger();
+  private final ConcurrentLinkedQueue<Object> uploadedFiles = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Object> changedFiles = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<EmptyResponse> failedResponses =
+      new ConcurrentLinkedQueue<>();
+
+  ChunkUploader(
+      @NotNull String token,
+      int window,
+      long maxChunkSize,
+      @NotNull HashContentUtilsBase hashContentUtils,
+      @NotNull PlatformDependentUtilsBase pdUtils,
+      @NotNull DCLoggerBase dcLogger,
+      @NotNull Object progress,
+      @NotNull String progressText,
+      int expectedFiles) {
+    this.token = token;
+    this.window = Math.max(1, window);
+    this.maxChunkSize = maxChunkSize;
+    this.hashContentUtils = hashContentUtils;
+    this.pdUtils = pdUtils;
+    this.dcLogger = dcLogger;
+    this.progress = progress;
+    this.progressText = progressText;
+    this.expectedFiles = expectedFiles;
+    this.inFlight = new Semaphore(this.window);
+  }
+
+  /**
+   * Split files into chunks of at most {@code maxChunkSize} bytes and start upload of every chunk
+   * as soon as there is a free slot in the window. Files content is stored by hash, so chunks could
+   * be uploaded to different bundles of the same files.
+   */
+  void submit(@NotNull String bundleId, @NotNull Collection<Object> files) {
+    List<Object> chunk = new ArrayList<>();
+    long chunkSize = 0;
+    for (Object file : files) {
+      final long fileSize = pdUtils.getFileSize(file);
+      if (!chunk.isEmpty() && chunkSize + fileSize > maxChunkSize) {
+        submitChunk(bundleId, chunk, chunkSize);
+        chunk = new ArrayList<>();
+        chunkSize = 0;
+      }
+      chunkSize += fileSize;
+      chunk.add(file);
+    }
+    if (!chunk.isEmpty()) submitChunk(bundleId, chunk, chunkSize);
+  }
+
+  private void submitChunk(@NotNull String bundleId, @NotNull List<Object> chunk, long chunkSize) {
+    submittedFiles.addAndGet(chunk.size());
+    if (!acquire(1)) return;
+    boolean sent = false;
+    try {
+      // taken once for all attempts, so evicted from cache or changed meanwhile files are not
+      // re-read and hashes always match uploaded content
+      final Map<Object, FileUpload> uploads = readContents(chunk);
+      chunk = new ArrayList<>(uploads.keySet());
+      if (chunk.isEmpty()) return;
+      dcLogger.logInfo("Uploading " + chunk.size() + " files, chunk size: " + chunkSize);
+      send(bundleId, chunk, uploads);
+      sent = true;
+    } finally {
+      // otherwise the slot is released when the request completes
+      if (!sent) inFlight.release();
+    }
+  }
+
+  /** @return hash and content of not changed files */
+  @NotNull
+  private Map<Object, FileUpload> readContents(@NotNull List<Object> chunk) {
+    final Map<Object, FileUpload> uploads = new LinkedHashMap<>();
+    int changed = 0;
+    for (Object file : chunk) {
+      final OffHeapContentStore.StoredContent stored = hashContentUtils.getStoredContent(file);
+      if (stored != null) {
+        uploads.put(file, new FileUpload(stored.getHash(), null, stored));
+        continue;
+      }
+      final String hash = hashContentUtils.getHash(file);
+      final String content = hashContentUtils.getContentForUpload(file);
+      if (content != null) {
+        uploads.put(file, new FileUpload(hash, content, null));
+      } else {
+        changedFiles.add(file);
+        changed++;
+      }
+    }
+    if (changed > 0) {
+      submittedFiles.addAndGet(-changed);
+      dcLogger.logWarn(changed + " files changed since hashing, not uploaded");
+    }
+    return uploads;
+  }
+
+  /** @return responses of chunks failed after all attempts */
+  @NotNull
+  List<EmptyResponse> awaitAll() {
+    if (acquire(window)) inFlight.release(window);
+    return new ArrayList<>(failedResponses);
+  }
+
+  /** @return files of successfully uploaded chunks */
+  @NotNull
+  List<Object> getUploadedFiles() {
+    return new ArrayList<>(uploadedFiles);
+  }
+
+  /** @return files not uploaded in hash-only mode as changed since hashing */
+  @NotNull
+  List<Object> getChangedFiles() {
+    return new ArrayList<>(changedFiles);
+  }
+
+  private void send(
+      @NotNull String bundleId,
+      @NotNull List<Object> chunk,
+      @NotNull Map<Object, FileUpload> uploads) {
+    final FileHash2ContentRequestBody<Object> hash2ContentBody =
+        new FileHash2ContentRequestBody<>(
+            chunk, file -> uploads.get(file).hash, file -> uploads.get(file).openReader());
+    DeepCodeRestApi.UploadFilesAsync(token, bundleId, hash2ContentBody)
+        .whenComplete(
+            (response, throwable) -> {
+              try {
+                if (throwable != null) {
+                  failedResponses.add(errorResponse(throwable));
+                } else if (response.getStatusCode() == 200) {
+                  uploadedFiles.addAll(chunk);
+                  chunk.forEach(hashContentUtils::releaseFileContent);
+                } else {
+                  failedResponses.add(response);
+                }
+              } catch (RuntimeException e) {
+                failedResponses.add(errorResponse(e));
+              } finally {
+                inFlight.release();
+              }
+            });
+  }
+
+  /** status 0 as for network errors */
+  @NotNull
+  private static EmptyResponse errorResponse(@NotNull Throwable throwable) {
+    final EmptyResponse errorResponse = new EmptyResponse();
+    errorResponse.setStatusDescription(throwable.toString());
+    return errorResponse;
+  }
+
+  /** Hash and content of the file taken together, off-heap stored content is streamed. */
+  private static final class FileUpload {
+    private final String hash;
+    @Nullable private final String content;
+    @Nullable private final OffHeapContentStore.StoredContent stored;
+
+    private FileUpload(
+        @NotNull String hash,
+        @Nullable String content,
+        @Nullable OffHeapContentStore.StoredContent stored) {
+      this.hash = hash;
+      this.content = content;
+      this.stored = stored;
+    }
+
+    @NotNull
+    private Reader openReader() {
+      return (stored != null) ? stored.openReader() : new StringReader(content);
+    }
+  }
+
+  /** @return false if interrupted */
+  private boolean acquire(int permits) {
+    while (true) {
+      try {
+        if (inFlight.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) break;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      updateProgress();
+      pdUtils.progressCheckCanceled(progress);
+    }
+    updateProgress();
+    return true;
+  }
+
+  private void updateProgress() {
+    final int done = uploadedFiles.size();
+    final int totalFiles = Math.max(expectedFiles, submittedFiles.get());
+    pdUtils.progressSetFraction(progress, ((double) done) / Math.max(1, totalFiles));
+    pdUtils.progressSetText(progress, progressText + done + " of " + totalFiles + " files done.");
+  }
+}
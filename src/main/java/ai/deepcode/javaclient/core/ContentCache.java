@@ -0,0 +1,180 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Files content bounded by total weight (approximate bytes), least recently used content is
+ * evicted first. Content is needed only till the file is uploaded, so it's released by {@link
+ * AnalysisDataBase} as soon as server has it. Files are also indexed by project, so content of a
+ * closed project is released without scanning content of other projects.
+ */
+public final class ContentCache {
+
+  private static final long DEFAULT_MAX_WEIGHT =
+      Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+  private static final class Entry {
+    private final Object project;
+    private final String content;
+
+    private Entry(@NotNull Object project, @NotNull String content) {
+      this.project = project;
+      this.content = content;
+    }
+  }
+
+  private final LinkedHashMap<Object, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Object, Set<Object>> project2Files = new HashMap<>();
+  // files being loaded, removal drops the token, so content loaded before removal is not cached
+  private final Map<Object, Entry> loading = new HashMap<>();
+  private long maxWeight = DEFAULT_MAX_WEIGHT;
+  private long weight = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  ContentCache() {}
+
+  /**
+   * Cached content or content from {@code loader}, which is called outside of the cache lock. Too
+   * large content is returned but not cached, as well as content of the file removed while loading.
+   */
+  @NotNull
+  String get(
+      @NotNull Object project, @NotNull Object file, @NotNull Function<Object, String> loader) {
+    final Entry token = new Entry(project, "");
+    synchronized (this) {
+      final Entry cached = map.get(file);
+      if (cached != null) {
+        hits++;
+        return cached.content;
+      }
+      misses++;
+      loading.put(file, token);
+    }
+    String content = null;
+    try {
+      content = loader.apply(file);
+      return content;
+    } finally {
+      synchronized (this) {
+        // not cached if removed or loaded by another call meanwhile, or if loading failed
+        if (loading.remove(file, token) && content != null) put(project, file, content);
+      }
+    }
+  }
+
+  private void put(@NotNull Object project, @NotNull Object file, @NotNull String content) {
+    if (weight(content) > maxWeight) return;
+    final Entry old = map.put(file, new Entry(project, content));
+    if (old != null) unlink(file, old);
+    project2Files.computeIfAbsent(project, p -> new HashSet<>()).add(file);
+    weight += weight(content);
+    evict();
+  }
+
+  /** @return cached content without loading it, not counted in stats */
+  @Nullable
+  synchronized String peek(@NotNull Object file) {
+    final Entry entry = map.get(file);
+    return (entry == null) ? null : entry.content;
+  }
+
+  synchronized void remove(@NotNull Object file) {
+    loading.remove(file);
+    final Entry old = map.remove(file);
+    if (old != null) unlink(file, old);
+  }
+
+  synchronized void removeProject(@NotNull Object project) {
+    loading.values().removeIf(token -> token.project.equals(project));
+    final Set<Object> files = project2Files.remove(project);
+    if (files == null) return;
+    for (Object file : files) {
+      final Entry old = map.remove(file);
+      if (old != null) weight -= weight(old.content);
+    }
+  }
+
+  synchronized void clear() {
+    loading.clear();
+    map.clear();
+    project2Files.clear();
+    weight = 0;
+  }
+
+  private void unlink(@NotNull Object file, @NotNull Entry entry) {
+    weight -= weight(entry.content);
+    final Set<Object> files = project2Files.get(entry.project);
+    if (files != null && files.remove(file) && files.isEmpty()) project2Files.remove(entry.project);
+  }
+
+  private void evict() {
+    final Iterator<Map.Entry<Object, Entry>> iterator = map.entrySet().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      final Map.Entry<Object, Entry> eldest = iterator.next();
+      iterator.remove();
+      unlink(eldest.getKey(), eldest.getValue());
+      evictions++;
+    }
+  }
+
+  // upper bound of String size, without object headers
+  private static long weight(@NotNull String content) {
+    return 2L * content.length();
+  }
+
+  /** @return max total weight of cached content in bytes */
+  public synchronized long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /** Set max total weight of cached content in bytes, evicting content above it. */
+  public synchronized void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+    evict();
+  }
+
+  /** @return total weight of cached content in bytes */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public synchronized int getSize() {
+    return map.size();
+  }
+
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** @return number of content reads with {@link HashContentUtilsBase#doGetFileContent} */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** @return number of content evicted to keep the max weight, explicit removals not counted */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Content cache: "
+        + map.size()
+        + " files, "
+        + weight
+        + " of "
+        + maxWeight
+        + " bytes, hits: "
+        + hits
+        + ", misses: "
+        + misses
+        + ", evictions: "
+        + evictions;
+  }
+}
@@ -3,9 +3,7 @@ package ai.deepcode.javaclient.core;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class DeepCodeIgnoreInfoHolderBase {
 
@@ -16,18 +14,19 @@ public abstract class DeepCodeIgnoreInfoHolderBase {
     this.hashContentUtils = hashContentUtils;
   }
 
-  private static final Map<Object, Set<String>> map_dcignore2Regexps = new ConcurrentHashMap<>();
-  private static final Map<Object, Set<String>> map_gitignore2Regexps = new ConcurrentHashMap<>();
+  // only ignore files of the file's project are checked
+  private static final ProjectFileMap<Set<String>> map_dcignore2Regexps = new ProjectFileMap<>();
+  private static final ProjectFileMap<Set<String>> map_gitignore2Regexps = new ProjectFileMap<>();
 
   public boolean isDcIgnoredFile(@NotNull Object file) {
-    return map_dcignore2Regexps.entrySet().stream()
+    return map_dcignore2Regexps.getFiles(getProjectOfFile(file)).entrySet().stream()
         .filter(e -> inScope(e.getKey(), file))
         .flatMap(e -> e.getValue().stream())
         .anyMatch(getFilePath(file)::matches);
   }
 
   public boolean isGitIgnoredFile(@NotNull Object file) {
-    return map_gitignore2Regexps.entrySet().stream()
+    return map_gitignore2Regexps.getFiles(getProjectOfFile(file)).entrySet().stream()
         .filter(e -> inScope(e.getKey(), file))
         .flatMap(e -> e.getValue().stream())
         .anyMatch(getFilePath(file)::matches);
@@ -54,30 +53,26 @@ public abstract class DeepCodeIgnoreInfoHolderBase {
   }
 
   public void remove_dcignoreFileContent(@NotNull Object file) {
-    map_dcignore2Regexps.remove(file);
+    map_dcignore2Regexps.remove(getProjectOfFile(file), file);
   }
 
   public void remove_gitignoreFileContent(@NotNull Object file) {
-    map_gitignore2Regexps.remove(file);
+    map_gitignore2Regexps.remove(getProjectOfFile(file), file);
   }
 
   public void removeProject(@NotNull Object project) {
-    map_dcignore2Regexps.forEach((file, _set) -> {
-      if (getProjectOfFile(file).equals(project)) map_dcignore2Regexps.remove(file);
-    });
-    map_gitignore2Regexps.forEach((file, _set) -> {
-      if (getProjectOfFile(file).equals(project)) map_gitignore2Regexps.remove(file);
-    });
+    map_dcignore2Regexps.removeProject(project);
+    map_gitignore2Regexps.removeProject(project);
   }
 
   protected abstract Object getProjectOfFile(@NotNull Object file);
 
   public void update_dcignoreFileContent(@NotNull Object file) {
-    map_dcignore2Regexps.put(file, parse_ignoreFile2Regexps(file));
+    map_dcignore2Regexps.put(getProjectOfFile(file), file, parse_ignoreFile2Regexps(file));
   }
 
   public void update_gitignoreFileContent(@NotNull Object file) {
-    map_gitignore2Regexps.put(file, parse_ignoreFile2Regexps(file));
+    map_gitignore2Regexps.put(getProjectOfFile(file), file, parse_ignoreFile2Regexps(file));
   }
 
   protected abstract String getDirPath(@NotNull Object file);
@@ -15,6 +15,9 @@ public abstract class DeepCodeParamsBase {
   // Inner params
   private String loginUrl;
   private String ideProductName;
+  private int analysisTimeout = 100; // seconds
+  private int uploadParallelism = 4;
+  private int hashingParallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
 
   protected DeepCodeParamsBase(
       boolean isEnable,
@@ -93,6 +96,36 @@ public abstract class DeepCodeParamsBase {
     this.isEnable = isEnable;
   }
 
+  /** Max time to wait for analysis results of one bundle, in seconds. */
+  public int getAnalysisTimeout() {
+    return analysisTimeout;
+  }
+
+  public void setAnalysisTimeout(int analysisTimeout) {
+    this.analysisTimeout = analysisTimeout;
+  }
+
+  /**
+   * Max number of file chunks being uploaded concurrently. Requests above client's
+   * maxRequestsPerHost are queued by the client anyway.
+   */
+  public int getUploadParallelism() {
+    return uploadParallelism;
+  }
+
+  public void setUploadParallelism(int uploadParallelism) {
+    this.uploadParallelism = uploadParallelism;
+  }
+
+  /** Number of threads reading files content and number of threads hashing it. */
+  public int getHashingParallelism() {
+    return hashingParallelism;
+  }
+
+  public void setHashingParallelism(int hashingParallelism) {
+    this.hashingParallelism = hashingParallelism;
+  }
+
   public abstract boolean consentGiven(@NotNull Object project);
 
   public abstract void setConsentGiven(@NotNull Object project);
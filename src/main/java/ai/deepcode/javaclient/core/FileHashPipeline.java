@@ -0,0 +1,284 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * First stages of bundle creation: files content is read by {@code parallelism} reader threads and
+ * hashed by {@code parallelism} hashing threads, results are taken by the calling thread with
+ * {@link #next()}. Stages are connected by bounded queues, so readers wait when hashing or
+ * consuming can't keep up. Files not changed since they were put in persistent hash index are not
+ * read, their hashes are taken from the index. In hash-only mode content is not cached, so it's
+ * read by hashing threads and dropped right after hashing. Files hashed earlier in the same update
+ * are passed on as {@code hashed} and not read again while their cached hash is the same.
+ *
+ * <pre>{@code
+ * try (FileHashPipeline pipeline = new FileHashPipeline(...)) {
+ *   for (HashedFile hashed = pipeline.next(); hashed != null; hashed = pipeline.next()) { ... }
+ * }
+ * }</pre>
+ */
+final class FileHashPipeline implements AutoCloseable {
+
+  static final int QUEUE_CAPACITY = 256;
+
+  private static final ExecutorService workers =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "DeepCode file hashing");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private static final Object END = new Object();
+
+  private static final class ReadFile {
+    private final Object file;
+    @Nullable private final PersistentHashIndex.Stamp stamp;
+
+    private ReadFile(@NotNull Object file, @Nullable PersistentHashIndex.Stamp stamp) {
+      this.file = file;
+      this.stamp = stamp;
+    }
+  }
+
+  static final class HashedFile {
+    final Object file;
+    final String path;
+    final String hash;
+
+    private HashedFile(@NotNull Object file, @NotNull String path, @NotNull String hash) {
+      this.file = file;
+      this.path = path;
+      this.hash = hash;
+    }
+  }
+
+  private final Iterator<Object> input;
+  private final Iterator<HashedFile> prehashed;
+  private final int prehashedFiles;
+  private final int parallelism;
+  private final HashContentUtilsBase hashContentUtils;
+  private final PlatformDependentUtilsBase pdUtils;
+  private final Object progress;
+
+  private final BlockingQueue<Object> readFiles = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final BlockingQueue<Object> hashedFiles = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final AtomicInteger activeReaders = new AtomicInteger();
+  private final AtomicInteger activeHashers = new AtomicInteger();
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+  private volatile boolean closed = false;
+  private boolean finished = false;
+
+  private final long startNanos = System.nanoTime();
+  private final Stage readStage = new Stage("read");
+  private final Stage hashStage = new Stage("hash");
+  private final LongAdder indexedFiles = new LongAdder();
+
+  FileHashPipeline(
+      @NotNull Collection<Object> files,
+      int parallelism,
+      @NotNull HashContentUtilsBase hashContentUtils,
+      @NotNull PlatformDependentUtilsBase pdUtils,
+      @NotNull Object progress) {
+    this(files, Collections.emptyMap(), parallelism, hashContentUtils, pdUtils, progress);
+  }
+
+  FileHashPipeline(
+      @NotNull Collection<Object> files,
+      @NotNull Map<Object, HashedFile> hashed,
+      int parallelism,
+      @NotNull HashContentUtilsBase hashContentUtils,
+      @NotNull PlatformDependentUtilsBase pdUtils,
+      @NotNull Object progress) {
+    final List<Object> toRead = new ArrayList<>();
+    final List<HashedFile> unchanged = new ArrayList<>();
+    for (Object file : files) {
+      final HashedFile hashedFile = hashed.get(file);
+      // file changed since then, if its hash was dropped from cache
+      if (hashedFile != null && hashedFile.hash.equals(hashContentUtils.getCachedHash(file))) {
+        unchanged.add(hashedFile);
+      } else {
+        toRead.add(file);
+      }
+    }
+    this.input = toRead.iterator();
+    this.prehashed = unchanged.iterator();
+    this.prehashedFiles = unchanged.size();
+    this.parallelism = Math.max(1, parallelism);
+    this.hashContentUtils = hashContentUtils;
+    this.pdUtils = pdUtils;
+    this.progress = progress;
+    activeReaders.set(this.parallelism);
+    activeHashers.set(this.parallelism);
+    for (int i = 0; i < this.parallelism; i++) {
+      workers.execute(this::read);
+      workers.execute(this::hash);
+    }
+  }
+
+  /**
+   * Blocks till next file is hashed, checking {@code progress} for cancellation.
+   *
+   * @return <b>null</b> when all files are done
+   */
+  @Nullable
+  HashedFile next() {
+    if (prehashed.hasNext()) return prehashed.next();
+    while (!finished) {
+      final Object item;
+      try {
+        item = hashedFiles.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        return null;
+      }
+      final RuntimeException workerFailure = failure.get();
+      if (workerFailure != null) throw workerFailure;
+      if (item == null) {
+        pdUtils.progressCheckCanceled(progress);
+      } else if (item == END) {
+        finished = true;
+      } else {
+        return (HashedFile) item;
+      }
+    }
+    return null;
+  }
+
+  /** Stops workers, not yet processed files are dropped. */
+  @Override
+  public void close() {
+    closed = true;
+    readFiles.clear();
+    hashedFiles.clear();
+  }
+
+  /** @return throughput of every stage */
+  @NotNull
+  String getStats() {
+    final long wallNanos = System.nanoTime() - startNanos;
+    return "Hashing pipeline (x"
+        + parallelism
+        + "): "
+        + readStage.toString(wallNanos)
+        + ", "
+        + hashStage.toString(wallNanos)
+        + ", unchanged by index "
+        + indexedFiles.sum()
+        + " files, hashed before "
+        + prehashedFiles
+        + " files";
+  }
+
+  private void read() {
+    try {
+      Object file;
+      while ((file = nextInput()) != null) {
+        final long start = System.nanoTime();
+        // stamp first, so content changed while reading will not match it next time
+        final PersistentHashIndex.Stamp stamp = hashContentUtils.getFileStamp(file);
+        // content could be changed since last time, so both hash and content are re-read
+        hashContentUtils.removeFileHashContent(file);
+        if (stamp != null && hashContentUtils.restoreIndexedHash(file, stamp)) {
+          indexedFiles.increment();
+        } else if (!hashContentUtils.isHashOnlyMode()) {
+          hashContentUtils.getFileContent(file);
+        }
+        readStage.record(start);
+        if (!put(readFiles, new ReadFile(file, stamp))) return;
+      }
+    } catch (RuntimeException e) {
+      fail(e);
+    } finally {
+      if (activeReaders.decrementAndGet() == 0) {
+        for (int i = 0; i < parallelism; i++) {
+          if (!put(readFiles, END)) break;
+        }
+      }
+    }
+  }
+
+  private void hash() {
+    try {
+      while (!closed) {
+        final Object item = readFiles.poll(100, TimeUnit.MILLISECONDS);
+        if (item == null) continue;
+        if (item == END) break;
+        final ReadFile read = (ReadFile) item;
+        final long start = System.nanoTime();
+        final String path = pdUtils.getDeepCodedFilePath(read.file);
+        final String hash = hashContentUtils.getHash(read.file);
+        if (read.stamp != null) hashContentUtils.indexHash(read.file, read.stamp, hash);
+        hashContentUtils.offloadFileContent(read.file, hash);
+        hashStage.record(start);
+        if (!put(hashedFiles, new HashedFile(read.file, path, hash))) return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      fail(e);
+    } finally {
+      if (activeHashers.decrementAndGet() == 0) put(hashedFiles, END);
+    }
+  }
+
+  @Nullable
+  private Object nextInput() {
+    synchronized (input) {
+      return (!closed && input.hasNext()) ? input.next() : null;
+    }
+  }
+
+  /** @return false if pipeline is closed */
+  private boolean put(@NotNull BlockingQueue<Object> queue, @NotNull Object item) {
+    try {
+      while (!closed) {
+        if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  private void fail(@NotNull RuntimeException e) {
+    failure.compareAndSet(null, e);
+    close();
+  }
+
+  private static final class Stage {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    private Stage(@NotNull String name) {
+      this.name = name;
+    }
+
+    private void record(long startNanos) {
+      busyNanos.add(System.nanoTime() - startNanos);
+      count.increment();
+    }
+
+    @NotNull
+    private String toString(long wallNanos) {
+      final long files = count.sum();
+      return name
+          + " "
+          + files
+          + " files, "
+          + (long) (files / Math.max(1e-9, wallNanos / 1e9))
+          + " files/s, busy "
+          + TimeUnit.NANOSECONDS.toMillis(busyNanos.sum())
+          + "ms";
+    }
+  }
+}
@@ -1,11 +1,14 @@
 package ai.deepcode.javaclient.core;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class HashContentUtilsBase {
@@ -16,29 +19,133 @@ public abstract class HashContentUtilsBase {
     this.platformDependentUtils = platformDependentUtils;
   };
   
-  private static final Map<Object, String> mapFile2Hash = new ConcurrentHashMap<>();
-  private static final Map<Object, String> mapFile2Content = new ConcurrentHashMap<>();
+  private static final ProjectFileMap<String> mapFile2Hash = new ProjectFileMap<>();
+  private static final ContentCache contentCache = new ContentCache();
+  private static final OffHeapContentStore contentStore = new OffHeapContentStore();
+  private static volatile boolean hashOnlyMode = false;
+  private static final Map<Object, Optional<PersistentHashIndex>> mapProject2HashIndex =
+      new ConcurrentHashMap<>();
 
   public void removeFileHashContent(@NotNull Object file) {
-    mapFile2Hash.remove(file);
-    mapFile2Content.remove(file);
+    final Object project = platformDependentUtils.getProject(file);
+    mapFile2Hash.remove(project, file);
+    contentCache.remove(file);
+    contentStore.remove(project, file);
   }
 
-  void removeProjectHashContent(@NotNull Object project) {
-    mapFile2Hash.keySet().removeIf(f -> platformDependentUtils.getProject(f) == project);
-    mapFile2Content.keySet().removeIf(f -> platformDependentUtils.getProject(f) == project);
-  }
-
-  // ?? com.intellij.openapi.util.text.StringUtil.toHexString
-  // https://www.baeldung.com/sha-256-hashing-java#message-digest
-  private static String bytesToHex(byte[] hash) {
-    StringBuilder hexString = new StringBuilder();
-    for (byte b : hash) {
-      String hex = Integer.toHexString(0xff & b);
-      if (hex.length() == 1) hexString.append('0');
-      hexString.append(hex);
+  /** Drop cached content but keep the hash, e.g. when the file is already uploaded. */
+  void releaseFileContent(@NotNull Object file) {
+    contentCache.remove(file);
+    contentStore.remove(platformDependentUtils.getProject(file), file);
+  }
+
+  @NotNull
+  public ContentCache getContentCache() {
+    return contentCache;
+  }
+
+  /**
+   * In hash-only mode file content is never cached: it's read for hashing and discarded, and read
+   * again only for files requested by the server, with hash re-verified. Memory doesn't depend on
+   * project size then, at the cost of second read of uploaded files.
+   */
+  public void setHashOnlyMode(boolean hashOnlyMode) {
+    HashContentUtilsBase.hashOnlyMode = hashOnlyMode;
+    if (hashOnlyMode) contentCache.clear();
+  }
+
+  public boolean isHashOnlyMode() {
+    return hashOnlyMode;
+  }
+
+  /** Off-heap storage for content of hashed files waiting for upload, disabled by default. */
+  @NotNull
+  public OffHeapContentStore getOffHeapContentStore() {
+    return contentStore;
+  }
+
+  /**
+   * Move cached content of the hashed file to off-heap store, if it's enabled and has room. Stored
+   * content is exactly the hashed one, even if the file is changed meanwhile.
+   */
+  void offloadFileContent(@NotNull Object file, @NotNull String hash) {
+    if (!contentStore.isEnabled()) return;
+    final String content = contentCache.peek(file);
+    if (content != null
+        && contentStore.put(platformDependentUtils.getProject(file), file, hash, content)) {
+      contentCache.remove(file);
     }
-    return hexString.toString();
+  }
+
+  void removeProjectHashContent(@NotNull Object project) {
+    mapFile2Hash.removeProject(project);
+    contentCache.removeProject(project);
+    contentStore.removeProject(project);
+    mapProject2HashIndex.remove(project);
+  }
+
+  /**
+   * File to keep hashes of project files between restarts in, e.g. inside IDE system directory.
+   * Persistent hash index is disabled if <b>null</b> (default).
+   */
+  @Nullable
+  protected Path getHashIndexFile(@NotNull Object project) {
+    return null;
+  }
+
+  @Nullable
+  private PersistentHashIndex getHashIndex(@NotNull Object project) {
+    return mapProject2HashIndex
+        .computeIfAbsent(
+            project, p -> Optional.ofNullable(getHashIndexFile(p)).map(PersistentHashIndex::load))
+        .orElse(null);
+  }
+
+  /**
+   * Should be taken before file content is read.
+   *
+   * @return size and modification time of the file or <b>null</b> if persistent hash index is not
+   *     used for the file
+   */
+  @Nullable
+  PersistentHashIndex.Stamp getFileStamp(@NotNull Object file) {
+    if (getHashIndex(platformDependentUtils.getProject(file)) == null) return null;
+    final long modificationTime = platformDependentUtils.getFileModificationTime(file);
+    if (modificationTime < 0) return null;
+    return new PersistentHashIndex.Stamp(
+        platformDependentUtils.getFileSize(file), modificationTime);
+  }
+
+  /**
+   * Cache hash from persistent index if file is not changed since it was indexed, content is not
+   * read then.
+   *
+   * @return false if file should be hashed
+   */
+  boolean restoreIndexedHash(@NotNull Object file, @NotNull PersistentHashIndex.Stamp stamp) {
+    final Object project = platformDependentUtils.getProject(file);
+    final PersistentHashIndex index = getHashIndex(project);
+    if (index == null) return false;
+    final String hash = index.get(platformDependentUtils.getDeepCodedFilePath(file), stamp);
+    if (hash == null) return false;
+    mapFile2Hash.put(project, file, hash);
+    return true;
+  }
+
+  void indexHash(
+      @NotNull Object file, @NotNull PersistentHashIndex.Stamp stamp, @NotNull String hash) {
+    final PersistentHashIndex index = getHashIndex(platformDependentUtils.getProject(file));
+    if (index != null) index.put(platformDependentUtils.getDeepCodedFilePath(file), stamp, hash);
+  }
+
+  /** Write changed hashes of project files to persistent index, if it's enabled. */
+  void saveHashIndex(@NotNull Object project) throws IOException {
+    final PersistentHashIndex index = getHashIndex(project);
+    if (index != null) index.save();
+  }
+
+  static String bytesToHex(byte[] hash) {
+    return Sha256.toHex(hash);
   }
 
   /** check if Hash for Object was changed comparing to cached hash */
@@ -46,7 +153,7 @@ public abstract class HashContentUtilsBase {
     // fixme debug only
     // DCLogger.getInstance().info("hash check started");
     String newHash = doGetHash(doGetFileContent(file));
-    String oldHash = mapFile2Hash.put(file, newHash);
+    String oldHash = mapFile2Hash.put(platformDependentUtils.getProject(file), file, newHash);
     // fixme debug only
 /*
     DCLogger.getInstance().info(
@@ -62,35 +169,99 @@ public abstract class HashContentUtilsBase {
   }
 
   String getHash(@NotNull Object file) {
-    return mapFile2Hash.computeIfAbsent(file, this::doGetHash);
+    return mapFile2Hash.computeIfAbsent(
+        platformDependentUtils.getProject(file), file, this::doGetHash);
+  }
+
+  /** @return hash if it's already computed, content is not read */
+  @Nullable
+  String getCachedHash(@NotNull Object file) {
+    return mapFile2Hash.get(platformDependentUtils.getProject(file), file);
   }
 
-  private String doGetHash(@NotNull Object file) {
+  /**
+   * Hash of the file content as it will be uploaded. Could be overridden to hash raw bytes with
+   * {@link #doGetHash(InputStream)} if they are exactly UTF-8 encoding of {@link
+   * #doGetFileContent(Object)}, otherwise server will reject uploaded content as not matching the
+   * hash.
+   */
+  @NotNull
+  protected String doGetHash(@NotNull Object file) {
     return doGetHash(getFileContent(file));
   }
 
-  private String doGetHash(@NotNull String fileText) {
-    MessageDigest messageDigest;
-    try {
-      messageDigest = MessageDigest.getInstance("SHA-256");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    }
-    byte[] encodedHash = messageDigest.digest(fileText.getBytes(StandardCharsets.UTF_8));
-    return bytesToHex(encodedHash);
+  @NotNull
+  static String doGetHash(@NotNull String fileText) {
+    return Sha256.hash(fileText);
+  }
+
+  /** @return SHA-256 hex of all bytes of {@code stream}, stream is not closed */
+  @NotNull
+  protected static String doGetHash(@NotNull InputStream stream) throws IOException {
+    return Sha256.hash(stream);
+  }
+
+  /** @return SHA-256 hex of remaining bytes of {@code bytes} */
+  @NotNull
+  protected static String doGetHash(@NotNull ByteBuffer bytes) {
+    return Sha256.hash(bytes);
   }
 
   /**
-   * Look for cached content first, require manual cache invalidation if file been changed
+   * Look for cached content first, require manual cache invalidation if file been changed. Content
+   * could be evicted from the cache, it's read again with {@link #doGetFileContent} then. Nothing
+   * is cached in {@link #setHashOnlyMode hash-only mode}.
    */
   @NotNull
   public String getFileContent(@NotNull Object file) {
-    // potential OutOfMemoryException for too large projects
-    return mapFile2Content.computeIfAbsent(file, this::doGetFileContent);
+    final Object project = platformDependentUtils.getProject(file);
+    final String stored = contentStore.getContent(project, file);
+    if (stored != null) return stored;
+    if (hashOnlyMode) return doGetFileContent(file);
+    return contentCache.get(project, file, this::doGetFileContent);
+  }
+
+  /**
+   * Read file content anew, for upload in hash-only mode.
+   *
+   * @return <b>null</b> if content doesn't match the hash anymore, i.e. file was changed after
+   *     hashing
+   */
+  @Nullable
+  String readContentForUpload(@NotNull Object file) {
+    final String hash = getHash(file);
+    final String content = doGetFileContent(file);
+    return doGetHash(content).equals(hash) ? content : null;
+  }
+
+  /**
+   * Content to upload for the hashed file: cached content is exactly the hashed one, otherwise it
+   * could have been evicted and the file changed meanwhile, so content is read anew and checked
+   * against the hash. Off-heap stored content is not taken, see {@link #getStoredContent}.
+   *
+   * @return <b>null</b> if content doesn't match the hash anymore
+   */
+  @Nullable
+  String getContentForUpload(@NotNull Object file) {
+    final String cached = contentCache.peek(file);
+    return (cached != null) ? cached : readContentForUpload(file);
+  }
+
+  /**
+   * @return off-heap stored content of the file with its hash or <b>null</b> if content is not
+   *     stored there
+   */
+  @Nullable
+  OffHeapContentStore.StoredContent getStoredContent(@NotNull Object file) {
+    return contentStore.getStoredContent(platformDependentUtils.getProject(file), file);
   }
 
   /**
    * Make direct read of File content. NO cache check.
+   *
+   * <p>Called concurrently from "DeepCode file hashing" pool threads, not from the thread that
+   * requested the update, so implementation should take a read action itself if the platform
+   * requires one for document or file access.
    */
   @NotNull
   public abstract String doGetFileContent(@NotNull Object file);
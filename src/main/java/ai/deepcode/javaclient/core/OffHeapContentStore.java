@@ -0,0 +1,347 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Files content kept outside of java heap as UTF-8, optionally Deflate compressed, in direct
+ * {@link ByteBuffer} slabs. Content is stored once per content hash and shared by files with the
+ * same content. Disabled by default, see {@link #configure}.
+ *
+ * <p>Slabs are filled sequentially and dropped when all content in them is removed, so memory is
+ * returned as soon as content of a slab is uploaded. A region is never reused while its slab is
+ * alive, so readers opened before removal still read the original content.
+ */
+public final class OffHeapContentStore {
+
+  static final int SLAB_SIZE = 4 * 1024 * 1024;
+
+  private static final ThreadLocal<Compressor> compressors =
+      ThreadLocal.withInitial(Compressor::new);
+
+  private static final class Compressor {
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] buffer = new byte[8192];
+
+    /** @return compressed length in {@link #buffer} or -1 if content is not compressible */
+    private int compress(@NotNull byte[] content) {
+      if (buffer.length < content.length) {
+        // per-thread buffer is kept for usual files only
+        if (content.length > SLAB_SIZE) return -1;
+        buffer = new byte[Math.max(content.length, buffer.length * 2)];
+      }
+      deflater.reset();
+      deflater.setInput(content);
+      deflater.finish();
+      final int length = deflater.deflate(buffer, 0, content.length);
+      return (deflater.finished() && length < content.length) ? length : -1;
+    }
+  }
+
+  private static final class Slab {
+    private final ByteBuffer buffer;
+    private int liveBytes = 0;
+
+    private Slab(int capacity) {
+      buffer = ByteBuffer.allocateDirect(capacity);
+    }
+  }
+
+  private static final class Slot {
+    private final Slab slab;
+    private final int offset;
+    private final int length;
+    private final int rawLength;
+    private final boolean compressed;
+    private int files = 0;
+
+    private Slot(@NotNull Slab slab, int offset, int length, int rawLength) {
+      this.slab = slab;
+      this.offset = offset;
+      this.length = length;
+      this.rawLength = rawLength;
+      this.compressed = length != rawLength;
+    }
+
+    @NotNull
+    private InputStream openStream() {
+      final ByteBuffer bytes = slab.buffer.duplicate();
+      bytes.limit(offset + length).position(offset);
+      final InputStream stream = new ByteBufferInputStream(bytes);
+      return compressed ? new InflaterInputStream(stream) : stream;
+    }
+  }
+
+  // partitioned by project, so content of a closed project is released without scanning others
+  private final ProjectFileMap<String> file2Hash = new ProjectFileMap<>();
+  private int fileCount = 0;
+  private final Map<String, Slot> hash2Slot = new HashMap<>();
+  private final List<Slab> slabs = new ArrayList<>();
+  @Nullable private Slab currentSlab = null;
+
+  private long maxBytes = 0;
+  private boolean compress = true;
+  private long allocatedBytes = 0;
+  private long rawBytes = 0;
+  private long storedBytes = 0;
+  private long rejected = 0;
+
+  OffHeapContentStore() {}
+
+  /**
+   * @param maxBytes max off-heap memory for content, 0 disables the store; content above the limit
+   *     stays on heap
+   * @param compress whether to Deflate content
+   */
+  public synchronized void configure(long maxBytes, boolean compress) {
+    this.maxBytes = maxBytes;
+    this.compress = compress;
+  }
+
+  synchronized boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /** @return false if content is not stored because of the memory limit or disabled store */
+  boolean put(
+      @NotNull Object project,
+      @NotNull Object file,
+      @NotNull String hash,
+      @NotNull String content) {
+    synchronized (this) {
+      if (maxBytes <= 0) return false;
+      final Slot slot = hash2Slot.get(hash);
+      if (slot != null) {
+        link(project, file, hash, slot);
+        return true;
+      }
+    }
+    // encoding and compression are done outside of the lock
+    final byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+    final boolean compress;
+    synchronized (this) {
+      compress = this.compress;
+    }
+    byte[] bytes = utf8;
+    int length = utf8.length;
+    if (compress) {
+      final Compressor compressor = compressors.get();
+      final int compressedLength = compressor.compress(utf8);
+      // not compressible content is stored as is
+      if (compressedLength >= 0) {
+        bytes = compressor.buffer;
+        length = compressedLength;
+      }
+    }
+    synchronized (this) {
+      Slot slot = hash2Slot.get(hash);
+      if (slot == null) {
+        final Slab slab = allocate(length);
+        if (slab == null) {
+          rejected++;
+          return false;
+        }
+        final int offset = slab.buffer.position();
+        slab.buffer.put(bytes, 0, length);
+        slab.liveBytes += length;
+        slot = new Slot(slab, offset, length, utf8.length);
+        hash2Slot.put(hash, slot);
+        rawBytes += utf8.length;
+        storedBytes += length;
+      }
+      link(project, file, hash, slot);
+    }
+    return true;
+  }
+
+  private void link(
+      @NotNull Object project, @NotNull Object file, @NotNull String hash, @NotNull Slot slot) {
+    final String oldHash = file2Hash.put(project, file, hash);
+    if (hash.equals(oldHash)) return;
+    slot.files++;
+    if (oldHash != null) unlink(oldHash);
+    else fileCount++;
+  }
+
+  private void unlink(@NotNull String hash) {
+    final Slot slot = hash2Slot.get(hash);
+    if (slot == null || --slot.files > 0) return;
+    hash2Slot.remove(hash);
+    rawBytes -= slot.rawLength;
+    storedBytes -= slot.length;
+    slot.slab.liveBytes -= slot.length;
+    if (slot.slab.liveBytes == 0 && slot.slab != currentSlab) freeSlab(slot.slab);
+  }
+
+  @Nullable
+  private Slab allocate(int length) {
+    if (currentSlab != null && currentSlab.buffer.remaining() >= length) return currentSlab;
+    // large content gets its own slab
+    final int capacity = Math.max(SLAB_SIZE, length);
+    if (currentSlab != null && currentSlab.liveBytes == 0) freeSlab(currentSlab);
+    if (allocatedBytes + capacity > maxBytes) return null;
+    final Slab slab = new Slab(capacity);
+    slabs.add(slab);
+    allocatedBytes += capacity;
+    currentSlab = slab;
+    return slab;
+  }
+
+  private void freeSlab(@NotNull Slab slab) {
+    // memory is freed when the buffer is collected, i.e. after all its readers are closed
+    if (!slabs.remove(slab)) return;
+    allocatedBytes -= slab.buffer.capacity();
+    if (slab == currentSlab) currentSlab = null;
+  }
+
+  synchronized void remove(@NotNull Object project, @NotNull Object file) {
+    final String hash = file2Hash.remove(project, file);
+    if (hash == null) return;
+    fileCount--;
+    unlink(hash);
+  }
+
+  synchronized void removeProject(@NotNull Object project) {
+    for (String hash : file2Hash.removeProject(project).values()) {
+      fileCount--;
+      unlink(hash);
+    }
+  }
+
+  synchronized boolean contains(@NotNull Object project, @NotNull Object file) {
+    return file2Hash.containsKey(project, file);
+  }
+
+  /** @return decoding reader of stored content or <b>null</b> if file content is not stored */
+  @Nullable
+  Reader openReader(@NotNull Object project, @NotNull Object file) {
+    final StoredContent stored = getStoredContent(project, file);
+    return (stored == null) ? null : stored.openReader();
+  }
+
+  /**
+   * @return stored content together with its hash or <b>null</b> if file content is not stored.
+   *     It stays readable after the file is removed from the store.
+   */
+  @Nullable
+  synchronized StoredContent getStoredContent(@NotNull Object project, @NotNull Object file) {
+    final String hash = file2Hash.get(project, file);
+    return (hash == null) ? null : new StoredContent(hash, hash2Slot.get(hash));
+  }
+
+  /** @return stored content or <b>null</b> if file content is not stored */
+  @Nullable
+  String getContent(@NotNull Object project, @NotNull Object file) {
+    final Reader reader = openReader(project, file);
+    if (reader == null) return null;
+    final StringBuilder content = new StringBuilder();
+    final char[] buffer = new char[8192];
+    try (Reader in = reader) {
+      int read;
+      while ((read = in.read(buffer)) != -1) content.append(buffer, 0, read);
+    } catch (IOException e) {
+      // not possible for in-memory content
+      throw new UncheckedIOException(e);
+    }
+    return content.toString();
+  }
+
+  /** @return number of files with stored content */
+  public synchronized int getSize() {
+    return fileCount;
+  }
+
+  /** @return off-heap memory taken by slabs */
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** @return UTF-8 size of stored content */
+  public synchronized long getRawBytes() {
+    return rawBytes;
+  }
+
+  /** @return size of stored content after compression */
+  public synchronized long getStoredBytes() {
+    return storedBytes;
+  }
+
+  /** @return number of content not stored because of the memory limit */
+  public synchronized long getRejectedCount() {
+    return rejected;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Off-heap content store: "
+        + fileCount
+        + " files, "
+        + storedBytes
+        + " bytes stored in "
+        + slabs.size()
+        + " slabs ("
+        + allocatedBytes
+        + " of "
+        + maxBytes
+        + " bytes), rejected: "
+        + rejected;
+  }
+
+  static final class StoredContent {
+    private final String hash;
+    private final Slot slot;
+
+    private StoredContent(@NotNull String hash, @NotNull Slot slot) {
+      this.hash = hash;
+      this.slot = slot;
+    }
+
+    @NotNull
+    String getHash() {
+      return hash;
+    }
+
+    /** @return decoding reader, could be opened several times */
+    @NotNull
+    Reader openReader() {
+      return new InputStreamReader(slot.openStream(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer bytes;
+
+    private ByteBufferInputStream(@NotNull ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int read() {
+      return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] buffer, int offset, int length) {
+      if (length == 0) return 0;
+      if (!bytes.hasRemaining()) return -1;
+      final int count = Math.min(length, bytes.remaining());
+      bytes.get(buffer, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return bytes.remaining();
+    }
+  }
+}
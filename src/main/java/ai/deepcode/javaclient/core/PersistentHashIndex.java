@@ -0,0 +1,190 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project files hashes (path -> size, modification time, sha256) stored in a binary file, so
+ * unchanged files are not read and hashed again after restart.
+ *
+ * <p>Index is a {@link ChecksummedFile}, so a crash leaves either the old or the new index. Other
+ * JVMs could use the same index: access is guarded by a file lock on {@code <index>.lock}, and
+ * {@link #save()} merges entries saved by others, keeping the newest entry for every path.
+ *
+ * <p>Entries of deleted files are kept: they are never matched unless a file with the same path,
+ * size and modification time appears.
+ */
+final class PersistentHashIndex {
+
+  private static final int MAGIC = 0x44434849; // "DCHI"
+  private static final int VERSION = 1;
+  private static final int HASH_BYTES = 32;
+
+  // FileChannel.lock() is per JVM, so threads of this JVM should not overlap on lock files
+  private static final Object FILE_LOCK_MONITOR = new Object();
+
+  /** Size and modification time of a file, taken before its content is read. */
+  static final class Stamp {
+    final long size;
+    final long modificationTime;
+
+    Stamp(long size, long modificationTime) {
+      this.size = size;
+      this.modificationTime = modificationTime;
+    }
+  }
+
+  private static final class Entry {
+    private final Stamp stamp;
+    private final String hash;
+
+    private Entry(@NotNull Stamp stamp, @NotNull String hash) {
+      this.stamp = stamp;
+      this.hash = hash;
+    }
+
+    private boolean matches(@NotNull Stamp other) {
+      return stamp.size == other.size && stamp.modificationTime == other.modificationTime;
+    }
+
+    private boolean isNewerThan(@NotNull Entry other) {
+      return stamp.modificationTime >= other.stamp.modificationTime;
+    }
+  }
+
+  private final Path indexFile;
+  private final Path lockFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean dirty = false;
+
+  private PersistentHashIndex(@NotNull Path indexFile) {
+    this.indexFile = indexFile;
+    this.lockFile = indexFile.resolveSibling(indexFile.getFileName() + ".lock");
+  }
+
+  /** Load index from {@code indexFile}, missing or broken file gives empty index. */
+  @NotNull
+  static PersistentHashIndex load(@NotNull Path indexFile) {
+    final PersistentHashIndex index = new PersistentHashIndex(indexFile);
+    try {
+      index.withFileLock(true, () -> index.entries.putAll(read(indexFile)));
+    } catch (IOException | RuntimeException e) {
+      // index is only an optimisation, files will be hashed again
+      index.entries.clear();
+    }
+    return index;
+  }
+
+  /** @return hash of the file if it has the same size and modification time as when indexed */
+  @Nullable
+  String get(@NotNull String path, @NotNull Stamp stamp) {
+    final Entry entry = entries.get(path);
+    return (entry != null && entry.matches(stamp)) ? entry.hash : null;
+  }
+
+  void put(@NotNull String path, @NotNull Stamp stamp, @NotNull String hash) {
+    if (hash.length() != HASH_BYTES * 2) return; // not a sha256 hex
+    final Entry old = entries.put(path, new Entry(stamp, hash));
+    if (old == null || !old.matches(stamp) || !old.hash.equals(hash)) dirty = true;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /** Write index to disk if changed since load or last save. */
+  void save() throws IOException {
+    if (!dirty) return;
+    dirty = false;
+    try {
+      withFileLock(
+          false,
+          () -> {
+            // entries saved by other JVMs since our load
+            for (Map.Entry<String, Entry> saved : read(indexFile).entrySet()) {
+              entries.merge(
+                  saved.getKey(),
+                  saved.getValue(),
+                  (ours, theirs) -> ours.isNewerThan(theirs) ? ours : theirs);
+            }
+            write();
+          });
+    } catch (IOException | RuntimeException e) {
+      dirty = true;
+      throw e;
+    }
+  }
+
+  private interface IOAction {
+    void run() throws IOException;
+  }
+
+  private void withFileLock(boolean shared, @NotNull IOAction action) throws IOException {
+    Files.createDirectories(lockFile.toAbsolutePath().getParent());
+    synchronized (FILE_LOCK_MONITOR) {
+      try (FileChannel channel =
+          FileChannel.open(
+              lockFile,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE)) {
+        final FileLock lock = channel.lock(0, Long.MAX_VALUE, shared);
+        try {
+          action.run();
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+  @NotNull
+  private static Map<String, Entry> read(@NotNull Path indexFile) throws IOException {
+    final Map<String, Entry> result =
+        ChecksummedFile.read(
+            indexFile,
+            MAGIC,
+            VERSION,
+            in -> {
+              final Map<String, Entry> entries = new ConcurrentHashMap<>();
+              final int count = in.readInt();
+              final byte[] hash = new byte[HASH_BYTES];
+              for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final Stamp stamp = new Stamp(in.readLong(), in.readLong());
+                in.readFully(hash);
+                entries.put(path, new Entry(stamp, Sha256.toHex(hash)));
+              }
+              return entries;
+            });
+    return (result != null) ? result : new ConcurrentHashMap<>();
+  }
+
+  private void write() throws IOException {
+    // snapshot, as entries could be added concurrently
+    final Map<String, Entry> snapshot = new HashMap<>(entries);
+    ChecksummedFile.write(
+        indexFile,
+        MAGIC,
+        VERSION,
+        out -> {
+          out.writeInt(snapshot.size());
+          for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().stamp.size);
+            out.writeLong(entry.getValue().stamp.modificationTime);
+            out.write(ChecksummedFile.fromHex(entry.getValue().hash));
+          }
+        });
+  }
+}
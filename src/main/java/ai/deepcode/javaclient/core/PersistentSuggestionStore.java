@@ -0,0 +1,379 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.responses.ExampleCommitFix;
+import ai.deepcode.javaclient.responses.ExampleLine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Analysis state of a project kept between restarts: the last bundle, its files (path -> hash) and
+ * the {@link SuggestionCache}. Reopened project resumes the stored bundle, so only files changed
+ * meanwhile are sent and analysed again.
+ *
+ * <p>Store is a {@link ChecksummedFile}; repeated strings (rules, messages, example lines) are
+ * written once. The last saved state wins if several IDE instances share the store file.
+ */
+final class PersistentSuggestionStore {
+
+  private static final int MAGIC = 0x44435353; // "DCSS"
+  private static final int VERSION = 1;
+  private static final int HASH_LENGTH = 64; // sha256 hex
+
+  private final Path storeFile;
+  private volatile String bundleId = "";
+  // files of the bundle
+  private final Map<String, String> manifest = new ConcurrentHashMap<>();
+  // files deleted since the bundle was created, to remove with the next extension
+  private final Set<String> removedPaths = ConcurrentHashMap.newKeySet();
+  private SuggestionCache suggestionCache = new SuggestionCache();
+  private volatile boolean dirty = false;
+  private long savedModificationCount = -1;
+
+  private PersistentSuggestionStore(@NotNull Path storeFile) {
+    this.storeFile = storeFile;
+  }
+
+  /** Load store from {@code storeFile}, missing or broken file gives empty store. */
+  @NotNull
+  static PersistentSuggestionStore load(@NotNull Path storeFile) {
+    PersistentSuggestionStore store = new PersistentSuggestionStore(storeFile);
+    try {
+      final PersistentSuggestionStore loaded =
+          ChecksummedFile.read(storeFile, MAGIC, VERSION, in -> read(storeFile, in));
+      if (loaded != null) store = loaded;
+    } catch (IOException | RuntimeException e) {
+      // store is only an optimisation, project will be analysed again
+    }
+    store.savedModificationCount = store.suggestionCache.getModificationCount();
+    return store;
+  }
+
+  /** @return id of the stored bundle or empty string */
+  @NotNull
+  String getBundleId() {
+    return bundleId;
+  }
+
+  /** @return hash of the file in the stored bundle or <b>null</b> */
+  @Nullable
+  String getBundledHash(@NotNull String path) {
+    return manifest.get(path);
+  }
+
+  @NotNull
+  Set<String> getBundledPaths() {
+    return Collections.unmodifiableSet(manifest.keySet());
+  }
+
+  /** Suggestion cache loaded from the store. */
+  @NotNull
+  SuggestionCache getSuggestionCache() {
+    return suggestionCache;
+  }
+
+  /** Bundle is created ({@code parentBundleId} is empty) or extended with files. */
+  void bundleUpdated(
+      @NotNull String parentBundleId,
+      @NotNull String newBundleId,
+      @NotNull Map<String, String> addedFiles,
+      @NotNull Collection<String> removedFiles) {
+    if (parentBundleId.isEmpty() || !parentBundleId.equals(bundleId)) manifest.clear();
+    manifest.putAll(addedFiles);
+    manifest.keySet().removeAll(removedFiles);
+    removedPaths.removeAll(removedFiles);
+    bundleId = newBundleId;
+    dirty = true;
+  }
+
+  /** Files are not in the bundle anymore, e.g. missing on server. */
+  void forgetPaths(@NotNull Collection<String> paths) {
+    if (manifest.keySet().removeAll(paths)) dirty = true;
+  }
+
+  /** Bundle is expired on server. */
+  void resetBundle() {
+    bundleId = "";
+    manifest.clear();
+    removedPaths.clear();
+    dirty = true;
+  }
+
+  /** Files should be removed from the bundle with its next extension. */
+  void removeFromBundle(@NotNull Collection<String> paths) {
+    removedPaths.addAll(paths);
+  }
+
+  @NotNull
+  Collection<String> getRemovedPaths() {
+    return new ArrayList<>(removedPaths);
+  }
+
+  int size() {
+    return manifest.size();
+  }
+
+  /** Write store to disk if bundle or suggestions changed since load or last save. */
+  synchronized void save(@NotNull SuggestionCache suggestionCache) throws IOException {
+    final long modificationCount = suggestionCache.getModificationCount();
+    if (!dirty
+        && suggestionCache == this.suggestionCache
+        && modificationCount == savedModificationCount) return;
+    dirty = false;
+    this.suggestionCache = suggestionCache;
+    try {
+      Files.createDirectories(storeFile.toAbsolutePath().getParent());
+      final String bundleId = this.bundleId;
+      // snapshots, as files could be added concurrently
+      final Map<String, String> manifest = new HashMap<>(this.manifest);
+      final Map<String, List<SuggestionCache.Version>> versions = suggestionCache.getVersions();
+      ChecksummedFile.write(
+          storeFile, MAGIC, VERSION, out -> write(new Output(out), bundleId, manifest, versions));
+      savedModificationCount = modificationCount;
+    } catch (IOException | RuntimeException e) {
+      dirty = true;
+      throw e;
+    }
+  }
+
+  private static void write(
+      @NotNull Output out,
+      @NotNull String bundleId,
+      @NotNull Map<String, String> manifest,
+      @NotNull Map<String, List<SuggestionCache.Version>> versions)
+      throws IOException {
+    out.writeString(bundleId);
+    out.data.writeInt(manifest.size());
+    for (Map.Entry<String, String> file : manifest.entrySet()) {
+      out.writeString(file.getKey());
+      out.writeHash(file.getValue());
+    }
+    out.data.writeInt(versions.size());
+    for (Map.Entry<String, List<SuggestionCache.Version>> path : versions.entrySet()) {
+      out.writeString(path.getKey());
+      out.data.writeInt(path.getValue().size());
+      for (SuggestionCache.Version version : path.getValue()) {
+        out.writeHash(version.hash);
+        out.data.writeInt(version.severity);
+        out.data.writeBoolean(version.useLinters);
+        out.writeSuggestions(version.suggestions);
+      }
+    }
+  }
+
+  @NotNull
+  private static PersistentSuggestionStore read(
+      @NotNull Path storeFile, @NotNull DataInputStream in) throws IOException {
+    final Input input = new Input(in);
+    final PersistentSuggestionStore store = new PersistentSuggestionStore(storeFile);
+    store.bundleId = input.readNotNullString();
+    final int files = in.readInt();
+    for (int i = 0; i < files; i++) {
+      store.manifest.put(input.readNotNullString(), input.readHash());
+    }
+    final int paths = in.readInt();
+    for (int i = 0; i < paths; i++) {
+      final String path = input.readNotNullString();
+      final int versions = in.readInt();
+      for (int v = 0; v < versions; v++) {
+        final String hash = input.readHash();
+        final int severity = in.readInt();
+        final boolean useLinters = in.readBoolean();
+        store.suggestionCache.put(path, hash, severity, useLinters, input.readSuggestions());
+      }
+    }
+    return store;
+  }
+
+  /** Writes every string and suggestions list once, later occurrences are written as index. */
+  private static final class Output {
+    private final DataOutputStream data;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<List<SuggestionForFile>, Integer> suggestionLists = new IdentityHashMap<>();
+
+    private Output(@NotNull DataOutputStream data) {
+      this.data = data;
+    }
+
+    private void writeString(@Nullable String string) throws IOException {
+      if (string == null) {
+        data.writeInt(-2);
+        return;
+      }
+      final Integer index = strings.get(string);
+      if (index != null) {
+        data.writeInt(index);
+        return;
+      }
+      strings.put(string, strings.size());
+      data.writeInt(-1);
+      // not writeUTF(), as it's limited to 64K bytes
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      data.writeInt(bytes.length);
+      data.write(bytes);
+    }
+
+    private void writeHash(@NotNull String hash) throws IOException {
+      if (hash.length() != HASH_LENGTH) throw new IOException("Not a sha256 hash: " + hash);
+      data.write(ChecksummedFile.fromHex(hash));
+    }
+
+    private void writeSuggestions(@NotNull List<SuggestionForFile> suggestions)
+        throws IOException {
+      final Integer index = suggestionLists.get(suggestions);
+      if (index != null) {
+        data.writeInt(index);
+        return;
+      }
+      suggestionLists.put(suggestions, suggestionLists.size());
+      data.writeInt(-1);
+      data.writeInt(suggestions.size());
+      for (SuggestionForFile suggestion : suggestions) {
+        writeString(suggestion.getId());
+        writeString(suggestion.getRule());
+        writeString(suggestion.getMessage());
+        data.writeInt(suggestion.getSeverity());
+        data.writeInt(suggestion.getRepoDatasetSize());
+        final List<ExampleCommitFix> fixes = suggestion.getExampleCommitFixes();
+        data.writeInt(fixes == null ? -1 : fixes.size());
+        if (fixes != null) {
+          for (ExampleCommitFix fix : fixes) {
+            writeString(fix.getCommitURL());
+            final List<ExampleLine> lines = fix.getLines();
+            data.writeInt(lines == null ? -1 : lines.size());
+            if (lines == null) continue;
+            for (ExampleLine line : lines) {
+              writeString(line.getLine());
+              data.writeInt(line.getLineNumber());
+              writeString(line.getLineChange());
+            }
+          }
+        }
+        writeRanges(suggestion.getRanges());
+      }
+    }
+
+    private void writeRanges(@NotNull List<MyTextRange> ranges) throws IOException {
+      data.writeInt(ranges.size());
+      for (MyTextRange range : ranges) writeRange(range);
+    }
+
+    private void writeRange(@NotNull MyTextRange range) throws IOException {
+      data.writeInt(range.getStart());
+      data.writeInt(range.getEnd());
+      data.writeInt(range.getStartRow());
+      data.writeInt(range.getEndRow());
+      data.writeInt(range.getStartCol());
+      data.writeInt(range.getEndCol());
+      data.writeInt(range.getMarkers().size());
+      for (Map.Entry<MyTextRange, List<MyTextRange>> marker : range.getMarkers().entrySet()) {
+        writeRange(marker.getKey());
+        writeRanges(marker.getValue());
+      }
+    }
+  }
+
+  private static final class Input {
+    private final DataInputStream data;
+    private final List<String> strings = new ArrayList<>();
+    private final List<List<SuggestionForFile>> suggestionLists = new ArrayList<>();
+    private final byte[] hash = new byte[HASH_LENGTH / 2];
+
+    private Input(@NotNull DataInputStream data) {
+      this.data = data;
+    }
+
+    @Nullable
+    private String readString() throws IOException {
+      final int index = data.readInt();
+      if (index == -2) return null;
+      if (index >= 0) return strings.get(index);
+      final byte[] bytes = new byte[data.readInt()];
+      data.readFully(bytes);
+      final String string = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(string);
+      return string;
+    }
+
+    @NotNull
+    private String readNotNullString() throws IOException {
+      final String string = readString();
+      if (string == null) throw new IOException("Unexpected null string");
+      return string;
+    }
+
+    @NotNull
+    private String readHash() throws IOException {
+      data.readFully(hash);
+      return Sha256.toHex(hash);
+    }
+
+    @NotNull
+    private List<SuggestionForFile> readSuggestions() throws IOException {
+      final int index = data.readInt();
+      if (index >= 0) return suggestionLists.get(index);
+      final int count = data.readInt();
+      final List<SuggestionForFile> suggestions = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final String id = readString();
+        final String rule = readString();
+        final String message = readString();
+        final int severity = data.readInt();
+        final int repoDatasetSize = data.readInt();
+        List<ExampleCommitFix> fixes = null;
+        final int fixCount = data.readInt();
+        if (fixCount >= 0) {
+          fixes = new ArrayList<>(fixCount);
+          for (int f = 0; f < fixCount; f++) {
+            final String commitURL = readString();
+            List<ExampleLine> lines = null;
+            final int lineCount = data.readInt();
+            if (lineCount >= 0) {
+              lines = new ArrayList<>(lineCount);
+              for (int l = 0; l < lineCount; l++) {
+                lines.add(new ExampleLine(readString(), data.readInt(), readString()));
+              }
+            }
+            fixes.add(new ExampleCommitFix(commitURL, lines));
+          }
+        }
+        suggestions.add(
+            new SuggestionForFile(
+                id, rule, message, severity, repoDatasetSize, fixes, readRanges()));
+      }
+      suggestionLists.add(suggestions);
+      return suggestions;
+    }
+
+    @NotNull
+    private List<MyTextRange> readRanges() throws IOException {
+      final int count = data.readInt();
+      final List<MyTextRange> ranges = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) ranges.add(readRange());
+      return ranges;
+    }
+
+    @NotNull
+    private MyTextRange readRange() throws IOException {
+      final int start = data.readInt();
+      final int end = data.readInt();
+      final int startRow = data.readInt();
+      final int endRow = data.readInt();
+      final int startCol = data.readInt();
+      final int endCol = data.readInt();
+      final int markerCount = data.readInt();
+      final Map<MyTextRange, List<MyTextRange>> markers =
+          markerCount == 0 ? Collections.emptyMap() : new LinkedHashMap<>();
+      for (int i = 0; i < markerCount; i++) markers.put(readRange(), readRanges());
+      return new MyTextRange(start, end, startRow, endRow, startCol, endCol, markers);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package ai.deepcode.javaclient.core;
 
+import ai.deepcode.javaclient.CircuitBreaker;
+import ai.deepcode.javaclient.DeepCodeRestApi;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -11,10 +13,10 @@ public abstract class PlatformDependentUtilsBase {
   public static final int DEFAULT_DELAY_SMALL = 200; // milliseconds
 
   public void delay(int millis, @Nullable Object progress) {
-    int counts = millis / 100;
-    for (int i = 1; i <= counts; i++) {
+    // sleep by 100ms steps to check cancellation, the last step could be shorter
+    for (int remaining = millis; remaining > 0; remaining -= 100) {
       try {
-        Thread.sleep(100);
+        Thread.sleep(Math.min(100, remaining));
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
       }
@@ -22,6 +24,10 @@ public abstract class PlatformDependentUtilsBase {
     }
   }
 
+  /**
+   * Also called from "DeepCode file hashing" pool threads, so it should take a read action itself
+   * if the platform requires one.
+   */
   @NotNull
   public abstract Object getProject(@NotNull Object file);
 
@@ -31,6 +37,10 @@ public abstract class PlatformDependentUtilsBase {
   @NotNull
   public abstract String getFileName(@NotNull Object file);
 
+  /**
+   * Also called from "DeepCode file hashing" pool threads, see {@link #getProject}; overrides and
+   * {@link #getProjectBasedFilePath} should be safe to call there.
+   */
   @NotNull
   public String getDeepCodedFilePath(@NotNull Object file) {
     final String path = getProjectBasedFilePath(file);
@@ -43,8 +53,23 @@ public abstract class PlatformDependentUtilsBase {
   public abstract Object[] getOpenProjects();
   // ProjectManager.getInstance().getOpenProjects()
 
+  /** Called from "DeepCode file hashing" pool threads too, wrap in a read action if needed. */
   public abstract long getFileSize(@NotNull Object file);
 
+  /**
+   * Last modification time of the file, in milliseconds, or -1 if unknown. Used to skip hashing of
+   * files not changed since they were put in persistent hash index.
+   *
+   * <p>Should change whenever content given by {@link HashContentUtilsBase#doGetFileContent}
+   * changes, including unsaved content of an opened editor, otherwise hash of the saved content is
+   * taken from the index. Return -1 for files with unsaved changes if editor has no such stamp.
+   *
+   * <p>Called from "DeepCode file hashing" pool threads, wrap in a read action if needed.
+   */
+  public long getFileModificationTime(@NotNull Object file) {
+    return -1;
+  }
+
   public abstract int getLineStartOffset(@NotNull Object file, int line);
 
   public abstract void runInBackgroundCancellable(
@@ -79,4 +104,19 @@ public abstract class PlatformDependentUtilsBase {
   public abstract void showWarn(String message, @Nullable Object project);
 
   public abstract void showError(String message, @Nullable Object project);
+
+  /** State of the connection to the server, see {@link CircuitBreaker}. */
+  @NotNull
+  public CircuitBreaker.State getServerState() {
+    return DeepCodeRestApi.getCircuitBreaker().getState();
+  }
+
+  /**
+   * Called on every change of {@link #getServerState()}, override to show it in the UI. Called
+   * from the thread that sent or completed the request: the calling one for blocking requests,
+   * OkHttp dispatcher or retry scheduler thread for async ones (or the one changing baseUrl), so
+   * UI updates should be posted to the UI thread.
+   */
+  public void onServerStateChanged(
+      @NotNull CircuitBreaker.State oldState, @NotNull CircuitBreaker.State newState) {}
 }
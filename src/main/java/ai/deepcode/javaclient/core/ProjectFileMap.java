@@ -0,0 +1,67 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Values of project files partitioned by project, so project-wide operations (removal, listing)
+ * cost the size of that project only, not of all open projects. Project of a file is provided by
+ * caller, usually from {@link PlatformDependentUtilsBase#getProject}.
+ */
+final class ProjectFileMap<V> {
+
+  private final Map<Object, Map<Object, V>> project2Files = new ConcurrentHashMap<>();
+
+  @NotNull
+  private Map<Object, V> files(@NotNull Object project) {
+    return project2Files.computeIfAbsent(project, p -> new ConcurrentHashMap<>());
+  }
+
+  @Nullable
+  V get(@NotNull Object project, @NotNull Object file) {
+    final Map<Object, V> files = project2Files.get(project);
+    return (files == null) ? null : files.get(file);
+  }
+
+  boolean containsKey(@NotNull Object project, @NotNull Object file) {
+    return get(project, file) != null;
+  }
+
+  @Nullable
+  V put(@NotNull Object project, @NotNull Object file, @NotNull V value) {
+    return files(project).put(file, value);
+  }
+
+  @NotNull
+  V computeIfAbsent(
+      @NotNull Object project,
+      @NotNull Object file,
+      @NotNull Function<Object, ? extends V> mappingFunction) {
+    return files(project).computeIfAbsent(file, mappingFunction);
+  }
+
+  @Nullable
+  V remove(@NotNull Object project, @NotNull Object file) {
+    final Map<Object, V> files = project2Files.get(project);
+    return (files == null) ? null : files.remove(file);
+  }
+
+  /** @return live view of the project files */
+  @NotNull
+  Map<Object, V> getFiles(@NotNull Object project) {
+    final Map<Object, V> files = project2Files.get(project);
+    return (files == null) ? Collections.emptyMap() : Collections.unmodifiableMap(files);
+  }
+
+  /** @return removed files of the project */
+  @NotNull
+  Map<Object, V> removeProject(@NotNull Object project) {
+    final Map<Object, V> files = project2Files.remove(project);
+    return (files == null) ? Collections.emptyMap() : files;
+  }
+}
@@ -313,6 +313,7 @@ public abstract class RunUtilsBase {
         project,
         (files != null) ? files : deepCodeUtils.getAllSupportedFilesInProject(project),
         filesToRemove,
+        files == null,
         progress);
     updateAnalysisResultsUIPresentation(
         (files != null) ? files : analysisData.getAllFilesWithSuggestions(project));
@@ -0,0 +1,119 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 hex digests with per-thread reusable {@link MessageDigest} and buffers. Text is UTF-8
+ * encoded into the digest slice by slice, so no copy of the whole text is allocated.
+ */
+final class Sha256 {
+
+  private static final int SLICE_LENGTH = 8192;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final ThreadLocal<Sha256> perThread = ThreadLocal.withInitial(Sha256::new);
+
+  private final MessageDigest digest;
+  private final char[] chars = new char[SLICE_LENGTH];
+  // up to 3 bytes per char, surrogate pair takes 4 bytes for 2 chars
+  private final byte[] bytes = new byte[SLICE_LENGTH * 3];
+
+  private Sha256() {
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** @return hex SHA-256 of {@code text.getBytes(UTF_8)} */
+  @NotNull
+  static String hash(@NotNull String text) {
+    final Sha256 sha256 = perThread.get();
+    final MessageDigest digest = sha256.digest;
+    digest.reset();
+    final int length = text.length();
+    int start = 0;
+    while (start < length) {
+      int end = Math.min(length, start + SLICE_LENGTH);
+      // surrogate pair should not be split between slices
+      if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) end--;
+      text.getChars(start, end, sha256.chars, 0);
+      digest.update(sha256.bytes, 0, sha256.encodeUtf8(end - start));
+      start = end;
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Encode first {@code count} of {@link #chars} into {@link #bytes}, malformed surrogates are
+   * replaced with '?' as {@link String#getBytes} does.
+   *
+   * @return number of bytes
+   */
+  private int encodeUtf8(int count) {
+    int pos = 0;
+    for (int i = 0; i < count; i++) {
+      final char c = chars[i];
+      if (c < 0x80) {
+        bytes[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[pos++] = (byte) (0xc0 | (c >> 6));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        bytes[pos++] = (byte) (0xe0 | (c >> 12));
+        bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < count
+          && Character.isLowSurrogate(chars[i + 1])) {
+        final int codePoint = Character.toCodePoint(c, chars[++i]);
+        bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        bytes[pos++] = '?';
+      }
+    }
+    return pos;
+  }
+
+  /** @return hex SHA-256 of remaining bytes of {@code bytes}, buffer position is moved to limit */
+  @NotNull
+  static String hash(@NotNull ByteBuffer bytes) {
+    final MessageDigest digest = perThread.get().digest;
+    digest.reset();
+    digest.update(bytes);
+    return toHex(digest.digest());
+  }
+
+  /** @return hex SHA-256 of all bytes of {@code stream}, stream is not closed */
+  @NotNull
+  static String hash(@NotNull InputStream stream) throws IOException {
+    final Sha256 sha256 = perThread.get();
+    final MessageDigest digest = sha256.digest;
+    digest.reset();
+    int read;
+    while ((read = stream.read(sha256.bytes)) != -1) {
+      digest.update(sha256.bytes, 0, read);
+    }
+    return toHex(digest.digest());
+  }
+
+  @NotNull
+  static String toHex(@NotNull byte[] bytes) {
+    final char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,157 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Suggestions of already analysed content of project files, keyed by content hash and analysis
+ * settings, so reverted edits, switched branches and duplicate files don't need a new analysis.
+ *
+ * <p>Last {@link #VERSIONS_PER_PATH} analysed versions are kept for every path, suggestions are
+ * dropped when no path keeps their version anymore.
+ */
+final class SuggestionCache {
+
+  static final int VERSIONS_PER_PATH = 3;
+
+  private static final class Key {
+    private final String hash;
+    private final int severity;
+    private final boolean useLinters;
+
+    private Key(@NotNull String hash, int severity, boolean useLinters) {
+      this.hash = hash;
+      this.severity = severity;
+      this.useLinters = useLinters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      final Key other = (Key) o;
+      return severity == other.severity
+          && useLinters == other.useLinters
+          && hash.equals(other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(hash, severity, useLinters);
+    }
+  }
+
+  private static final class Entry {
+    private List<SuggestionForFile> suggestions;
+    private int paths = 0;
+
+    private Entry(@NotNull List<SuggestionForFile> suggestions) {
+      this.suggestions = suggestions;
+    }
+  }
+
+  /** Analysed version of a path, for persistence. */
+  static final class Version {
+    final String hash;
+    final int severity;
+    final boolean useLinters;
+    final List<SuggestionForFile> suggestions;
+
+    private Version(@NotNull Key key, @NotNull List<SuggestionForFile> suggestions) {
+      this.hash = key.hash;
+      this.severity = key.severity;
+      this.useLinters = key.useLinters;
+      this.suggestions = suggestions;
+    }
+  }
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+  // the latest version is the last one
+  private final Map<String, Deque<Key>> path2Versions = new HashMap<>();
+  private long hits = 0;
+  private long misses = 0;
+  private long modifications = 0;
+
+  /** @return suggestions for content with {@code hash} or <b>null</b> if it wasn't analysed */
+  @Nullable
+  synchronized List<SuggestionForFile> get(@NotNull String hash, int severity, boolean useLinters) {
+    final Entry entry = entries.get(new Key(hash, severity, useLinters));
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.suggestions;
+  }
+
+  /** Remember suggestions for the current content of file at {@code path}. */
+  synchronized void put(
+      @NotNull String path,
+      @NotNull String hash,
+      int severity,
+      boolean useLinters,
+      @NotNull List<SuggestionForFile> suggestions) {
+    modifications++;
+    final Key key = new Key(hash, severity, useLinters);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(suggestions);
+      entries.put(key, entry);
+    } else {
+      // the latest analysis wins
+      entry.suggestions = suggestions;
+    }
+    final Deque<Key> versions = path2Versions.computeIfAbsent(path, p -> new ArrayDeque<>());
+    if (!versions.remove(key)) entry.paths++;
+    versions.addLast(key);
+    if (versions.size() > VERSIONS_PER_PATH) release(versions.removeFirst());
+  }
+
+  /** Forget all versions of the path, e.g. of deleted file. */
+  synchronized void removePath(@NotNull String path) {
+    final Deque<Key> versions = path2Versions.remove(path);
+    if (versions == null) return;
+    modifications++;
+    versions.forEach(this::release);
+  }
+
+  private void release(@NotNull Key key) {
+    final Entry entry = entries.get(key);
+    if (entry != null && --entry.paths <= 0) entries.remove(key);
+  }
+
+  /** @return analysed versions of every path, the latest version is the last one */
+  @NotNull
+  synchronized Map<String, List<Version>> getVersions() {
+    final Map<String, List<Version>> result = new HashMap<>();
+    for (Map.Entry<String, Deque<Key>> path : path2Versions.entrySet()) {
+      final List<Version> versions = new ArrayList<>(path.getValue().size());
+      for (Key key : path.getValue()) versions.add(new Version(key, entries.get(key).suggestions));
+      result.put(path.getKey(), versions);
+    }
+    return result;
+  }
+
+  /** @return number of changes, to skip persisting unchanged cache */
+  synchronized long getModificationCount() {
+    return modifications;
+  }
+
+  synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Suggestion cache: "
+        + entries.size()
+        + " analysed versions of "
+        + path2Versions.size()
+        + " files, hits: "
+        + hits
+        + ", misses: "
+        + misses;
+  }
+}
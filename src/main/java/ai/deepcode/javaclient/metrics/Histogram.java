@@ -0,0 +1,93 @@
+package ai.deepcode.javaclient.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of nanosecond durations with power-of-two buckets: bucket {@code i} counts
+ * values in {@code [2^i, 2^(i+1))}. Percentiles are approximated by the upper bound of the bucket,
+ * so they are at most twice bigger than the real ones.
+ */
+public final class Histogram {
+
+  private static final int BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    final long value = Math.max(0, nanos);
+    buckets.incrementAndGet(bucketOf(value));
+    count.increment();
+    sum.add(value);
+    long currentMax;
+    while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+      // retry
+    }
+  }
+
+  private static int bucketOf(long value) {
+    return (value == 0) ? 0 : 63 - Long.numberOfLeadingZeros(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSumNanos() {
+    return sum.sum();
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  public long getMeanNanos() {
+    final long count = getCount();
+    return (count == 0) ? 0 : getSumNanos() / count;
+  }
+
+  /**
+   * @param percentile in {@code (0, 100]}
+   * @return approximated value in nanos
+   */
+  public long getPercentileNanos(double percentile) {
+    final long count = getCount();
+    if (count == 0) return 0;
+    final long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        final long upperBound = (i >= 62) ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        return Math.min(upperBound, getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  @Override
+  public String toString() {
+    return "count="
+        + getCount()
+        + " mean="
+        + toMillis(getMeanNanos())
+        + "ms p50="
+        + toMillis(getPercentileNanos(50))
+        + "ms p95="
+        + toMillis(getPercentileNanos(95))
+        + "ms p99="
+        + toMillis(getPercentileNanos(99))
+        + "ms max="
+        + toMillis(getMaxNanos())
+        + "ms";
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
@@ -0,0 +1,108 @@
+package ai.deepcode.javaclient.metrics;
+
+import ai.deepcode.javaclient.Endpoint;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link MetricsSink} keeping {@link Histogram}s and counters per {@link Endpoint} in
+ * memory for the lifetime of the client.
+ */
+public final class InMemoryMetricsSink implements MetricsSink {
+
+  private final Map<Endpoint, EndpointMetrics> metrics = new EnumMap<>(Endpoint.class);
+
+  public InMemoryMetricsSink() {
+    // all entries are created upfront, so map is read-only afterwards
+    for (Endpoint endpoint : Endpoint.values()) {
+      metrics.put(endpoint, new EndpointMetrics());
+    }
+  }
+
+  @Override
+  public void recordLatency(@NotNull Endpoint endpoint, @NotNull Phase phase, long nanos) {
+    metrics.get(endpoint).latencies.get(phase).record(nanos);
+  }
+
+  @Override
+  public void recordBytes(@NotNull Endpoint endpoint, long requestBytes, long responseBytes) {
+    final EndpointMetrics endpointMetrics = metrics.get(endpoint);
+    endpointMetrics.requestBytes.add(requestBytes);
+    endpointMetrics.responseBytes.add(responseBytes);
+  }
+
+  @Override
+  public void recordStatus(@NotNull Endpoint endpoint, int statusCode) {
+    metrics
+        .get(endpoint)
+        .statusCounts
+        .computeIfAbsent(statusCode, code -> new LongAdder())
+        .increment();
+  }
+
+  @NotNull
+  public Histogram getLatency(@NotNull Endpoint endpoint, @NotNull Phase phase) {
+    return metrics.get(endpoint).latencies.get(phase);
+  }
+
+  public long getRequestBytes(@NotNull Endpoint endpoint) {
+    return metrics.get(endpoint).requestBytes.sum();
+  }
+
+  public long getResponseBytes(@NotNull Endpoint endpoint) {
+    return metrics.get(endpoint).responseBytes.sum();
+  }
+
+  /** @return snapshot of responses count by status code ({@code 0} for network errors) */
+  @NotNull
+  public Map<Integer, Long> getStatusCounts(@NotNull Endpoint endpoint) {
+    final Map<Integer, Long> result = new TreeMap<>();
+    metrics.get(endpoint).statusCounts.forEach((code, count) -> result.put(code, count.sum()));
+    return Collections.unmodifiableMap(result);
+  }
+
+  /** Human readable report for endpoints having any calls. */
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("Network metrics:");
+    for (Endpoint endpoint : Endpoint.values()) {
+      final Histogram total = getLatency(endpoint, Phase.TOTAL);
+      if (total.getCount() == 0) continue;
+      builder
+          .append("\n")
+          .append(endpoint)
+          .append(": status ")
+          .append(getStatusCounts(endpoint))
+          .append(" sent ")
+          .append(getRequestBytes(endpoint))
+          .append("b received ")
+          .append(getResponseBytes(endpoint))
+          .append("b");
+      for (Phase phase : Phase.values()) {
+        final Histogram histogram = getLatency(endpoint, phase);
+        if (histogram.getCount() == 0) continue;
+        builder.append("\n  ").append(phase).append(": ").append(histogram);
+      }
+    }
+    return builder.toString();
+  }
+
+  private static final class EndpointMetrics {
+    private final Map<Phase, Histogram> latencies = new EnumMap<>(Phase.class);
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+
+    private EndpointMetrics() {
+      for (Phase phase : Phase.values()) {
+        latencies.put(phase, new Histogram());
+      }
+    }
+  }
+}
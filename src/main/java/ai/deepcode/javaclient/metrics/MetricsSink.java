@@ -0,0 +1,50 @@
+package ai.deepcode.javaclient.metrics;
+
+import ai.deepcode.javaclient.Endpoint;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receiver of network metrics collected by {@link ai.deepcode.javaclient.DeepCodeRestClient}.
+ * Methods are called from request threads (including OkHttp dispatcher threads) and should be
+ * cheap and thread-safe.
+ *
+ * @see InMemoryMetricsSink
+ */
+public interface MetricsSink {
+
+  enum Phase {
+    /** Host name resolution, only when new connection is established. */
+    DNS,
+    /** TCP connect including TLS handshake, only when new connection is established. */
+    CONNECT,
+    /** TLS handshake, only when new secure connection is established. */
+    TLS,
+    /** From the request fully sent till response headers start to arrive. */
+    TTFB,
+    /**
+     * Whole single attempt including reading of response body, every retry is recorded separately.
+     */
+    TOTAL
+  }
+
+  /** No-op sink. */
+  MetricsSink NONE =
+      new MetricsSink() {
+        @Override
+        public void recordLatency(@NotNull Endpoint endpoint, @NotNull Phase phase, long nanos) {}
+
+        @Override
+        public void recordBytes(@NotNull Endpoint endpoint, long requestBytes, long responseBytes) {}
+
+        @Override
+        public void recordStatus(@NotNull Endpoint endpoint, int statusCode) {}
+      };
+
+  void recordLatency(@NotNull Endpoint endpoint, @NotNull Phase phase, long nanos);
+
+  /** Bytes of request and response bodies as sent/received, i.e. compressed ones. */
+  void recordBytes(@NotNull Endpoint endpoint, long requestBytes, long responseBytes);
+
+  /** Status code of every received response, {@code 0} for network errors. */
+  void recordStatus(@NotNull Endpoint endpoint, int statusCode);
+}
@@ -0,0 +1,140 @@
+package ai.deepcode.javaclient.requests;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Streaming alternative to {@code List<FileHash2ContentRequest>} for UploadFiles request.
+ *
+ * <p>JSON array {@code [{"fileHash":"..","fileContent":".."},...]} is written directly to the
+ * network sink, content of every file is requested lazily one by one while writing. So neither
+ * whole chunk of file contents nor serialized payload is built in memory. Body could be written
+ * several times (i.e. on retry) - content is requested anew for every write.
+ *
+ * @param <F> type of file objects
+ */
+public final class FileHash2ContentRequestBody<F> extends RequestBody {
+
+  private static final MediaType JSON = MediaType.get("application/json;charset=utf-8");
+  private static final int BUFFER_SIZE = 8192; // chars
+
+  @FunctionalInterface
+  public interface ContentReader<F> {
+    @NotNull
+    Reader open(@NotNull F file) throws IOException;
+  }
+
+  private final List<F> files;
+  private final Function<F, String> fileHash;
+  private final ContentReader<F> fileContent;
+
+  /**
+   * @param files files to upload
+   * @param fileHash provides hash of the file
+   * @param fileContent provides content of the file, reader will be closed after use
+   */
+  public FileHash2ContentRequestBody(
+      @NotNull Collection<F> files,
+      @NotNull Function<F, String> fileHash,
+      @NotNull ContentReader<F> fileContent) {
+    this.files = new ArrayList<>(files);
+    this.fileHash = fileHash;
+    this.fileContent = fileContent;
+  }
+
+  @NotNull
+  public List<F> getFiles() {
+    return files;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  @Override
+  public void writeTo(@NotNull BufferedSink sink) throws IOException {
+    sink.writeByte('[');
+    boolean first = true;
+    for (F file : files) {
+      if (!first) sink.writeByte(',');
+      first = false;
+      sink.writeUtf8("{\"fileHash\":");
+      writeJsonString(sink, fileHash.apply(file));
+      sink.writeUtf8(",\"fileContent\":");
+      try (Reader reader = fileContent.open(file)) {
+        writeJsonString(sink, reader);
+      }
+      sink.writeByte('}');
+    }
+    sink.writeByte(']');
+  }
+
+  private static void writeJsonString(@NotNull BufferedSink sink, @NotNull String value)
+      throws IOException {
+    sink.writeByte('"');
+    writeEscaped(sink, value);
+    sink.writeByte('"');
+  }
+
+  private static void writeJsonString(@NotNull BufferedSink sink, @NotNull Reader reader)
+      throws IOException {
+    sink.writeByte('"');
+    final char[] buffer = new char[BUFFER_SIZE];
+    int offset = 0; // high surrogate carried over from the previous read
+    int read;
+    while ((read = reader.read(buffer, offset, buffer.length - offset)) != -1) {
+      final int end = offset + read;
+      // keep surrogate pair together, otherwise it would be encoded as two broken chars
+      final boolean splitSurrogate = end > 0 && Character.isHighSurrogate(buffer[end - 1]);
+      final int writeEnd = splitSurrogate ? end - 1 : end;
+      writeEscaped(sink, new String(buffer, 0, writeEnd));
+      if (splitSurrogate) {
+        buffer[0] = buffer[end - 1];
+        offset = 1;
+      } else {
+        offset = 0;
+      }
+    }
+    if (offset > 0) writeEscaped(sink, new String(buffer, 0, offset));
+    sink.writeByte('"');
+  }
+
+  private static void writeEscaped(@NotNull BufferedSink sink, @NotNull String value)
+      throws IOException {
+    int last = 0;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      final String replacement;
+      if (c == '"') {
+        replacement = "\\\"";
+      } else if (c == '\\') {
+        replacement = "\\\\";
+      } else if (c == '\n') {
+        replacement = "\\n";
+      } else if (c == '\r') {
+        replacement = "\\r";
+      } else if (c == '\t') {
+        replacement = "\\t";
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        replacement = String.format("\\u%04x", (int) c);
+      } else {
+        continue;
+      }
+      if (last < i) sink.writeUtf8(value, last, i);
+      sink.writeUtf8(replacement);
+      last = i + 1;
+    }
+    if (last < length) sink.writeUtf8(value, last, length);
+  }
+}
@@ -0,0 +1,18 @@
+package ai.deepcode.javaclient.responses;
+
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Consumer of {@code analysisResults} JSON object of GetAnalysis response, called while response
+ * is being read from the network. Lets to build own result structures in one pass, without
+ * intermediate {@link AnalysisResults} tree.
+ */
+@FunctionalInterface
+public interface AnalysisResultsReader {
+
+  /** Should consume whole {@code analysisResults} object value the reader is positioned at. */
+  void read(@NotNull JsonReader reader) throws IOException;
+}
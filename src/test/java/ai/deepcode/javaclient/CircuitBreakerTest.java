@@ -0,0 +1,104 @@
+package ai.deepcode.javaclient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+  private static final long OPEN_MILLIS = 100;
+
+  @Test
+  public void opensAfterThresholdAndClosesAfterSuccessfulProbe() throws InterruptedException {
+    final CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    final List<String> transitions = new ArrayList<>();
+    breaker.addListener((oldState, newState) -> transitions.add(oldState + "->" + newState));
+
+    failRequest(breaker);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.isServerAvailable());
+    failRequest(breaker);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.isServerAvailable());
+    assertFalse("Requests should fail fast while open", breaker.tryAcquire());
+
+    Thread.sleep(OPEN_MILLIS * 2);
+    // still OPEN, but callers should be allowed to send the probe
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertTrue(breaker.isServerAvailable());
+
+    assertTrue("Probe should go out", breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertFalse("Only one probe at a time", breaker.isServerAvailable());
+    assertFalse("Only one probe at a time", breaker.tryAcquire());
+
+    breaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.isServerAvailable());
+    assertTrue(breaker.tryAcquire());
+    assertEquals(
+        Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+  }
+
+  @Test
+  public void failedProbeOpensAgain() throws InterruptedException {
+    final CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    failRequest(breaker);
+    Thread.sleep(OPEN_MILLIS * 2);
+    assertTrue(breaker.tryAcquire());
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.isServerAvailable());
+  }
+
+  @Test
+  public void cancelledProbeLetsNextProbeGo() throws InterruptedException {
+    final CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    failRequest(breaker);
+    Thread.sleep(OPEN_MILLIS * 2);
+    assertTrue(breaker.tryAcquire());
+    breaker.onCancel();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.isServerAvailable());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void copyIsClosedWithSameSettingsAndNoListeners() {
+    final CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    final List<String> transitions = new ArrayList<>();
+    breaker.addListener((oldState, newState) -> transitions.add(oldState + "->" + newState));
+    failRequest(breaker);
+    failRequest(breaker);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    final CircuitBreaker copy = breaker.copy();
+    assertEquals(CircuitBreaker.State.CLOSED, copy.getState());
+    failRequest(copy);
+    assertEquals(CircuitBreaker.State.CLOSED, copy.getState());
+    failRequest(copy);
+    assertEquals(CircuitBreaker.State.OPEN, copy.getState());
+    assertEquals(Arrays.asList("CLOSED->OPEN"), transitions);
+  }
+
+  @Test
+  public void clientForAnotherServerHasOwnBreaker() {
+    final DeepCodeRestClient client =
+        DeepCodeRestClient.newBuilder().baseUrl("http://localhost:1/").build();
+    final CircuitBreaker breaker = client.getCircuitBreaker();
+    final CircuitBreaker otherBreaker =
+        client.withBaseUrl("http://localhost:2/").getCircuitBreaker();
+    assertNotSame(breaker, otherBreaker);
+    assertSame(breaker, client.getCircuitBreaker());
+  }
+
+  private static void failRequest(CircuitBreaker breaker) {
+    assertTrue(breaker.tryAcquire());
+    breaker.onFailure();
+  }
+}
@@ -5,6 +5,8 @@ package ai.deepcode.javaclient;
 
 import ai.deepcode.javaclient.requests.*;
 import ai.deepcode.javaclient.responses.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
@@ -15,6 +17,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -35,13 +38,34 @@ public class DeepCodeRestApiTest {
           + "}\n";
 
   // !!! Will works only with already logged sessionToken
-  private static final String loggedToken = System.getenv("DEEPCODE_API_KEY");
+  private static String loggedToken = System.getenv("DEEPCODE_API_KEY");
   private final String deepcodedLoggedToken = System.getenv("DEEPCODE_API_KEY_STAGING");
 
+  // Without DEEPCODE_API_KEY tests run against local mock server instead of deepcode.ai
+  private static MockDeepCodeServer mockServer = null;
+  private static String baseUrl = "";
+
   private static String bundleId = null;
 
   private static String userAgent = "Java-client-Test";
 
+  @BeforeClass
+  public static void startMockServer() throws IOException {
+    if (loggedToken != null) return;
+    mockServer = new MockDeepCodeServer().start();
+    baseUrl = mockServer.getBaseUrl();
+    DeepCodeRestApi.setBaseUrl(baseUrl);
+    loggedToken = mockServer.newLoggedToken();
+    System.out.println("DEEPCODE_API_KEY is not set, running against mock server: " + baseUrl);
+  }
+
+  @AfterClass
+  public static void stopMockServer() throws IOException {
+    if (mockServer == null) return;
+    DeepCodeRestApi.setBaseUrl("");
+    mockServer.close();
+  }
+
   @Test
   public void _010_newLogin() {
     System.out.println("\n--------------New Login----------------\n");
@@ -90,12 +114,18 @@ public class DeepCodeRestApiTest {
   public void _022_setBaseUrl() {
     System.out.println("\n--------------Set base URL----------------\n");
     try {
-      doSetBaseUrlTest("", "blabla", 401);
-      doSetBaseUrlTest("https://www.google.com/", "blabla", 404);
-      doSetBaseUrlTest("https://www.deepcoded.com/", "blabla", 401);
-      doSetBaseUrlTest("https://www.deepcoded.com/", deepcodedLoggedToken, 200);
+      if (mockServer != null) {
+        doSetBaseUrlTest(baseUrl, "blabla", 401);
+        doSetBaseUrlTest(baseUrl + "wrong/", "blabla", 404);
+        doSetBaseUrlTest(baseUrl, loggedToken, 200);
+      } else {
+        doSetBaseUrlTest("", "blabla", 401);
+        doSetBaseUrlTest("https://www.google.com/", "blabla", 404);
+        doSetBaseUrlTest("https://www.deepcoded.com/", "blabla", 401);
+        doSetBaseUrlTest("https://www.deepcoded.com/", deepcodedLoggedToken, 200);
+      }
     } finally {
-      DeepCodeRestApi.setBaseUrl("");
+      DeepCodeRestApi.setBaseUrl(baseUrl);
     }
   }
 
@@ -416,6 +446,54 @@ public class DeepCodeRestApiTest {
             DeepCodeRestApi.getAnalysis(loggedToken, bundleId, 2, false));
   }
 
+  @Test
+  public void _095_getAnalysis_streaming() throws InterruptedException {
+    System.out.println("\n--------------Get Analysis streaming----------------\n");
+    assertNotNull(
+        "`bundleId` should be initialized at `_030_createBundle_from_source()`", bundleId);
+    GetAnalysisResponse response;
+    int attempts = 0;
+    do {
+      if (attempts > 0) Thread.sleep(500);
+      response = DeepCodeRestApi.getAnalysis(loggedToken, bundleId, null, false);
+      assertEquals("Get Analysis request not succeed", 200, response.getStatusCode());
+    } while (!response.getStatus().equals("DONE") && attempts++ < 100);
+    assertEquals("DONE", response.getStatus());
+    assertNotNull(response.getAnalysisResults());
+    final int expectedFiles = response.getAnalysisResults().getFiles().size();
+
+    final List<String> streamedFiles = new ArrayList<>();
+    GetAnalysisResponse streamedResponse =
+        DeepCodeRestApi.getAnalysis(
+            loggedToken,
+            bundleId,
+            null,
+            false,
+            reader -> {
+              reader.beginObject();
+              while (reader.hasNext()) {
+                if (reader.nextName().equals("files")) {
+                  reader.beginObject();
+                  while (reader.hasNext()) {
+                    streamedFiles.add(reader.nextName());
+                    reader.skipValue();
+                  }
+                  reader.endObject();
+                } else {
+                  reader.skipValue();
+                }
+              }
+              reader.endObject();
+            });
+    System.out.printf(
+        "Streaming Get Analysis call returns Status code: %1$s \nfiles with suggestions: %2$s\n",
+        streamedResponse.getStatusCode(), streamedFiles);
+    assertEquals(200, streamedResponse.getStatusCode());
+    assertEquals("DONE", streamedResponse.getStatus());
+    assertNull(streamedResponse.getAnalysisResults());
+    assertEquals(expectedFiles, streamedFiles.size());
+  }
+
   private void assertAndPrintGetAnalysisResponse(GetAnalysisResponse response) {
     assertNotNull(response);
     System.out.printf(
@@ -0,0 +1,108 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.requests.FileHash2ContentRequestBody;
+import ai.deepcode.javaclient.responses.EmptyResponse;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GzipRequestInterceptorTest {
+
+  private static final String CONTENT = String.join("\n", Collections.nCopies(1000, "line"));
+  private static final String JSON =
+      "[{\"fileHash\":\"hash\",\"fileContent\":\"" + CONTENT.replace("\n", "\\n") + "\"}]";
+
+  private MockWebServer server;
+  private DeepCodeRestClient client;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    client =
+        DeepCodeRestClient.newBuilder()
+            .baseUrl(server.url("/").toString())
+            .gzipRequests(Endpoint.FILE_UPLOAD)
+            .retryPolicy(RetryPolicy.newBuilder().maxAttempts(1).build())
+            .circuitBreaker(CircuitBreaker.disabled())
+            .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void bodyIsCompressedWhileSent() throws Exception {
+    server.enqueue(new MockResponse());
+    assertEquals(200, upload().getStatusCode());
+
+    final RecordedRequest request = takeRequest();
+    assertEquals("gzip", request.getHeader("Content-Encoding"));
+    // length is not known before compression
+    assertNull(request.getHeader("Content-Length"));
+    assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+    assertEquals(JSON, gunzip(request.getBody()));
+
+    final CompressionStats stats = client.getCompressionStats();
+    assertEquals(1, stats.getRequests());
+    assertEquals(JSON.length(), stats.getRawBytes());
+    assertTrue(stats.getCompressedBytes() < stats.getRawBytes() / 10);
+  }
+
+  @Test
+  public void originalBodyIsSentIfCompressionIsNotSupported() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(415));
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    assertEquals(200, upload().getStatusCode());
+
+    assertEquals("gzip", takeRequest().getHeader("Content-Encoding"));
+    final RecordedRequest repeated = takeRequest();
+    assertNull(repeated.getHeader("Content-Encoding"));
+    assertEquals(JSON, repeated.getBody().readUtf8());
+
+    // compression is switched off for the endpoint
+    assertEquals(200, upload().getStatusCode());
+    final RecordedRequest next = takeRequest();
+    assertNull(next.getHeader("Content-Encoding"));
+    assertEquals(JSON, next.getBody().readUtf8());
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @NotNull
+  private EmptyResponse upload() {
+    return client.uploadFiles(
+        "token",
+        "bundle",
+        new FileHash2ContentRequestBody<>(
+            Collections.singletonList("file"), file -> "hash", file -> new StringReader(CONTENT)));
+  }
+
+  @NotNull
+  private RecordedRequest takeRequest() throws InterruptedException {
+    final RecordedRequest request = server.takeRequest(10, TimeUnit.SECONDS);
+    assertNotNull(request);
+    return request;
+  }
+
+  @NotNull
+  private static String gunzip(@NotNull Buffer body) throws IOException {
+    return Okio.buffer(new GzipSource(body)).readUtf8();
+  }
+}
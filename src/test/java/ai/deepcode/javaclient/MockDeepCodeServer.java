@@ -0,0 +1,575 @@
+package ai.deepcode.javaclient;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ServerSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for DeepCode server implementing {@code publicapi/} endpoints used by {@link
+ * DeepCodeRestApi}:
+ *
+ * <ul>
+ *   <li>{@code login}/{@code session}: new tokens are pending until {@link #confirmLogin}, tokens
+ *       from {@link #newLoggedToken()} are logged right away;
+ *   <li>{@code bundle}: bundleId is a hash of file paths and hashes, {@code missingFiles} are files
+ *       which content was not uploaded yet, bundles expire after {@link #setBundleTtl};
+ *   <li>{@code file}: content is checked against its hash, gzip-encoded bodies are accepted;
+ *   <li>{@code analysis}: progress grows with time till {@link #setAnalysisDuration} passed, then
+ *       synthetic suggestions are returned for every file.
+ * </ul>
+ *
+ * Latency, error rates and result sizes are configurable and could be changed at any time.
+ */
+public final class MockDeepCodeServer implements Closeable {
+
+  private static final String API_PATH = "/publicapi/";
+  private static final Gson gson = new Gson();
+  // strong reference, otherwise level setting could be lost with garbage collected logger
+  private static final Logger mockWebServerLogger = Logger.getLogger(MockWebServer.class.getName());
+
+  static {
+    // MockWebServer logs every request
+    mockWebServerLogger.setLevel(Level.WARNING);
+  }
+
+  private final MockWebServer server = new MockWebServer();
+
+  private final Map<String, Boolean> sessions = new ConcurrentHashMap<>(); // token -> logged
+  private final Map<String, String> contents = new ConcurrentHashMap<>(); // hash -> content
+  private final Map<String, Bundle> bundles = new ConcurrentHashMap<>();
+  private volatile String lastBundleId = "";
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  private volatile long latencyMillis = 0;
+  private volatile double errorRate = 0;
+  private volatile double disconnectRate = 0;
+  private volatile long analysisDurationMillis = 300;
+  private volatile long bundleTtlMillis = TimeUnit.HOURS.toMillis(1);
+  private volatile int suggestionsPerFile = 2;
+  private volatile int markersPerSuggestion = 1;
+
+  private static final class Bundle {
+    private final Map<String, String> files; // path -> hash
+    private final long createdMillis = System.currentTimeMillis();
+    private volatile long analysisStartMillis = 0;
+
+    private Bundle(@NotNull Map<String, String> files) {
+      this.files = files;
+    }
+  }
+
+  public MockDeepCodeServer() {
+    server.setServerSocketFactory(new NoDelayServerSocketFactory());
+    server.setDispatcher(
+        new Dispatcher() {
+          @NotNull
+          @Override
+          public MockResponse dispatch(@NotNull RecordedRequest request) {
+            // MockWebServer keeps every request in memory, drop them to run long benchmarks
+            try {
+              server.takeRequest(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return MockDeepCodeServer.this.dispatch(request);
+          }
+        });
+  }
+
+  /**
+   * MockWebServer writes headers and body separately: with Nagle's algorithm the body waits for
+   * delayed ACK (~40ms) from the client.
+   */
+  private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+      return new ServerSocket() {
+        @Override
+        public Socket accept() throws IOException {
+          final Socket socket = super.accept();
+          socket.setTcpNoDelay(true);
+          return socket;
+        }
+      };
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+      return createServerSocket(port, 0, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+      return createServerSocket(port, backlog, null);
+    }
+
+    /** {@code backlog} below 1 is the default one, {@code ifAddress} <b>null</b> is any address */
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, @Nullable InetAddress ifAddress)
+        throws IOException {
+      final ServerSocket serverSocket = createServerSocket();
+      try {
+        serverSocket.bind(new InetSocketAddress(ifAddress, port), backlog);
+      } catch (IOException e) {
+        serverSocket.close();
+        throw e;
+      }
+      return serverSocket;
+    }
+  }
+
+  @NotNull
+  public MockDeepCodeServer start() throws IOException {
+    server.start();
+    return this;
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+
+  /** @return base url to be used with {@link DeepCodeRestApi#setBaseUrl} */
+  @NotNull
+  public String getBaseUrl() {
+    return server.url("/").toString();
+  }
+
+  /** @return session token of already logged user */
+  @NotNull
+  public String newLoggedToken() {
+    final String token = UUID.randomUUID().toString();
+    sessions.put(token, true);
+    return token;
+  }
+
+  /** Emulate user finishing login in browser. */
+  public void confirmLogin(@NotNull String token) {
+    sessions.replace(token, true);
+  }
+
+  /** Make all bundles unknown for the server, as if they expired. */
+  public void expireBundles() {
+    bundles.clear();
+  }
+
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  public int getStoredFilesCount() {
+    return contents.size();
+  }
+
+  /** @return file paths of the bundle, empty if bundle is unknown or expired */
+  @NotNull
+  public Set<String> getBundlePaths(@NotNull String bundleId) {
+    return getBundleFiles(bundleId).keySet();
+  }
+
+  /** @return file path to hash of the bundle, empty if bundle is unknown or expired */
+  @NotNull
+  public Map<String, String> getBundleFiles(@NotNull String bundleId) {
+    final Bundle bundle = getBundle(bundleId);
+    return (bundle == null) ? Collections.emptyMap() : new HashMap<>(bundle.files);
+  }
+
+  /** @return id of the bundle created or extended last */
+  @NotNull
+  public String getLastBundleId() {
+    return lastBundleId;
+  }
+
+  /** Delay before every response. */
+  public MockDeepCodeServer setLatency(long latency, @NotNull TimeUnit unit) {
+    latencyMillis = unit.toMillis(latency);
+    return this;
+  }
+
+  /** Share of requests answered with 503. */
+  public MockDeepCodeServer setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /** Share of requests with connection dropped before any response. */
+  public MockDeepCodeServer setDisconnectRate(double disconnectRate) {
+    this.disconnectRate = disconnectRate;
+    return this;
+  }
+
+  public MockDeepCodeServer setAnalysisDuration(long duration, @NotNull TimeUnit unit) {
+    analysisDurationMillis = unit.toMillis(duration);
+    return this;
+  }
+
+  public MockDeepCodeServer setBundleTtl(long ttl, @NotNull TimeUnit unit) {
+    bundleTtlMillis = unit.toMillis(ttl);
+    return this;
+  }
+
+  /** Size of analysis results. */
+  public MockDeepCodeServer setResultSize(int suggestionsPerFile, int markersPerSuggestion) {
+    this.suggestionsPerFile = suggestionsPerFile;
+    this.markersPerSuggestion = markersPerSuggestion;
+    return this;
+  }
+
+  @NotNull
+  private MockResponse dispatch(@NotNull RecordedRequest request) {
+    requestCount.incrementAndGet();
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (random.nextDouble() < disconnectRate) {
+      return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+    }
+    final MockResponse response;
+    if (random.nextDouble() < errorRate) {
+      response = new MockResponse().setResponseCode(503);
+    } else {
+      response = route(request);
+    }
+    return response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @NotNull
+  private MockResponse route(@NotNull RecordedRequest request) {
+    final String path = Objects.requireNonNull(request.getRequestUrl()).encodedPath();
+    if (!path.startsWith(API_PATH)) return status(404);
+    final String[] segments = path.substring(API_PATH.length()).split("/", 2);
+    final String endpoint = segments[0];
+    final String bundleId = (segments.length > 1) ? segments[1] : null;
+    final String method = request.getMethod();
+
+    if (endpoint.equals("login") && "POST".equals(method)) return login();
+    final Boolean logged = sessions.get(String.valueOf(request.getHeader("Session-Token")));
+    if (endpoint.equals("session") && "GET".equals(method)) {
+      if (logged == null) return status(401);
+      return status(logged ? 200 : 304);
+    }
+    if (logged == null || !logged) return status(401);
+
+    final JsonElement body;
+    try {
+      body = readBody(request);
+    } catch (IOException | RuntimeException e) {
+      return status(400);
+    }
+    switch (endpoint) {
+      case "filters":
+        return json(filters());
+      case "bundle":
+        if ("POST".equals(method) && bundleId == null) return createBundle(body);
+        if ("GET".equals(method) && bundleId != null) return checkBundle(bundleId);
+        if ("PUT".equals(method) && bundleId != null) return extendBundle(bundleId, body);
+        return status(404);
+      case "file":
+        if ("POST".equals(method) && bundleId != null) return uploadFiles(bundleId, body);
+        return status(404);
+      case "analysis":
+        if ("GET".equals(method) && bundleId != null) {
+          final String severity = request.getRequestUrl().queryParameter("severity");
+          return getAnalysis(bundleId, (severity == null) ? 1 : Integer.parseInt(severity));
+        }
+        return status(404);
+      default:
+        return status(404);
+    }
+  }
+
+  @Nullable
+  private static JsonElement readBody(@NotNull RecordedRequest request) throws IOException {
+    if (request.getBodySize() <= 0) return null;
+    Buffer body = request.getBody();
+    if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+      final Buffer unzipped = new Buffer();
+      try (GzipSource gzipSource = new GzipSource(body)) {
+        while (gzipSource.read(unzipped, Long.MAX_VALUE) != -1) {
+          // read all
+        }
+      }
+      body = unzipped;
+    }
+    return new JsonParser().parse(body.readUtf8());
+  }
+
+  @NotNull
+  private MockResponse login() {
+    final String token = UUID.randomUUID().toString();
+    sessions.put(token, false);
+    final Map<String, String> result = new HashMap<>();
+    result.put("sessionToken", token);
+    result.put("loginURL", getBaseUrl() + "login-api?sessionToken=" + token);
+    return json(result);
+  }
+
+  @NotNull
+  private static Map<String, Object> filters() {
+    final Map<String, Object> result = new HashMap<>();
+    result.put("extensions", Arrays.asList(".java", ".js", ".ts", ".py"));
+    result.put("configFiles", Arrays.asList(".eslintrc.json", ".pylintrc"));
+    return result;
+  }
+
+  @NotNull
+  private MockResponse createBundle(@Nullable JsonElement body) {
+    if (body == null || !body.isJsonObject()) return status(400);
+    final JsonElement files = body.getAsJsonObject().get("files");
+    final Map<String, String> path2hash = new TreeMap<>();
+    if (files != null && files.isJsonObject()) {
+      // FileHashRequest: {"files": {"path": "hash"}}
+      for (Map.Entry<String, JsonElement> entry : files.getAsJsonObject().entrySet()) {
+        path2hash.put(entry.getKey(), entry.getValue().getAsString());
+      }
+    } else if (files != null && files.isJsonArray()) {
+      // FileContentRequest: {"files": [{"filePath": "..", "fileContent": ".."}]}
+      for (JsonElement file : files.getAsJsonArray()) {
+        final JsonObject fileObject = file.getAsJsonObject();
+        final String content = fileObject.get("fileContent").getAsString();
+        final String hash = sha256(content);
+        contents.put(hash, content);
+        path2hash.put(fileObject.get("filePath").getAsString(), hash);
+      }
+    } else {
+      return status(400);
+    }
+    return bundleResponse(putBundle(path2hash));
+  }
+
+  @NotNull
+  private MockResponse checkBundle(@NotNull String bundleId) {
+    return (getBundle(bundleId) == null) ? status(404) : bundleResponse(bundleId);
+  }
+
+  @NotNull
+  private MockResponse extendBundle(@NotNull String bundleId, @Nullable JsonElement body) {
+    final Bundle parent = getBundle(bundleId);
+    if (parent == null) return status(404);
+    if (body == null || !body.isJsonObject()) return status(400);
+    final JsonObject request = body.getAsJsonObject();
+    final Map<String, String> path2hash = new TreeMap<>(parent.files);
+    final JsonElement removedFiles = request.get("removedFiles");
+    if (removedFiles != null && removedFiles.isJsonArray()) {
+      for (JsonElement removed : removedFiles.getAsJsonArray()) {
+        path2hash.remove(removed.getAsString());
+      }
+    }
+    final JsonElement files = request.get("files");
+    if (files != null && files.isJsonObject()) {
+      for (Map.Entry<String, JsonElement> entry : files.getAsJsonObject().entrySet()) {
+        path2hash.put(entry.getKey(), entry.getValue().getAsString());
+      }
+    }
+    return bundleResponse(putBundle(path2hash));
+  }
+
+  @NotNull
+  private MockResponse uploadFiles(@NotNull String bundleId, @Nullable JsonElement body) {
+    if (getBundle(bundleId) == null) return status(404);
+    if (body == null || !body.isJsonArray()) return status(400);
+    for (JsonElement file : body.getAsJsonArray()) {
+      final JsonObject fileObject = file.getAsJsonObject();
+      final String hash = fileObject.get("fileHash").getAsString();
+      final String content = fileObject.get("fileContent").getAsString();
+      if (!hash.equals(sha256(content))) return status(400);
+      contents.put(hash, content);
+    }
+    return status(200);
+  }
+
+  @NotNull
+  private MockResponse getAnalysis(@NotNull String bundleId, int minSeverity) {
+    final Bundle bundle = getBundle(bundleId);
+    if (bundle == null) return status(404);
+    final long now = System.currentTimeMillis();
+    if (bundle.analysisStartMillis == 0) bundle.analysisStartMillis = now;
+
+    final JsonObject result = new JsonObject();
+    result.addProperty("analysisURL", getBaseUrl() + "app/" + bundleId);
+    if (!getMissingFiles(bundle).isEmpty()) {
+      result.addProperty("status", "FAILED");
+      result.addProperty("progress", 0);
+      return json(result);
+    }
+    final long elapsed = now - bundle.analysisStartMillis;
+    if (elapsed < analysisDurationMillis) {
+      result.addProperty("status", "ANALYZING");
+      result.addProperty("progress", (double) elapsed / analysisDurationMillis);
+      return json(result);
+    }
+    result.addProperty("status", "DONE");
+    result.addProperty("progress", 1.0);
+    result.add("analysisResults", analysisResults(bundle, minSeverity));
+    return json(result);
+  }
+
+  /** Deterministic suggestions: kind and position depend on file hash only. */
+  @NotNull
+  private JsonObject analysisResults(@NotNull Bundle bundle, int minSeverity) {
+    final int suggestionsPerFile = this.suggestionsPerFile;
+    final int markersPerSuggestion = this.markersPerSuggestion;
+    final int kinds = Math.max(1, suggestionsPerFile * 2);
+    final JsonObject suggestions = new JsonObject();
+    for (int kind = 0; kind < kinds; kind++) {
+      final int severity = kind % 3 + 1;
+      if (severity < minSeverity) continue;
+      final JsonObject suggestion = new JsonObject();
+      suggestion.addProperty("id", "mock/suggestion" + kind);
+      suggestion.addProperty("rule", "suggestion" + kind);
+      suggestion.addProperty("message", "Mock suggestion " + kind + " found here.");
+      suggestion.addProperty("severity", severity);
+      suggestion.addProperty("repoDatasetSize", kind * 10);
+      suggestion.add("exampleCommitFixes", new JsonArray());
+      suggestions.add(String.valueOf(kind), suggestion);
+    }
+
+    final JsonObject files = new JsonObject();
+    for (Map.Entry<String, String> file : bundle.files.entrySet()) {
+      final String[] lines = contents.getOrDefault(file.getValue(), "").split("\n", -1);
+      final int seed = file.getValue().hashCode() & Integer.MAX_VALUE;
+      final JsonObject fileSuggestions = new JsonObject();
+      for (int i = 0; i < suggestionsPerFile; i++) {
+        final String kind = String.valueOf((seed + i) % kinds);
+        if (!suggestions.has(kind)) continue;
+        final int row = (seed + i * 7) % lines.length + 1;
+        final int lineLength = lines[row - 1].length();
+        final JsonObject position = position(row, 1, Math.max(1, lineLength));
+        final JsonArray markers = new JsonArray();
+        for (int m = 0; m < markersPerSuggestion; m++) {
+          final JsonObject marker = new JsonObject();
+          marker.add("msg", pair(m * 5, m * 5 + 3));
+          final JsonArray markerPositions = new JsonArray();
+          markerPositions.add(position(row, 1, Math.max(1, Math.min(lineLength, 3))));
+          marker.add("pos", markerPositions);
+          markers.add(marker);
+        }
+        position.add("markers", markers);
+        final JsonArray positions = new JsonArray();
+        positions.add(position);
+        fileSuggestions.add(kind, positions);
+      }
+      if (fileSuggestions.size() > 0) files.add(file.getKey(), fileSuggestions);
+    }
+
+    final JsonObject analysisResults = new JsonObject();
+    analysisResults.add("files", files);
+    analysisResults.add("suggestions", suggestions);
+    return analysisResults;
+  }
+
+  @NotNull
+  private static JsonObject position(int row, int startCol, int endCol) {
+    final JsonObject position = new JsonObject();
+    position.add("rows", pair(row, row));
+    position.add("cols", pair(startCol, endCol));
+    return position;
+  }
+
+  @NotNull
+  private static JsonArray pair(int first, int second) {
+    final JsonArray pair = new JsonArray();
+    pair.add(first);
+    pair.add(second);
+    return pair;
+  }
+
+  @NotNull
+  private String putBundle(@NotNull Map<String, String> path2hash) {
+    final StringBuilder builder = new StringBuilder();
+    path2hash.forEach((path, hash) -> builder.append(path).append(':').append(hash).append('\n'));
+    final String bundleId = sha256(builder.toString());
+    bundles.compute(
+        bundleId,
+        (id, existing) ->
+            (existing == null || isExpired(existing)) ? new Bundle(path2hash) : existing);
+    lastBundleId = bundleId;
+    return bundleId;
+  }
+
+  @Nullable
+  private Bundle getBundle(@NotNull String bundleId) {
+    final Bundle bundle = bundles.get(bundleId);
+    if (bundle == null || isExpired(bundle)) return null;
+    return bundle;
+  }
+
+  private boolean isExpired(@NotNull Bundle bundle) {
+    return System.currentTimeMillis() - bundle.createdMillis > bundleTtlMillis;
+  }
+
+  @NotNull
+  private List<String> getMissingFiles(@NotNull Bundle bundle) {
+    final List<String> missingFiles = new ArrayList<>();
+    bundle.files.forEach(
+        (path, hash) -> {
+          if (!contents.containsKey(hash)) missingFiles.add(path);
+        });
+    return missingFiles;
+  }
+
+  @NotNull
+  private MockResponse bundleResponse(@NotNull String bundleId) {
+    final Bundle bundle = Objects.requireNonNull(bundles.get(bundleId));
+    final Map<String, Object> result = new HashMap<>();
+    result.put("bundleId", bundleId);
+    result.put("missingFiles", getMissingFiles(bundle));
+    result.put("uploadURL", getBaseUrl() + "publicapi/file/" + bundleId);
+    return json(result);
+  }
+
+  @NotNull
+  private static MockResponse json(@NotNull Object body) {
+    return new MockResponse()
+        .setHeader("Content-Type", "application/json; charset=utf-8")
+        .setBody(gson.toJson(body));
+  }
+
+  @NotNull
+  private static MockResponse status(int code) {
+    return new MockResponse().setResponseCode(code);
+  }
+
+  @NotNull
+  static String sha256(@NotNull String content) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    final byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+    final StringBuilder hex = new StringBuilder();
+    for (byte b : hash) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
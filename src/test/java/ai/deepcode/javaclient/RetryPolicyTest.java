@@ -0,0 +1,190 @@
+package ai.deepcode.javaclient;
+
+import ai.deepcode.javaclient.responses.EmptyResponse;
+import ai.deepcode.javaclient.responses.LoginResponse;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/** {@link RetryPolicy} applied by {@link DeepCodeRestClient} to blocking and async calls. */
+public class RetryPolicyTest {
+
+  private static final RetryPolicy FAST_RETRIES =
+      RetryPolicy.newBuilder()
+          .maxAttempts(3)
+          .backoff(1, 10, TimeUnit.MILLISECONDS, 2)
+          .retryBudget(100, 1)
+          .build();
+
+  private MockDeepCodeServer mockServer;
+  private MockWebServer webServer;
+
+  @Before
+  public void setUp() throws IOException {
+    mockServer = new MockDeepCodeServer().start();
+    webServer = new MockWebServer();
+    webServer.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    mockServer.close();
+    webServer.shutdown();
+  }
+
+  @NotNull
+  private static DeepCodeRestClient newClient(
+      @NotNull String baseUrl, @NotNull RetryPolicy policy) {
+    return DeepCodeRestClient.newBuilder()
+        .baseUrl(baseUrl)
+        .retryPolicy(policy)
+        .circuitBreaker(CircuitBreaker.disabled())
+        .build();
+  }
+
+  @Test
+  public void idempotentCallIsRetriedAfterDisconnect() {
+    mockServer.setDisconnectRate(1);
+    final DeepCodeRestClient client = newClient(mockServer.getBaseUrl(), FAST_RETRIES);
+    assertEquals(0, client.checkSession(mockServer.newLoggedToken()).getStatusCode());
+    assertEquals(3, mockServer.getRequestCount());
+  }
+
+  @Test
+  public void nonIdempotentCallIsNotRetriedAfterDisconnect() throws Exception {
+    mockServer.setDisconnectRate(1);
+    final DeepCodeRestClient client = newClient(mockServer.getBaseUrl(), FAST_RETRIES);
+    assertEquals(0, client.newLogin("Test").getStatusCode());
+    assertEquals(1, mockServer.getRequestCount());
+    assertEquals(0, client.newLoginAsync("Test").get(10, TimeUnit.SECONDS).getStatusCode());
+    assertEquals(2, mockServer.getRequestCount());
+  }
+
+  @Test
+  public void nonIdempotentCallIsRetriedIfNotProcessed() {
+    webServer.enqueue(new MockResponse().setResponseCode(502));
+    webServer.enqueue(new MockResponse().setResponseCode(503));
+    webServer.enqueue(new MockResponse().setBody("{\"sessionToken\":\"token\"}"));
+    final DeepCodeRestClient client = newClient(webServer.url("/").toString(), FAST_RETRIES);
+    // 502: request could be processed already, 503: server refused it
+    client.newLogin("Test");
+    assertEquals(1, webServer.getRequestCount());
+    final LoginResponse response = client.newLogin("Test");
+    assertEquals(200, response.getStatusCode());
+    assertEquals("token", response.getSessionToken());
+    assertEquals(3, webServer.getRequestCount());
+  }
+
+  @Test
+  public void retriesStopWhenBudgetIsExhausted() {
+    mockServer.setErrorRate(1);
+    // retries are allowed while at least half of 4 tokens left: 2 retries in total
+    final RetryPolicy policy =
+        FAST_RETRIES.toBuilder().maxAttempts(10).retryBudget(4, 0.1).build();
+    final DeepCodeRestClient client = newClient(mockServer.getBaseUrl(), policy);
+    final String token = mockServer.newLoggedToken();
+    assertEquals(503, client.checkSession(token).getStatusCode());
+    assertEquals(3, mockServer.getRequestCount());
+    assertEquals(503, client.checkSession(token).getStatusCode());
+    assertEquals(4, mockServer.getRequestCount());
+
+    // successful responses give tokens back
+    mockServer.setErrorRate(0);
+    for (int i = 0; i < 10; i++) assertEquals(200, client.checkSession(token).getStatusCode());
+    mockServer.setErrorRate(1);
+    final int requestsBefore = mockServer.getRequestCount();
+    assertEquals(503, client.checkSession(token).getStatusCode());
+    assertEquals(requestsBefore + 2, mockServer.getRequestCount());
+  }
+
+  @Test
+  public void retryAfterIsHonored() throws Exception {
+    webServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    webServer.enqueue(new MockResponse().setResponseCode(200));
+    final DeepCodeRestClient client = newClient(webServer.url("/").toString(), FAST_RETRIES);
+    final long start = System.currentTimeMillis();
+    assertEquals(200, client.checkSession("token").getStatusCode());
+    assertTrue(System.currentTimeMillis() - start >= 1000);
+    assertEquals(2, webServer.getRequestCount());
+
+    webServer.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+    webServer.enqueue(new MockResponse().setResponseCode(200));
+    final long asyncStart = System.currentTimeMillis();
+    assertEquals(
+        200, client.checkSessionAsync("token").get(10, TimeUnit.SECONDS).getStatusCode());
+    assertTrue(System.currentTimeMillis() - asyncStart >= 1000);
+    assertEquals(4, webServer.getRequestCount());
+  }
+
+  @Test
+  public void tooLongRetryAfterIsNotWaitedFor() {
+    webServer.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+    final DeepCodeRestClient client = newClient(webServer.url("/").toString(), FAST_RETRIES);
+    final long start = System.currentTimeMillis();
+    assertEquals(503, client.checkSession("token").getStatusCode());
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertEquals(1, webServer.getRequestCount());
+  }
+
+  @Test
+  public void asyncRetryDoesNotHoldDispatcher() throws Exception {
+    final AtomicInteger delayedRequests = new AtomicInteger();
+    final CountDownLatch firstAttempt = new CountDownLatch(1);
+    webServer.setDispatcher(
+        new Dispatcher() {
+          @NotNull
+          @Override
+          public MockResponse dispatch(@NotNull RecordedRequest request) {
+            if (!"delayed".equals(request.getHeader("Session-Token"))) {
+              return new MockResponse().setResponseCode(200);
+            }
+            if (delayedRequests.incrementAndGet() > 1) return new MockResponse();
+            firstAttempt.countDown();
+            return new MockResponse().setResponseCode(503).setHeader("Retry-After", "2");
+          }
+        });
+    // single request per host, so a waiting retry would block every other call
+    final DeepCodeRestClient client =
+        DeepCodeRestClient.newBuilder()
+            .baseUrl(webServer.url("/").toString())
+            .retryPolicy(FAST_RETRIES)
+            .circuitBreaker(CircuitBreaker.disabled())
+            .maxRequestsPerHost(1)
+            .build();
+
+    final CompletableFuture<EmptyResponse> delayed = client.checkSessionAsync("delayed");
+    assertTrue(firstAttempt.await(10, TimeUnit.SECONDS));
+    final long start = System.currentTimeMillis();
+    final CompletableFuture<EmptyResponse> other = client.checkSessionAsync("other");
+    assertEquals(200, other.get(10, TimeUnit.SECONDS).getStatusCode());
+    assertTrue("Other call waited for the retry", System.currentTimeMillis() - start < 1000);
+    assertFalse(delayed.isDone());
+
+    assertEquals(200, delayed.get(10, TimeUnit.SECONDS).getStatusCode());
+    assertEquals(2, delayedRequests.get());
+  }
+
+  @Test
+  public void cancelledAsyncCallIsNotRetried() throws Exception {
+    webServer.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+    final DeepCodeRestClient client = newClient(webServer.url("/").toString(), FAST_RETRIES);
+    final CompletableFuture<EmptyResponse> future = client.checkSessionAsync("token");
+    assertNotNull(webServer.takeRequest(10, TimeUnit.SECONDS));
+    future.cancel(true);
+    Thread.sleep(1500);
+    assertEquals(1, webServer.getRequestCount());
+  }
+}
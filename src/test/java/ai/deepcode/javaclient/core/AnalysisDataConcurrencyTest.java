@@ -0,0 +1,195 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.MockDeepCodeServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/** Many projects updated concurrently by {@link AnalysisDataBase} against local mock server. */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AnalysisDataConcurrencyTest {
+
+  private static final int PROJECTS = 16;
+  private static final int FILES_PER_PROJECT = 40;
+  private static final long ANALYSIS_MILLIS = 500;
+
+  private static final Map<String, String> contents = new ConcurrentHashMap<>();
+
+  private static MockDeepCodeServer mockServer;
+  private static AnalysisDataBase analysisData;
+
+  @BeforeClass
+  public static void startMockServer() throws IOException {
+    mockServer =
+        new MockDeepCodeServer()
+            .setLatency(10, TimeUnit.MILLISECONDS)
+            .setAnalysisDuration(ANALYSIS_MILLIS, TimeUnit.MILLISECONDS)
+            .start();
+    analysisData = AnalysisDataTestUtils.newAnalysisData(mockServer, contents, null);
+  }
+
+  @AfterClass
+  public static void stopMockServer() throws IOException {
+    analysisData.dispose();
+    DeepCodeRestApi.setBaseUrl("");
+    mockServer.close();
+  }
+
+  @Test
+  public void _010_projectsAnalysedInParallel() throws Exception {
+    final List<String> projects = createProjects("parallel");
+    final long startTime = System.currentTimeMillis();
+    runConcurrently(
+        projects,
+        project ->
+            analysisData.updateCachedResultsForFiles(
+                project, projectFiles(project), Collections.emptyList(), "progress"));
+    final long took = System.currentTimeMillis() - startTime;
+
+    for (String project : projects) assertFullyAnalysed(project);
+    // every analysis takes ANALYSIS_MILLIS at least, so serialised updates would take longer
+    assertTrue(
+        "Projects seem to be analysed one by one, took " + took + " ms",
+        took < PROJECTS * ANALYSIS_MILLIS / 2);
+  }
+
+  @Test
+  public void _020_concurrentUpdatesAndRemovals() throws Exception {
+    final List<String> projects = createProjects("stress");
+    final List<String> workers = new ArrayList<>();
+    for (int i = 0; i < PROJECTS * 2; i++) workers.add(projects.get(i % PROJECTS));
+    runConcurrently(
+        workers,
+        project -> {
+          final Random random = ThreadLocalRandom.current();
+          final List<Object> files = projectFiles(project);
+          for (int i = 0; i < 5; i++) {
+            switch (random.nextInt(4)) {
+              case 0:
+                analysisData.updateCachedResultsForFiles(
+                    project, files, Collections.emptyList(), "progress");
+                break;
+              case 1:
+                Collections.shuffle(files, random);
+                analysisData.updateCachedResultsForFiles(
+                    project,
+                    files.subList(0, 2 + random.nextInt(10)),
+                    Collections.emptyList(),
+                    "progress");
+                break;
+              case 2:
+                Collections.shuffle(files, random);
+                analysisData.removeFilesFromCache(files.subList(0, random.nextInt(10)));
+                break;
+              default:
+                analysisData.removeProjectFromCaches(project);
+            }
+          }
+        });
+
+    runConcurrently(
+        projects,
+        project ->
+            analysisData.updateCachedResultsForFiles(
+                project, projectFiles(project), Collections.emptyList(), "progress"));
+    for (String project : projects) assertFullyAnalysed(project);
+  }
+
+  @Test
+  public void _030_snapshotGenerationChangesWithResultsOnly() {
+    final String project = createProjects("snapshot").get(0);
+    final List<Object> files = projectFiles(project);
+    analysisData.updateCachedResultsForFiles(project, files, Collections.emptyList(), "progress");
+    final AnalysisSnapshot analysed = analysisData.getAnalysisSnapshot(project);
+    assertTrue(analysed.getGeneration() > 0);
+    assertEquals(files.size(), analysed.size());
+
+    // all files are cached already, so results are not changed
+    analysisData.updateCachedResultsForFiles(project, files, Collections.emptyList(), "progress");
+    assertSame(analysed, analysisData.getAnalysisSnapshot(project));
+
+    analysisData.removeFilesFromCache(files.subList(0, 1));
+    final AnalysisSnapshot removed = analysisData.getAnalysisSnapshot(project);
+    assertTrue(removed.getGeneration() > analysed.getGeneration());
+    assertFalse(removed.contains(files.get(0)));
+    // published snapshot is never changed
+    assertTrue(analysed.contains(files.get(0)));
+    assertEquals(files.size(), analysed.size());
+
+    analysisData.removeProjectFromCaches(project);
+    assertEquals(0, analysisData.getAnalysisSnapshot(project).getGeneration());
+  }
+
+  @NotNull
+  private static List<String> createProjects(@NotNull String prefix) {
+    final List<String> projects = new ArrayList<>();
+    for (int p = 0; p < PROJECTS; p++) {
+      final String project = "/" + prefix + p;
+      projects.add(project);
+      for (int f = 0; f < FILES_PER_PROJECT; f++) {
+        // unique content, so projects don't share bundles on server
+        contents.put(
+            project + "/src/File" + f + ".java",
+            "public class File" + f + " {\n  String project = \"" + project + "\";\n}\n");
+      }
+    }
+    return projects;
+  }
+
+  @NotNull
+  private static List<Object> projectFiles(@NotNull String project) {
+    final List<Object> files = new ArrayList<>();
+    for (int f = 0; f < FILES_PER_PROJECT; f++) files.add(project + "/src/File" + f + ".java");
+    return files;
+  }
+
+  private static void assertFullyAnalysed(@NotNull String project) {
+    final List<Object> files = projectFiles(project);
+    for (Object file : files) {
+      assertTrue("Not analysed: " + file, analysisData.isFileInCache(file));
+    }
+    assertEquals(files.size(), analysisData.getAnalysis(files).size());
+    assertFalse(analysisData.getAllFilesWithSuggestions(project).isEmpty());
+    assertFalse(analysisData.isUpdateAnalysisInProgress(project));
+  }
+
+  /** Run {@code task} for every item in its own thread, rethrowing the first failure. */
+  private static void runConcurrently(
+      @NotNull List<String> items, @NotNull Consumer<String> task) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(items.size());
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (String item : items) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  task.accept(item);
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        try {
+          future.get(60, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          throw new AssertionError("Concurrent update failed", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.MockDeepCodeServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Project analysed, closed and reopened with persistent suggestion store. Reopened project is a
+ * new project object, as in IDE after restart.
+ */
+public class AnalysisDataRestartTest {
+
+  private static final int FILES = 10;
+
+  private final Map<String, String> contents = new ConcurrentHashMap<>();
+  private MockDeepCodeServer mockServer;
+  private Path storeFile;
+
+  @Before
+  public void setUp() throws IOException {
+    mockServer = new MockDeepCodeServer().start();
+    storeFile = Files.createTempDirectory("dc-restart").resolve("suggestions.bin");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DeepCodeRestApi.setBaseUrl("");
+    mockServer.close();
+    Files.deleteIfExists(storeFile);
+    Files.deleteIfExists(storeFile.getParent());
+  }
+
+  @Test
+  public void singleFileUpdateAfterRestartKeepsStoredBundle() throws IOException {
+    final List<Object> filesBefore = createProject("/before", FILES);
+    final AnalysisDataBase before =
+        AnalysisDataTestUtils.newAnalysisData(mockServer, contents, storeFile);
+    before.updateCachedResultsForFiles(
+        "/before", filesBefore, Collections.emptyList(), true, "progress");
+    assertEquals(FILES, before.getAnalysisSnapshot("/before").size());
+    before.dispose();
+
+    // last file deleted while project was closed
+    final List<Object> filesAfter = createProject("/after", FILES - 1);
+    final AnalysisDataBase after =
+        AnalysisDataTestUtils.newAnalysisData(mockServer, contents, storeFile);
+
+    // annotator comes first with a single opened file
+    after.updateCachedResultsForFiles(
+        "/after", filesAfter.subList(1, 2), Collections.emptyList(), false, "progress");
+    assertTrue(after.isFileInCache(filesAfter.get(1)));
+
+    // then full project update: everything is restored from the store, no network requests
+    final int requestsBefore = mockServer.getRequestCount();
+    after.updateCachedResultsForFiles(
+        "/after", filesAfter, Collections.emptyList(), true, "progress");
+    assertEquals(FILES - 1, after.getAnalysisSnapshot("/after").size());
+    assertEquals(requestsBefore, mockServer.getRequestCount());
+
+    // next bundle extension removes deleted file from server bundle
+    final Object changedFile = filesAfter.get(0);
+    contents.put(changedFile.toString(), "public class File0 { int changed; }\n");
+    after.removeFilesFromCache(Collections.singleton(changedFile));
+    after.updateCachedResultsForFiles(
+        "/after", filesAfter, Collections.emptyList(), true, "progress");
+    assertTrue(after.isFileInCache(changedFile));
+    final String bundleId = PersistentSuggestionStore.load(storeFile).getBundleId();
+    final Set<String> bundlePaths = mockServer.getBundlePaths(bundleId);
+    assertEquals(FILES - 1, bundlePaths.size());
+    assertFalse(bundlePaths.contains("/src/File" + (FILES - 1) + ".java"));
+    after.removeProjectFromCaches("/after");
+    after.dispose();
+  }
+
+  @Test
+  public void storeIsSavedAfterFullUpdateAndOnClose() throws IOException {
+    final List<Object> files = createProject("/saved", FILES);
+    final AnalysisDataBase analysisData =
+        AnalysisDataTestUtils.newAnalysisData(mockServer, contents, storeFile);
+    analysisData.updateCachedResultsForFiles(
+        "/saved", files, Collections.emptyList(), true, "progress");
+    final byte[] savedAfterFullUpdate = Files.readAllBytes(storeFile);
+
+    // partial updates, e.g. from annotator, are not written on every edit
+    final Object changedFile = files.get(0);
+    contents.put(changedFile.toString(), "public class File0 { int changed; }\n");
+    analysisData.removeFilesFromCache(Collections.singleton(changedFile));
+    analysisData.updateCachedResultsForFiles(
+        "/saved", files.subList(0, 2), Collections.emptyList(), "progress");
+    assertTrue(analysisData.isFileInCache(changedFile));
+    assertArrayEquals(savedAfterFullUpdate, Files.readAllBytes(storeFile));
+
+    analysisData.removeProjectFromCaches("/saved");
+    assertFalse(Arrays.equals(savedAfterFullUpdate, Files.readAllBytes(storeFile)));
+    analysisData.dispose();
+  }
+
+  @NotNull
+  private List<Object> createProject(@NotNull String project, int files) {
+    final List<Object> result = new ArrayList<>();
+    for (int f = 0; f < files; f++) {
+      final String file = project + "/src/File" + f + ".java";
+      contents.put(file, "public class File" + f + " {\n  int field" + f + ";\n}\n");
+      result.add(file);
+    }
+    return result;
+  }
+}
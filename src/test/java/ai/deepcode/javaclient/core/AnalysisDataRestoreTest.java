@@ -0,0 +1,96 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.MockDeepCodeServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/** Suggestions restored from the suggestion cache without persistent suggestion store. */
+public class AnalysisDataRestoreTest {
+
+  private static final String PROJECT = "/restore";
+  private static final int FILES = 10;
+
+  private final Map<String, String> contents = new ConcurrentHashMap<>();
+  private final List<Object> files = new ArrayList<>();
+  private MockDeepCodeServer mockServer;
+  private AnalysisDataTestUtils.HashContentUtils hashContentUtils;
+  private AnalysisDataBase analysisData;
+
+  @Before
+  public void setUp() throws IOException {
+    mockServer = new MockDeepCodeServer().start();
+    for (int f = 0; f < FILES; f++) {
+      final String file = PROJECT + "/src/File" + f + ".java";
+      contents.put(file, content(f, 0));
+      files.add(file);
+    }
+    final AnalysisDataTestUtils.PlatformUtils pdUtils =
+        new AnalysisDataTestUtils.PlatformUtils(contents);
+    hashContentUtils = new AnalysisDataTestUtils.HashContentUtils(pdUtils, contents);
+    analysisData =
+        AnalysisDataTestUtils.newAnalysisData(mockServer, pdUtils, hashContentUtils, null);
+    analysisData.updateCachedResultsForFiles(PROJECT, files, Collections.emptyList(), "progress");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    analysisData.removeProjectFromCaches(PROJECT);
+    analysisData.dispose();
+    DeepCodeRestApi.setBaseUrl("");
+    mockServer.close();
+  }
+
+  @Test
+  public void changedFilesAreReadOnce() {
+    // suggestion cache is not empty now, so changed files are hashed to look for them there
+    changeFiles(0, 1, 1);
+    final int readsBefore = hashContentUtils.getReadCount();
+    analysisData.updateCachedResultsForFiles(PROJECT, files, Collections.emptyList(), "progress");
+    assertTrue(analysisData.isFileInCache(files.get(0)));
+    assertEquals(2, hashContentUtils.getReadCount() - readsBefore);
+  }
+
+  @Test
+  public void restoredFilesAreAddedToNextBundleExtension() {
+    changeFiles(0, 1, 1);
+    analysisData.updateCachedResultsForFiles(PROJECT, files, Collections.emptyList(), "progress");
+
+    // reverted content is restored without network requests
+    changeFiles(0, 1, 0);
+    final int requestsBefore = mockServer.getRequestCount();
+    analysisData.updateCachedResultsForFiles(PROJECT, files, Collections.emptyList(), "progress");
+    assertTrue(analysisData.isFileInCache(files.get(0)));
+    assertEquals(requestsBefore, mockServer.getRequestCount());
+
+    // but bundle on server is synchronized with the next extension
+    changeFiles(2, 3, 1);
+    analysisData.updateCachedResultsForFiles(PROJECT, files, Collections.emptyList(), "progress");
+    final Map<String, String> bundleFiles =
+        mockServer.getBundleFiles(mockServer.getLastBundleId());
+    assertEquals(FILES, bundleFiles.size());
+    assertEquals(
+        HashContentUtilsBase.doGetHash(content(0, 0)), bundleFiles.get("/src/File0.java"));
+    assertEquals(
+        HashContentUtilsBase.doGetHash(content(2, 1)), bundleFiles.get("/src/File2.java"));
+  }
+
+  private void changeFiles(int from, int to, int version) {
+    final List<Object> changed = files.subList(from, to + 1);
+    for (int f = from; f <= to; f++) contents.put(files.get(f).toString(), content(f, version));
+    analysisData.removeFilesFromCache(changed);
+  }
+
+  @NotNull
+  private static String content(int file, int version) {
+    return "public class File" + file + " {\n  int version" + version + ";\n}\n";
+  }
+}
@@ -0,0 +1,209 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.DeepCodeRestApi;
+import ai.deepcode.javaclient.MockDeepCodeServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/** {@link AnalysisDataBase} against local mock server, with project files kept in memory. */
+final class AnalysisDataTestUtils {
+
+  private AnalysisDataTestUtils() {}
+
+  /**
+   * @param contents file path to content, files missing here are empty
+   * @param storeFile persistent suggestion store file, disabled if <b>null</b>
+   */
+  @NotNull
+  static AnalysisDataBase newAnalysisData(
+      @NotNull MockDeepCodeServer mockServer,
+      @NotNull Map<String, String> contents,
+      @Nullable Path storeFile) {
+    final PlatformUtils pdUtils = new PlatformUtils(contents);
+    return newAnalysisData(
+        mockServer, pdUtils, new HashContentUtils(pdUtils, contents), storeFile);
+  }
+
+  @NotNull
+  static AnalysisDataBase newAnalysisData(
+      @NotNull MockDeepCodeServer mockServer,
+      @NotNull PlatformUtils pdUtils,
+      @NotNull HashContentUtils hashContentUtils,
+      @Nullable Path storeFile) {
+    DeepCodeRestApi.setBaseUrl(mockServer.getBaseUrl());
+    final DeepCodeParamsBase deepCodeParams =
+        new DeepCodeParamsBase(
+            true, mockServer.getBaseUrl(), false, 1, mockServer.newLoggedToken(), "", "Test") {
+          @Override
+          public boolean consentGiven(@NotNull Object project) {
+            return true;
+          }
+
+          @Override
+          public void setConsentGiven(@NotNull Object project) {}
+        };
+    final DCLoggerBase dcLogger = newLogger();
+    return new AnalysisDataBase(pdUtils, hashContentUtils, deepCodeParams, dcLogger) {
+      @Override
+      protected void updateUIonFilesRemovalFromCache(@NotNull Collection<Object> files) {}
+
+      @Nullable
+      @Override
+      protected Path getSuggestionStoreFile(@NotNull Object project) {
+        return storeFile;
+      }
+    };
+  }
+
+  /** Logger dropping all messages. */
+  @NotNull
+  static DCLoggerBase newLogger() {
+    return new DCLoggerBase(
+        () -> message -> {},
+        () -> message -> {},
+        () -> false,
+        () -> false,
+        "ai.deepcode.javaclient",
+        "Test") {
+      @Override
+      protected String getExtraInfo() {
+        return "";
+      }
+    };
+  }
+
+  /** Files are their paths, first path segment is the project. */
+  static final class PlatformUtils extends PlatformDependentUtilsBase {
+
+    private final Map<String, String> contents;
+
+    PlatformUtils(@NotNull Map<String, String> contents) {
+      this.contents = contents;
+    }
+
+    @NotNull
+    @Override
+    public Object getProject(@NotNull Object file) {
+      final String path = file.toString();
+      return path.substring(0, path.indexOf('/', 1));
+    }
+
+    @NotNull
+    @Override
+    public String getProjectName(@NotNull Object project) {
+      return project.toString();
+    }
+
+    @NotNull
+    @Override
+    public String getFileName(@NotNull Object file) {
+      final String path = file.toString();
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @NotNull
+    @Override
+    protected String getProjectBasedFilePath(@NotNull Object file) {
+      return file.toString().substring(getProject(file).toString().length());
+    }
+
+    @Override
+    public Object[] getOpenProjects() {
+      return new Object[0];
+    }
+
+    @Override
+    public long getFileSize(@NotNull Object file) {
+      return contents.getOrDefault(file.toString(), "").length();
+    }
+
+    @Override
+    public int getLineStartOffset(@NotNull Object file, int line) {
+      return 0;
+    }
+
+    @Override
+    public void runInBackgroundCancellable(
+        @NotNull Object file, @NotNull String title, @NotNull Consumer<Object> progressConsumer) {
+      progressConsumer.accept("progress");
+    }
+
+    @Override
+    public void runInBackground(
+        @NotNull Object project, @NotNull String title, @NotNull Consumer<Object> progressConsumer) {
+      progressConsumer.accept("progress");
+    }
+
+    @Override
+    public void cancelRunningIndicators(@NotNull Object project) {}
+
+    @Override
+    public void doFullRescan(@NotNull Object project) {}
+
+    @Override
+    public void refreshPanel(@NotNull Object project) {}
+
+    @Override
+    public boolean isLogged(@Nullable Object project, boolean userActionNeeded) {
+      return true;
+    }
+
+    @Override
+    public void progressSetText(@Nullable Object progress, String text) {}
+
+    @Override
+    public void progressCheckCanceled(@Nullable Object progress) {}
+
+    @Override
+    public void progressSetFraction(@Nullable Object progress, double fraction) {}
+
+    @Override
+    public void showInBrowser(@NotNull String url) {}
+
+    @Override
+    public void showLoginLink(@Nullable Object project, String message) {}
+
+    @Override
+    public void showConsentRequest(Object project, boolean userActionNeeded) {}
+
+    @Override
+    public void showInfo(String message, @Nullable Object project) {}
+
+    @Override
+    public void showWarn(String message, @Nullable Object project) {}
+
+    @Override
+    public void showError(String message, @Nullable Object project) {}
+  }
+
+  static final class HashContentUtils extends HashContentUtilsBase {
+
+    private final Map<String, String> contents;
+    private final AtomicInteger readCount = new AtomicInteger();
+
+    HashContentUtils(
+        @NotNull PlatformDependentUtilsBase platformDependentUtils,
+        @NotNull Map<String, String> contents) {
+      super(platformDependentUtils);
+      this.contents = contents;
+    }
+
+    @NotNull
+    @Override
+    public String doGetFileContent(@NotNull Object file) {
+      readCount.incrementAndGet();
+      return contents.getOrDefault(file.toString(), "");
+    }
+
+    /** @return number of file content reads */
+    int getReadCount() {
+      return readCount.get();
+    }
+  }
+}
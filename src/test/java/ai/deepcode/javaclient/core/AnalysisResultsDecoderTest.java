@@ -0,0 +1,82 @@
+package ai.deepcode.javaclient.core;
+
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AnalysisResultsDecoderTest {
+
+  // suggestions come first, so all of them are taken before files are known
+  private static final String ANALYSIS_RESULTS =
+      "{\"suggestions\":{"
+          + "\"0\":{\"id\":\"s0\",\"message\":\"m0\",\"severity\":2},"
+          + "\"1\":{\"id\":\"s1\",\"message\":\"m1\",\"severity\":1}},"
+          + "\"files\":{"
+          + "\"/A.java\":{\"0\":[{\"rows\":[2,3],\"cols\":[5,7],"
+          + "\"markers\":[{\"msg\":[0,1],\"pos\":[{\"rows\":[1,1],\"cols\":[1,2]}]}]}]},"
+          + "\"/B.java\":{\"1\":[{\"rows\":[1,1],\"cols\":[1,4]}]},"
+          + "\"/C.java\":{\"1\":[{\"rows\":[1,1],\"cols\":[1,4]}]}}}";
+
+  private final AnalysisDataTestUtils.PlatformUtils pdUtils =
+      new AnalysisDataTestUtils.PlatformUtils(Collections.emptyMap());
+  private final DCLoggerBase dcLogger = AnalysisDataTestUtils.newLogger();
+
+  @NotNull
+  private AnalysisResultsDecoder newDecoder(@NotNull String... files) {
+    return new AnalysisResultsDecoder(pdUtils, dcLogger, Arrays.asList((Object[]) files));
+  }
+
+  @Test
+  public void positionsAreConvertedForRequestedFilesOnly() throws IOException {
+    final AnalysisResultsDecoder decoder = newDecoder("/p/A.java");
+    assertNull(decoder.getResult());
+    try (JsonReader reader = new JsonReader(new StringReader(ANALYSIS_RESULTS))) {
+      decoder.read(reader);
+    }
+    final Map<Object, List<SuggestionForFile>> result = decoder.getResult();
+    assertNotNull(result);
+    assertEquals(Collections.singleton("/p/A.java"), result.keySet());
+    final List<SuggestionForFile> suggestions = result.get("/p/A.java");
+    assertEquals(1, suggestions.size());
+    assertEquals("s0", suggestions.get(0).getId());
+    final MyTextRange range = suggestions.get(0).getRanges().get(0);
+    assertEquals(2, range.getStartRow());
+    assertEquals(3, range.getEndRow());
+    assertEquals(4, range.getStartCol());
+    assertEquals(7, range.getEndCol());
+    assertEquals(1, range.getMarkers().size());
+  }
+
+  @Test
+  public void resultsDecodedOnceAreSharedByDecoders() throws IOException {
+    final AnalysisResultsDecoder decoderA = newDecoder("/p/A.java", "/p/B.java");
+    final AnalysisResultsDecoder decoderB = newDecoder("/p/B.java");
+    final Set<String> paths = new HashSet<>(decoderA.getPaths());
+    paths.addAll(decoderB.getPaths());
+    final AnalysisResultsDecoder.Results results;
+    try (JsonReader reader = new JsonReader(new StringReader(ANALYSIS_RESULTS))) {
+      results = AnalysisResultsDecoder.decode(reader, paths);
+    }
+    decoderA.setResults(results);
+    decoderB.setResults(results);
+
+    final Map<Object, List<SuggestionForFile>> resultA = decoderA.getResult();
+    final Map<Object, List<SuggestionForFile>> resultB = decoderB.getResult();
+    assertNotNull(resultA);
+    assertNotNull(resultB);
+    assertEquals(new HashSet<>(Arrays.asList("/p/A.java", "/p/B.java")), resultA.keySet());
+    assertEquals(Collections.singleton("/p/B.java"), resultB.keySet());
+    final MyTextRange rangeA = resultA.get("/p/B.java").get(0).getRanges().get(0);
+    final MyTextRange rangeB = resultB.get("/p/B.java").get(0).getRanges().get(0);
+    // every decoder gets its own ranges
+    assertNotSame(rangeA, rangeB);
+    assertEquals(rangeA.getStart(), rangeB.getStart());
+    assertEquals(rangeA.getEnd(), rangeB.getEnd());
+  }
+}
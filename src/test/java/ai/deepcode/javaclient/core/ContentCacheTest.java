@@ -0,0 +1,135 @@
+package ai.deepcode.javaclient.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ContentCacheTest {
+
+  // weight of 10 chars content
+  private static final long WEIGHT = 20;
+
+  private static String content(int i) {
+    return String.format("content%03d", i);
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    final ContentCache cache = new ContentCache();
+    assertEquals(content(1), cache.get("p", "f1", f -> content(1)));
+    assertEquals(content(1), cache.get("p", "f1", f -> notLoaded()));
+    assertEquals(content(2), cache.get("p", "f2", f -> content(2)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(2 * WEIGHT, cache.getWeight());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedDownToMaxWeight() {
+    final ContentCache cache = new ContentCache();
+    cache.setMaxWeight(5 * WEIGHT);
+    for (int i = 0; i < 5; i++) cache.get("p", "f" + i, f -> content(0));
+    // f0 is used recently, so f1 is the eldest now
+    cache.get("p", "f0", f -> notLoaded());
+    for (int i = 5; i < 8; i++) cache.get("p", "f" + i, f -> content(0));
+
+    assertEquals(5, cache.getSize());
+    assertEquals(5 * WEIGHT, cache.getWeight());
+    assertEquals(3, cache.getEvictionCount());
+    assertNotNull(cache.peek("f0"));
+    assertNull(cache.peek("f1"));
+    assertNull(cache.peek("f3"));
+    assertNotNull(cache.peek("f4"));
+
+    cache.setMaxWeight(2 * WEIGHT);
+    assertEquals(2, cache.getSize());
+    assertEquals(2 * WEIGHT, cache.getWeight());
+    assertEquals(6, cache.getEvictionCount());
+  }
+
+  @Test
+  public void tooLargeContentIsNotCached() {
+    final ContentCache cache = new ContentCache();
+    cache.setMaxWeight(WEIGHT - 1);
+    assertEquals(content(1), cache.get("p", "f1", f -> content(1)));
+    assertNull(cache.peek("f1"));
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void removesProjectContentOnly() {
+    final ContentCache cache = new ContentCache();
+    cache.get("p1", "f1", f -> content(1));
+    cache.get("p1", "f2", f -> content(2));
+    cache.get("p2", "f3", f -> content(3));
+    cache.removeProject("p1");
+    assertNull(cache.peek("f1"));
+    assertNull(cache.peek("f2"));
+    assertEquals(content(3), cache.peek("f3"));
+    assertEquals(WEIGHT, cache.getWeight());
+  }
+
+  @Test
+  public void contentLoadedBeforeRemovalIsNotCached() throws Exception {
+    final ContentCache cache = new ContentCache();
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch removed = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> loaded =
+          executor.submit(
+              () ->
+                  cache.get(
+                      "p",
+                      "f1",
+                      f -> {
+                        loading.countDown();
+                        await(removed);
+                        return "old content";
+                      }));
+      await(loading);
+      // file changed while its old content is being read
+      cache.remove("f1");
+      removed.countDown();
+
+      assertEquals("old content", loaded.get(10, TimeUnit.SECONDS));
+      assertNull(cache.peek("f1"));
+      assertEquals("new content", cache.get("p", "f1", f -> "new content"));
+      assertEquals(2 * "new content".length(), cache.getWeight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failedLoadIsNotCached() {
+    final ContentCache cache = new ContentCache();
+    try {
+      cache.get(
+          "p",
+          "f1",
+          f -> {
+            throw new IllegalStateException("unreadable");
+          });
+      fail("Loader exception should be thrown");
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+    assertEquals(content(1), cache.get("p", "f1", f -> content(1)));
+    assertEquals(content(1), cache.peek("f1"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static <T> T notLoaded() {
+    throw new AssertionError("Content should be cached");
+  }
+}
@@ -0,0 +1,147 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+
+import static ai.deepcode.javaclient.core.OffHeapContentStore.SLAB_SIZE;
+import static org.junit.Assert.*;
+
+public class OffHeapContentStoreTest {
+
+  // a bit more than half of a slab, so every slab holds one such content
+  private static final int HALF_SLAB = SLAB_SIZE / 2 + 1;
+
+  @NotNull
+  private static OffHeapContentStore newStore(long maxBytes, boolean compress) {
+    final OffHeapContentStore store = new OffHeapContentStore();
+    store.configure(maxBytes, compress);
+    return store;
+  }
+
+  private static boolean put(
+      @NotNull OffHeapContentStore store,
+      @NotNull String project,
+      @NotNull String file,
+      @NotNull String content) {
+    return store.put(project, file, Sha256.hash(content), content);
+  }
+
+  @NotNull
+  private static String content(char c, int length) {
+    return String.join("", Collections.nCopies(length, String.valueOf(c)));
+  }
+
+  @Test
+  public void disabledByDefault() {
+    final OffHeapContentStore store = new OffHeapContentStore();
+    assertFalse(store.isEnabled());
+    assertFalse(put(store, "p", "f1", "content"));
+    assertNull(store.getContent("p", "f1"));
+  }
+
+  @Test
+  public void contentIsSharedByFilesWithSameHash() {
+    final OffHeapContentStore store = newStore(SLAB_SIZE, true);
+    final String content = "public class A { String s = \"é中😀\"; }\n";
+    assertTrue(put(store, "p1", "f1", content));
+    final long storedBytes = store.getStoredBytes();
+    assertTrue(put(store, "p1", "f2", content));
+    assertTrue(put(store, "p2", "f3", content));
+    assertEquals(3, store.getSize());
+    assertEquals(storedBytes, store.getStoredBytes());
+
+    store.remove("p1", "f1");
+    store.removeProject("p2");
+    assertEquals(1, store.getSize());
+    assertEquals(content, store.getContent("p1", "f2"));
+    assertNull(store.getContent("p1", "f1"));
+    assertEquals(storedBytes, store.getStoredBytes());
+
+    store.remove("p1", "f2");
+    assertEquals(0, store.getSize());
+    assertEquals(0, store.getStoredBytes());
+    assertEquals(0, store.getRawBytes());
+  }
+
+  @Test
+  public void changedContentReplacesOldOne() {
+    final OffHeapContentStore store = newStore(SLAB_SIZE, false);
+    assertTrue(put(store, "p", "f1", "old content"));
+    assertTrue(put(store, "p", "f1", "new content"));
+    assertEquals(1, store.getSize());
+    assertEquals("new content", store.getContent("p", "f1"));
+    assertEquals("new content".length(), store.getRawBytes());
+  }
+
+  @Test
+  public void emptySlabIsFreed() {
+    final OffHeapContentStore store = newStore(3L * SLAB_SIZE, false);
+    assertTrue(put(store, "p", "f1", content('a', HALF_SLAB)));
+    assertTrue(put(store, "p", "f2", content('b', HALF_SLAB)));
+    assertEquals(2L * SLAB_SIZE, store.getAllocatedBytes());
+
+    store.remove("p", "f1");
+    assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+
+    // current slab is kept for the next content till it doesn't fit there
+    store.remove("p", "f2");
+    assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+    assertTrue(put(store, "p", "f3", content('c', HALF_SLAB)));
+    assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+    assertEquals(content('c', HALF_SLAB), store.getContent("p", "f3"));
+  }
+
+  @Test
+  public void contentAboveLimitIsRejected() {
+    final OffHeapContentStore store = newStore(SLAB_SIZE, false);
+    assertTrue(put(store, "p", "f1", content('a', HALF_SLAB)));
+    assertFalse(put(store, "p", "f2", content('b', HALF_SLAB)));
+    assertFalse(put(store, "p", "f3", content('c', SLAB_SIZE + 1)));
+    assertEquals(2, store.getRejectedCount());
+    assertEquals(1, store.getSize());
+    assertNull(store.getContent("p", "f2"));
+  }
+
+  @Test
+  public void readerOpenedBeforeRemovalReadsOriginalContent() throws IOException {
+    final OffHeapContentStore store = newStore(2L * SLAB_SIZE, true);
+    final String content = content('a', 100) + "é中😀";
+    assertTrue(put(store, "p", "f1", content));
+    assertTrue(store.getStoredBytes() < store.getRawBytes());
+    final Reader reader = store.openReader("p", "f1");
+    assertNotNull(reader);
+
+    store.remove("p", "f1");
+    assertTrue(put(store, "p", "f2", content('b', 100)));
+    assertEquals(content, read(reader));
+  }
+
+  @Test
+  public void storedContentKeepsItsHashAfterFileChange() throws IOException {
+    final OffHeapContentStore store = newStore(2L * SLAB_SIZE, true);
+    assertTrue(put(store, "p", "f1", "old content"));
+    final OffHeapContentStore.StoredContent stored = store.getStoredContent("p", "f1");
+    assertNotNull(stored);
+
+    assertTrue(put(store, "p", "f1", "new content"));
+    assertEquals(Sha256.hash("old content"), stored.getHash());
+    // opened for every upload attempt
+    assertEquals("old content", read(stored.openReader()));
+    assertEquals("old content", read(stored.openReader()));
+    assertNull(store.getStoredContent("p", "f2"));
+  }
+
+  @NotNull
+  private static String read(@NotNull Reader reader) throws IOException {
+    final StringBuilder read = new StringBuilder();
+    try (Reader in = reader) {
+      int c;
+      while ((c = in.read()) != -1) read.append((char) c);
+    }
+    return read.toString();
+  }
+}
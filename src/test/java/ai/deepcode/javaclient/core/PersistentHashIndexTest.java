@@ -0,0 +1,93 @@
+package ai.deepcode.javaclient.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PersistentHashIndexTest {
+
+  private static final String HASH_1 = Sha256.hash("content1");
+  private static final String HASH_2 = Sha256.hash("content2");
+
+  private Path dir;
+  private Path indexFile;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("dc-hash-index");
+    indexFile = dir.resolve("hashes.bin");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(indexFile);
+    Files.deleteIfExists(dir.resolve("hashes.bin.lock"));
+    Files.deleteIfExists(dir);
+  }
+
+  @Test
+  public void savedEntriesAreLoaded() throws IOException {
+    final PersistentHashIndex index = PersistentHashIndex.load(indexFile);
+    index.put("/File1.java", new PersistentHashIndex.Stamp(8, 1000), HASH_1);
+    // not a sha256 hex
+    index.put("/File2.java", new PersistentHashIndex.Stamp(8, 1000), "abc");
+    index.save();
+
+    final PersistentHashIndex loaded = PersistentHashIndex.load(indexFile);
+    assertEquals(1, loaded.size());
+    assertEquals(HASH_1, loaded.get("/File1.java", new PersistentHashIndex.Stamp(8, 1000)));
+    assertNull(loaded.get("/File1.java", new PersistentHashIndex.Stamp(8, 1001)));
+    assertNull(loaded.get("/File1.java", new PersistentHashIndex.Stamp(9, 1000)));
+    assertNull(loaded.get("/File2.java", new PersistentHashIndex.Stamp(8, 1000)));
+  }
+
+  @Test
+  public void saveMergesEntriesSavedByOthers() throws IOException {
+    final PersistentHashIndex first = PersistentHashIndex.load(indexFile);
+    final PersistentHashIndex second = PersistentHashIndex.load(indexFile);
+    first.put("/File1.java", new PersistentHashIndex.Stamp(8, 1000), HASH_1);
+    first.put("/Shared.java", new PersistentHashIndex.Stamp(8, 2000), HASH_2);
+    first.save();
+    second.put("/File2.java", new PersistentHashIndex.Stamp(8, 1000), HASH_2);
+    second.put("/Shared.java", new PersistentHashIndex.Stamp(8, 1000), HASH_1);
+    second.save();
+
+    final PersistentHashIndex loaded = PersistentHashIndex.load(indexFile);
+    assertEquals(3, loaded.size());
+    assertEquals(HASH_1, loaded.get("/File1.java", new PersistentHashIndex.Stamp(8, 1000)));
+    assertEquals(HASH_2, loaded.get("/File2.java", new PersistentHashIndex.Stamp(8, 1000)));
+    // newest entry wins
+    assertEquals(HASH_2, loaded.get("/Shared.java", new PersistentHashIndex.Stamp(8, 2000)));
+  }
+
+  @Test
+  public void brokenIndexIsIgnored() throws IOException {
+    final PersistentHashIndex index = PersistentHashIndex.load(indexFile);
+    for (int i = 0; i < 10; i++) {
+      index.put("/File" + i + ".java", new PersistentHashIndex.Stamp(8, 1000), HASH_1);
+    }
+    index.save();
+    final byte[] saved = Files.readAllBytes(indexFile);
+
+    final byte[] corrupted = saved.clone();
+    corrupted[corrupted.length / 2] ^= 1;
+    Files.write(indexFile, corrupted);
+    assertEquals(0, PersistentHashIndex.load(indexFile).size());
+
+    Files.write(indexFile, Arrays.copyOf(saved, saved.length - 10));
+    assertEquals(0, PersistentHashIndex.load(indexFile).size());
+
+    Files.write(indexFile, "not an index".getBytes());
+    assertEquals(0, PersistentHashIndex.load(indexFile).size());
+
+    Files.write(indexFile, saved);
+    assertEquals(10, PersistentHashIndex.load(indexFile).size());
+  }
+}
@@ -0,0 +1,224 @@
+package ai.deepcode.javaclient.core;
+
+import ai.deepcode.javaclient.responses.ExampleCommitFix;
+import ai.deepcode.javaclient.responses.ExampleLine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PersistentSuggestionStoreTest {
+
+  private static final String HASH_A = Sha256.hash("A");
+  private static final String HASH_B = Sha256.hash("B");
+
+  private Path storeFile;
+
+  @Before
+  public void setUp() throws IOException {
+    storeFile = Files.createTempDirectory("dc-store").resolve("suggestions.bin");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(storeFile);
+    Files.deleteIfExists(storeFile.getParent());
+  }
+
+  @NotNull
+  private static List<SuggestionForFile> suggestions() {
+    final Map<MyTextRange, List<MyTextRange>> markers = new HashMap<>();
+    markers.put(
+        new MyTextRange(0, 5),
+        Arrays.asList(new MyTextRange(10, 12, 1, 1, 3, 5, Collections.emptyMap())));
+    final MyTextRange range = new MyTextRange(10, 20, 1, 2, 3, 4, markers);
+    final List<ExampleCommitFix> fixes =
+        Arrays.asList(
+            new ExampleCommitFix(
+                "https://example.com/commit",
+                Arrays.asList(
+                    new ExampleLine("int a;", 1, "removed"), new ExampleLine(null, 2, "none"))),
+            // lines missing in server response
+            new ExampleCommitFix("https://example.com/other", null));
+    return Arrays.asList(
+        new SuggestionForFile(
+            "id1", "rule", "message é中😀", 2, 10, fixes, Collections.singletonList(range)),
+        new SuggestionForFile("id2", "rule", null, 3, 0, null, Collections.emptyList()));
+  }
+
+  @Test
+  public void savedStoreIsLoaded() throws IOException {
+    final PersistentSuggestionStore store = PersistentSuggestionStore.load(storeFile);
+    final Map<String, String> files = new HashMap<>();
+    files.put("/A.java", HASH_A);
+    files.put("/B.java", HASH_B);
+    store.bundleUpdated("", "bundle1", files, Collections.emptyList());
+    final SuggestionCache cache = new SuggestionCache();
+    final List<SuggestionForFile> suggestions = suggestions();
+    cache.put("/A.java", HASH_B, 1, false, Collections.emptyList());
+    cache.put("/A.java", HASH_A, 1, false, suggestions);
+    // same content in another file
+    cache.put("/Copy.java", HASH_A, 1, false, suggestions);
+    cache.put("/B.java", HASH_B, 2, true, suggestions());
+    store.save(cache);
+
+    final PersistentSuggestionStore loaded = PersistentSuggestionStore.load(storeFile);
+    assertEquals("bundle1", loaded.getBundleId());
+    assertEquals(files.keySet(), loaded.getBundledPaths());
+    assertEquals(HASH_A, loaded.getBundledHash("/A.java"));
+    assertEquals(HASH_B, loaded.getBundledHash("/B.java"));
+
+    final Map<String, List<SuggestionCache.Version>> versions = cache.getVersions();
+    final Map<String, List<SuggestionCache.Version>> loadedVersions =
+        loaded.getSuggestionCache().getVersions();
+    assertEquals(versions.keySet(), loadedVersions.keySet());
+    for (String path : versions.keySet()) {
+      assertVersionsEqual(versions.get(path), loadedVersions.get(path));
+    }
+    // shared suggestions are shared after load too
+    assertSame(
+        loaded.getSuggestionCache().get(HASH_A, 1, false),
+        loadedVersions.get("/Copy.java").get(0).suggestions);
+  }
+
+  @Test
+  public void unchangedStoreIsNotWritten() throws IOException {
+    final PersistentSuggestionStore store = PersistentSuggestionStore.load(storeFile);
+    store.bundleUpdated(
+        "", "bundle1", Collections.singletonMap("/A.java", HASH_A), Collections.emptyList());
+    final SuggestionCache cache = new SuggestionCache();
+    cache.put("/A.java", HASH_A, 1, false, suggestions());
+    store.save(cache);
+    Files.delete(storeFile);
+    store.save(cache);
+    assertFalse(Files.exists(storeFile));
+
+    cache.put("/A.java", HASH_B, 1, false, Collections.emptyList());
+    store.save(cache);
+    assertTrue(Files.exists(storeFile));
+  }
+
+  @Test
+  public void extensionKeepsBundleFiles() throws IOException {
+    final PersistentSuggestionStore store = PersistentSuggestionStore.load(storeFile);
+    store.bundleUpdated(
+        "", "bundle1", Collections.singletonMap("/A.java", HASH_A), Collections.emptyList());
+    store.removeFromBundle(Collections.singleton("/Deleted.java"));
+    store.bundleUpdated(
+        "bundle1",
+        "bundle2",
+        Collections.singletonMap("/B.java", HASH_B),
+        Collections.singleton("/Deleted.java"));
+    assertTrue(store.getRemovedPaths().isEmpty());
+    store.save(new SuggestionCache());
+
+    final PersistentSuggestionStore loaded = PersistentSuggestionStore.load(storeFile);
+    assertEquals("bundle2", loaded.getBundleId());
+    assertEquals(new HashSet<>(Arrays.asList("/A.java", "/B.java")), loaded.getBundledPaths());
+  }
+
+  @Test
+  public void brokenStoreIsIgnored() throws IOException {
+    final PersistentSuggestionStore store = PersistentSuggestionStore.load(storeFile);
+    store.bundleUpdated(
+        "", "bundle1", Collections.singletonMap("/A.java", HASH_A), Collections.emptyList());
+    store.save(new SuggestionCache());
+    final byte[] saved = Files.readAllBytes(storeFile);
+    saved[saved.length / 2] ^= 1;
+    Files.write(storeFile, saved);
+
+    final PersistentSuggestionStore loaded = PersistentSuggestionStore.load(storeFile);
+    assertEquals("", loaded.getBundleId());
+    assertEquals(0, loaded.size());
+    assertTrue(loaded.getSuggestionCache().isEmpty());
+  }
+
+  private static void assertVersionsEqual(
+      @NotNull List<SuggestionCache.Version> expected,
+      @NotNull List<SuggestionCache.Version> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).hash, actual.get(i).hash);
+      assertEquals(expected.get(i).severity, actual.get(i).severity);
+      assertEquals(expected.get(i).useLinters, actual.get(i).useLinters);
+      assertEquals(toString(expected.get(i).suggestions), toString(actual.get(i).suggestions));
+    }
+  }
+
+  /** All fields, as suggestions have no equals() */
+  @NotNull
+  private static String toString(@NotNull List<SuggestionForFile> suggestions) {
+    final StringBuilder result = new StringBuilder();
+    for (SuggestionForFile suggestion : suggestions) {
+      result
+          .append(suggestion.getId())
+          .append('|')
+          .append(suggestion.getRule())
+          .append('|')
+          .append(suggestion.getMessage())
+          .append('|')
+          .append(suggestion.getSeverity())
+          .append('|')
+          .append(suggestion.getRepoDatasetSize())
+          .append('|');
+      final List<ExampleCommitFix> fixes = suggestion.getExampleCommitFixes();
+      if (fixes == null) {
+        result.append("no fixes");
+      } else {
+        for (ExampleCommitFix fix : fixes) {
+          result.append(fix.getCommitURL()).append(':');
+          if (fix.getLines() == null) {
+            result.append("no lines");
+          } else {
+            for (ExampleLine line : fix.getLines()) {
+              result
+                  .append(line.getLine())
+                  .append('/')
+                  .append(line.getLineNumber())
+                  .append('/')
+                  .append(line.getLineChange())
+                  .append(';');
+            }
+          }
+        }
+      }
+      appendRanges(result, suggestion.getRanges());
+      result.append('\n');
+    }
+    return result.toString();
+  }
+
+  private static void appendRanges(
+      @NotNull StringBuilder result, @Nullable List<MyTextRange> ranges) {
+    if (ranges == null) return;
+    for (MyTextRange range : ranges) {
+      result
+          .append('[')
+          .append(range.getStart())
+          .append(',')
+          .append(range.getEnd())
+          .append(',')
+          .append(range.getStartRow())
+          .append(',')
+          .append(range.getEndRow())
+          .append(',')
+          .append(range.getStartCol())
+          .append(',')
+          .append(range.getEndCol());
+      for (Map.Entry<MyTextRange, List<MyTextRange>> marker : range.getMarkers().entrySet()) {
+        appendRanges(result, Collections.singletonList(marker.getKey()));
+        result.append("->");
+        appendRanges(result, marker.getValue());
+      }
+      result.append(']');
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Sha256Test {
+
+  private static final int SLICE = 8192;
+  private static final String PAIR = "😀"; // surrogate pair of U+1F600
+  private static final char HIGH = '\uD83D';
+  private static final char LOW = '\uDE00';
+
+  @Test
+  public void sameAsMessageDigestOfUtf8Bytes() {
+    assertEquals(
+        "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Sha256.hash("abc"));
+    assertSameHash("");
+    assertSameHash("public class A {}");
+    assertSameHash("éЖ中" + PAIR);
+    assertSameHash(repeat("中", 3 * SLICE + 7));
+  }
+
+  @Test
+  public void surrogatePairAcrossSliceBoundary() {
+    for (int prefix = SLICE - 3; prefix <= SLICE + 1; prefix++) {
+      assertSameHash(repeat("a", prefix) + PAIR + "b");
+      assertSameHash(repeat("a", prefix) + PAIR);
+      assertSameHash(repeat("a", prefix + SLICE) + PAIR + PAIR);
+    }
+    assertSameHash(repeat(PAIR, SLICE + 1));
+    assertSameHash("a" + repeat(PAIR, SLICE + 1));
+  }
+
+  @Test
+  public void loneSurrogatesAreReplaced() {
+    for (int prefix = SLICE - 2; prefix <= SLICE; prefix++) {
+      final String text = repeat("a", prefix);
+      assertSameHash(text + HIGH + "b");
+      assertSameHash(text + HIGH);
+      assertSameHash(text + LOW + "b");
+      assertSameHash(text + LOW + HIGH);
+      assertSameHash(text + HIGH + HIGH + LOW);
+    }
+  }
+
+  @Test
+  public void randomText() {
+    final Random random = new Random(42);
+    final char[] alphabet = {'a', '\n', 'é', '中', HIGH, LOW};
+    for (int i = 0; i < 50; i++) {
+      final char[] chars = new char[random.nextInt(3 * SLICE)];
+      for (int c = 0; c < chars.length; c++) chars[c] = alphabet[random.nextInt(alphabet.length)];
+      assertSameHash(new String(chars));
+    }
+  }
+
+  @Test
+  public void bytesAndStreamHashes() throws IOException {
+    final byte[] bytes = ("text" + PAIR).getBytes(StandardCharsets.UTF_8);
+    final String expected = messageDigest(bytes);
+    assertEquals(expected, Sha256.hash(ByteBuffer.wrap(bytes)));
+    assertEquals(expected, Sha256.hash(new ByteArrayInputStream(bytes)));
+  }
+
+  private static void assertSameHash(@NotNull String text) {
+    assertEquals(
+        "length " + text.length(),
+        messageDigest(text.getBytes(StandardCharsets.UTF_8)),
+        Sha256.hash(text));
+  }
+
+  @NotNull
+  private static String messageDigest(@NotNull byte[] bytes) {
+    try {
+      return Sha256.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @NotNull
+  private static String repeat(@NotNull String text, int times) {
+    return String.join("", Collections.nCopies(times, text));
+  }
+}
@@ -0,0 +1,97 @@
+package ai.deepcode.javaclient.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ai.deepcode.javaclient.core.SuggestionCache.VERSIONS_PER_PATH;
+import static org.junit.Assert.*;
+
+public class SuggestionCacheTest {
+
+  private static final int SEVERITY = 1;
+
+  @NotNull
+  private static List<SuggestionForFile> suggestions(@NotNull String id) {
+    return Collections.singletonList(
+        new SuggestionForFile(id, "rule", "message", 2, 0, null, Collections.emptyList()));
+  }
+
+  private static void put(@NotNull SuggestionCache cache, @NotNull String path, int version) {
+    cache.put(path, "hash" + version, SEVERITY, false, suggestions("s" + version));
+  }
+
+  private static boolean contains(@NotNull SuggestionCache cache, int version) {
+    return cache.get("hash" + version, SEVERITY, false) != null;
+  }
+
+  @NotNull
+  private static List<String> versionHashes(@NotNull SuggestionCache cache, @NotNull String path) {
+    return cache.getVersions().get(path).stream().map(v -> v.hash).collect(Collectors.toList());
+  }
+
+  @Test
+  public void oldestVersionOfPathIsEvicted() {
+    final SuggestionCache cache = new SuggestionCache();
+    for (int v = 0; v <= VERSIONS_PER_PATH; v++) put(cache, "/A.java", v);
+    assertFalse(contains(cache, 0));
+    for (int v = 1; v <= VERSIONS_PER_PATH; v++) assertTrue(contains(cache, v));
+    assertEquals(VERSIONS_PER_PATH, versionHashes(cache, "/A.java").size());
+    assertEquals("hash" + VERSIONS_PER_PATH, versionHashes(cache, "/A.java").get(2));
+  }
+
+  @Test
+  public void reanalysedVersionBecomesLatest() {
+    final SuggestionCache cache = new SuggestionCache();
+    for (int v = 0; v < VERSIONS_PER_PATH; v++) put(cache, "/A.java", v);
+    // reverted to the first version
+    put(cache, "/A.java", 0);
+    put(cache, "/A.java", VERSIONS_PER_PATH);
+    assertTrue(contains(cache, 0));
+    assertFalse(contains(cache, 1));
+    assertEquals(Arrays.asList("hash2", "hash0", "hash3"), versionHashes(cache, "/A.java"));
+  }
+
+  @Test
+  public void versionKeptWhileAnyPathHasIt() {
+    final SuggestionCache cache = new SuggestionCache();
+    put(cache, "/A.java", 0);
+    put(cache, "/Copy.java", 0);
+    for (int v = 1; v <= VERSIONS_PER_PATH; v++) put(cache, "/A.java", v);
+    assertTrue(contains(cache, 0));
+
+    cache.removePath("/Copy.java");
+    assertFalse(contains(cache, 0));
+    cache.removePath("/A.java");
+    assertTrue(cache.isEmpty());
+  }
+
+  @Test
+  public void analysisSettingsArePartOfKey() {
+    final SuggestionCache cache = new SuggestionCache();
+    cache.put("/A.java", "hash", 1, false, suggestions("s1"));
+    cache.put("/A.java", "hash", 2, false, suggestions("s2"));
+    assertEquals("s1", cache.get("hash", 1, false).get(0).getId());
+    assertEquals("s2", cache.get("hash", 2, false).get(0).getId());
+    assertNull(cache.get("hash", 1, true));
+
+    // the latest analysis wins
+    cache.put("/B.java", "hash", 1, false, suggestions("s3"));
+    assertEquals("s3", cache.get("hash", 1, false).get(0).getId());
+  }
+
+  @Test
+  public void modificationsAreCounted() {
+    final SuggestionCache cache = new SuggestionCache();
+    put(cache, "/A.java", 0);
+    cache.get("hash0", SEVERITY, false);
+    cache.removePath("/Unknown.java");
+    assertEquals(1, cache.getModificationCount());
+    cache.removePath("/A.java");
+    assertEquals(2, cache.getModificationCount());
+  }
+}